@@ -0,0 +1,32 @@
+#!/bin/sh
+# CDS（クラスデータ共有）アーカイブの作成
+# ・jarを展開し、ライブラリとアプリのクラスを通常のjarとしてクラスパスに並べる（入れ子のjarはCDSの対象外のため）
+# ・fast-startプロファイルで起動し、ウォームアップで読み込まれたクラスを target/cds/app.jsa に保存して終了する
+# 使い方: mvn clean package -DskipTests && sh scripts/cds-archive.sh
+set -e
+
+JAR="${1:-$(ls target/*.jar | head -n 1)}"
+OUT="target/cds"
+
+JAR_PATH="$(cd "$(dirname "$JAR")" && pwd)/$(basename "$JAR")"
+
+rm -rf "$OUT"
+mkdir -p "$OUT/extracted"
+(cd "$OUT/extracted" && jar xf "$JAR_PATH")
+
+jar cf "$OUT/app.jar" -C "$OUT/extracted/BOOT-INF/classes" .
+
+# ★ 実行時も同じ順番のクラスパスが必要なのでファイルに保存する
+CP="$OUT/app.jar"
+for lib in $(ls "$OUT/extracted/BOOT-INF/lib/"*.jar | sort); do
+    CP="$CP:$lib"
+done
+echo "$CP" > "$OUT/classpath"
+
+java -XX:ArchiveClassesAtExit="$OUT/app.jsa" -Xlog:cds=error \
+     -Dspring.profiles.active=fast-start \
+     -Dapp.warmup.exit=true \
+     -Dserver.port=0 \
+     -cp "$CP" com.example.chatgptquiz.ChatGptQuizApplication
+
+echo "✅ CDSアーカイブを作成しました: $OUT/app.jsa"
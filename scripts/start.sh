@@ -0,0 +1,12 @@
+#!/bin/sh
+# 起動（scripts/cds-archive.sh で作成したCDSアーカイブがあれば、fast-startプロファイルで使う）
+# アーカイブがない・JDKが変わって使えない場合は通常どおり起動する
+OUT="target/cds"
+
+if [ -f "$OUT/app.jsa" ] && [ -f "$OUT/classpath" ]; then
+    exec java -XX:SharedArchiveFile="$OUT/app.jsa" -Xshare:auto $JAVA_OPTS \
+         -Dspring.profiles.active="${SPRING_PROFILES_ACTIVE:-fast-start}" \
+         -cp "$(cat "$OUT/classpath")" com.example.chatgptquiz.ChatGptQuizApplication "$@"
+fi
+
+exec java $JAVA_OPTS -jar "$(ls target/*.jar | head -n 1)" "$@"
@@ -0,0 +1,157 @@
+package com.example.chatgptquiz;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 起動から最初のクイズ表示までの時間（time-to-first-quiz）のベンチマーク
+ * ★ フォークごとに1回だけ計測する（毎回JITもクラス読み込みも済んでいない状態から）
+ * ★ OpenAIは同じJVM内のスタブ（固定の問題を返す）に置き換え、ネットワークには接続しない
+ *
+ * timeToFirstQuiz     … Springの起動（ウォームアップを含む） → 最初の /quiz の応答を受け取るまで
+ * firstQuizAfterReady … 起動完了（readiness）後の最初の /quiz の応答時間（最初の生徒が待つ時間）
+ * JVM自体の起動時間とCDSの効果は含まない（クラスパスにディレクトリがあるとCDSアーカイブを作れないため、
+ * scripts/start.sh での起動時間と比べる）
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    // 通常の起動と、遅延初期化 + ウォームアップの起動
+    @Param({"default", "fast-start"})
+    public String profile;
+
+    private static final String QUIZ_CONTENT =
+        "{\"question\":\"本能寺の変で織田信長を討った武将は誰？\",\"choices\":[\"明智光秀\",\"豊臣秀吉\",\"徳川家康\",\"柴田勝家\"],\"answerIndex\":0}";
+
+    private HttpServer openAiStub;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // 起動ログで計測結果が埋もれないように
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+
+        byte[] response = ("{\"choices\":[{\"message\":{\"content\":" + quote(QUIZ_CONTENT) + "}}],"
+                + "\"usage\":{\"prompt_tokens\":100,\"completion_tokens\":20,\"total_tokens\":120}}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        openAiStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        openAiStub.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        openAiStub.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        openAiStub.stop(0);
+    }
+
+    @Benchmark
+    public int timeToFirstQuiz() throws Exception {
+        ConfigurableApplicationContext context = start();
+        try {
+            return firstQuiz(context);
+        } finally {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int firstQuizAfterReady(Started started) throws Exception {
+        return firstQuiz(started.context);
+    }
+
+    /**
+     * 起動済みのアプリ（起動時間は計測に含めない）
+     */
+    @State(Scope.Benchmark)
+    public static class Started {
+        ConfigurableApplicationContext context;
+
+        @Setup(Level.Iteration)
+        public void setUp(StartupBenchmark benchmark) {
+            context = benchmark.start();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    ConfigurableApplicationContext start() {
+        String stubUrl = "http://127.0.0.1:" + openAiStub.getAddress().getPort() + "/v1/chat/completions";
+
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--openai.api-url=" + stubUrl,
+                // ★ 保存済みのクイズ・キャッシュ・スナップショットに左右されないように
+                "--app.quiz-bank.enabled=false",
+                "--app.wikidata-cache.enabled=false",
+                "--app.catalog-snapshot.enabled=false",
+                "--app.token-usage.enabled=false"));
+        if (!"default".equals(profile)) {
+            args.add("--spring.profiles.active=" + profile);
+        }
+
+        return SpringApplication.run(ChatGptQuizApplication.class, args.toArray(new String[0]));
+    }
+
+    private int firstQuiz(ConfigurableApplicationContext context) throws Exception {
+        String port = context.getEnvironment().getProperty("local.server.port");
+        String keyword = URLEncoder.encode("織田信長", StandardCharsets.UTF_8);
+        String grade = URLEncoder.encode("小6", StandardCharsets.UTF_8);
+
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create(
+                "http://127.0.0.1:" + port + "/quiz?keyword=" + keyword + "&grade=" + grade + "&index=0")).build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        if (response.statusCode() != 200 || !response.body().contains("本能寺の変")) {
+            throw new IllegalStateException("クイズが表示されませんでした status=" + response.statusCode());
+        }
+        return response.body().length();
+    }
+
+    private static String quote(String json) {
+        return "\"" + json.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.chatgptquiz.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * 負荷試験の集計（画面の段階ごとの件数・エラー率・スループット・応答時間のパーセンタイル）
+ */
+public class LoadReport {
+
+    // 表示順（videos → video_quiz → 最初の問題 → 続きの問題 → 完了ページ）
+    private static final List<String> STEP_ORDER =
+        List.of("videos", "video_quiz", "quiz_first", "quiz_next", "quiz_stream", "finish");
+
+    private final Map<String, Step> steps = new ConcurrentHashMap<>();
+    private final AtomicLong sessions = new AtomicLong();
+
+    private long startNanos;
+    private long endNanos;
+
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        endNanos = System.nanoTime();
+    }
+
+    public void record(String step, long elapsedNanos, boolean ok) {
+        steps.computeIfAbsent(step, k -> new Step()).add(elapsedNanos, ok);
+    }
+
+    public void sessionCompleted() {
+        sessions.incrementAndGet();
+    }
+
+    /**
+     * 集計結果（JSONに書き出す形）
+     */
+    public Map<String, Object> summary(Map<String, Object> settings, Map<String, Object> stubs) {
+        double seconds = Math.max(1e-9, (endNanos - startNanos) / 1e9);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("settings", settings);
+        result.put("durationSeconds", round(seconds));
+        result.put("completedSessions", sessions.get());
+
+        long total = 0;
+        long errors = 0;
+        Map<String, Object> stepResults = new LinkedHashMap<>();
+        for (String name : orderedSteps()) {
+            Step step = steps.get(name);
+            long[] sorted = step.sortedMillis();
+
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("requests", sorted.length);
+            s.put("errors", step.errors.get());
+            s.put("errorRate", sorted.length == 0 ? 0 : round((double) step.errors.get() / sorted.length));
+            s.put("throughputPerSecond", round(sorted.length / seconds));
+            s.put("p50Ms", percentile(sorted, 50));
+            s.put("p95Ms", percentile(sorted, 95));
+            s.put("p99Ms", percentile(sorted, 99));
+            s.put("maxMs", sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+            stepResults.put(name, s);
+
+            total += sorted.length;
+            errors += step.errors.get();
+        }
+
+        result.put("requests", total);
+        result.put("errors", errors);
+        result.put("errorRate", total == 0 ? 0 : round((double) errors / total));
+        result.put("throughputPerSecond", round(total / seconds));
+        result.put("steps", stepResults);
+        result.put("stubs", stubs);
+        return result;
+    }
+
+    /**
+     * 表形式で標準エラー出力に表示（アプリのログと混ざらないように）
+     */
+    @SuppressWarnings("unchecked")
+    public void print(Map<String, Object> summary) {
+        System.err.println();
+        System.err.printf("sessions=%s requests=%s errors=%s (%.2f%%) throughput=%s req/s duration=%ss%n",
+            summary.get("completedSessions"), summary.get("requests"), summary.get("errors"),
+            ((Number) summary.get("errorRate")).doubleValue() * 100,
+            summary.get("throughputPerSecond"), summary.get("durationSeconds"));
+        System.err.printf("%-12s %8s %7s %8s %8s %8s %8s %8s%n",
+            "step", "requests", "errors", "req/s", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)");
+
+        Map<String, Object> stepResults = (Map<String, Object>) summary.get("steps");
+        for (Map.Entry<String, Object> e : stepResults.entrySet()) {
+            Map<String, Object> s = (Map<String, Object>) e.getValue();
+            System.err.printf("%-12s %8s %7s %8s %8s %8s %8s %8s%n",
+                e.getKey(), s.get("requests"), s.get("errors"), s.get("throughputPerSecond"),
+                s.get("p50Ms"), s.get("p95Ms"), s.get("p99Ms"), s.get("maxMs"));
+        }
+        System.err.println("stubs=" + summary.get("stubs"));
+    }
+
+    /**
+     * モードごとの結果を並べて表示（--mode=compare）
+     */
+    @SuppressWarnings("unchecked")
+    public static void printComparison(Map<String, Map<String, Object>> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        System.err.println();
+        System.err.println("=== モードの比較 ===");
+        System.err.printf("%-10s %9s %9s %8s %8s %12s%n",
+            "mode", "sessions", "requests", "errors%", "req/s", "peakThreads");
+        for (Map.Entry<String, Map<String, Object>> e : results.entrySet()) {
+            Map<String, Object> summary = e.getValue();
+            System.err.printf("%-10s %9s %9s %8.2f %8s %12s%n",
+                e.getKey(), summary.get("completedSessions"), summary.get("requests"),
+                ((Number) summary.get("errorRate")).doubleValue() * 100,
+                summary.get("throughputPerSecond"), summary.get("peakThreads"));
+        }
+
+        System.err.printf("%-12s %-10s %8s %7s %8s %8s %8s%n",
+            "step", "mode", "requests", "errors", "p50(ms)", "p95(ms)", "p99(ms)");
+        for (String step : STEP_ORDER) {
+            for (Map.Entry<String, Map<String, Object>> e : results.entrySet()) {
+                Map<String, Object> s = (Map<String, Object>) ((Map<String, Object>) e.getValue().get("steps")).get(step);
+                if (s != null) {
+                    System.err.printf("%-12s %-10s %8s %7s %8s %8s %8s%n",
+                        step, e.getKey(), s.get("requests"), s.get("errors"), s.get("p50Ms"), s.get("p95Ms"), s.get("p99Ms"));
+                }
+            }
+        }
+    }
+
+    public static void write(Path path, Object summary) throws IOException {
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), summary);
+    }
+
+    private List<String> orderedSteps() {
+        List<String> names = new ArrayList<>();
+        for (String name : STEP_ORDER) {
+            if (steps.containsKey(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    // 順位による（nearest-rank）パーセンタイル
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static final class Step {
+        private final List<Long> nanos = new ArrayList<>();
+        private final AtomicLong errors = new AtomicLong();
+
+        synchronized void add(long elapsedNanos, boolean ok) {
+            nanos.add(elapsedNanos);
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+
+        synchronized long[] sortedMillis() {
+            long[] millis = new long[nanos.size()];
+            for (int i = 0; i < millis.length; i++) {
+                millis[i] = nanos.get(i) / 1_000_000;
+            }
+            Arrays.sort(millis);
+            return millis;
+        }
+    }
+}
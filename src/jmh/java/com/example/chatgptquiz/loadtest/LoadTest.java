@@ -0,0 +1,529 @@
+package com.example.chatgptquiz.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.chatgptquiz.ChatGptQuizApplication;
+import com.example.chatgptquiz.config.VirtualThreads;
+
+/**
+ * 教室の利用を再現する負荷試験（OpenAI・Wikidataはスタブ、実際の料金・アクセスは発生しない）
+ *
+ * 生徒1人の流れ（生徒ごとにCookie＝セッションを持つ）:
+ *   /videos?grade → 動画を1つ選んで /video/quiz → リダイレクト先の /quiz?index=0
+ *   → 考える時間をおいて /quiz?index=1..n（isCorrectはランダム） → 完了ページ → 最初から繰り返し
+ *   ストリーミングモードのページは /quiz/stream の quiz（またはfailure）イベントまで受け取る
+ *
+ * 実行: mvn -Pjmh test-compile exec:exec@loadtest -Dloadtest.args="--students=30 --duration-s=60"
+ *   --target=http://host:port を指定すると、起動済みのアプリに対して実行する（スタブは使われない）
+ *   -- 以降の引数はそのまま同じJVM内で起動するアプリに渡す（例: -- --app.quiz-stream.enabled=true）
+ *   --mode=compare で、プラットフォームスレッド・仮想スレッドの両方のモードを同じ条件で実行して並べて表示する
+ *
+ * ★ 生徒は1人1スレッド（Java 21以上なら仮想スレッド）、HTTPクライアントは全員で1つを共有し、Cookieは生徒ごとに持つ
+ *   （生徒ごとにHttpClientを作ると、その分だけ受信用のスレッドが増え、数千人を再現できない）
+ */
+public class LoadTest {
+
+    private static final Pattern QUIZ_LINK = Pattern.compile("href=\"(/video/quiz\\?[^\"]+)\"");
+
+    // quiz.html のエラー表示（ステータスは200のまま返る）
+    private static final String ERROR_MARKER = "<h3>⚠️ エラー</h3>";
+
+    // ストリーミングモードで、問題がまだないページ
+    private static final String STREAMING_MARKER = "class=\"question loading\"";
+
+    // ステートレスセッションのトークン（quiz.html のスクリプトに埋め込まれる）
+    private static final Pattern SESSION_TOKEN = Pattern.compile("const sessionToken = \"([^\"]+)\"");
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    // Java 17でプラットフォームスレッドを使う場合の生徒1人分のスタック（数千人分を確保できるように小さく）
+    private static final long STUDENT_STACK_BYTES = 256 * 1024;
+
+    // --mode の値（default: アプリの設定のまま / platform / virtual / compare: 両方）
+    private static final List<String> MODES = List.of("default", "platform", "virtual", "compare");
+
+    private static final String VIRTUAL_THREADS_PROPERTY = "app.virtual-threads.enabled";
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("students", "30");
+        DEFAULTS.put("duration-s", "60");
+        DEFAULTS.put("ramp-up-s", "5");
+        DEFAULTS.put("think-ms", "1500");
+        DEFAULTS.put("grade", "小6");
+        DEFAULTS.put("target", "");
+        DEFAULTS.put("openai-latency-ms", "1500");
+        DEFAULTS.put("openai-p99-ms", "6000");
+        DEFAULTS.put("openai-429-rate", "0");
+        DEFAULTS.put("openai-5xx-rate", "0");
+        DEFAULTS.put("wikidata-latency-ms", "50");
+        DEFAULTS.put("wikidata", "true");
+        DEFAULTS.put("mode", "default");
+        DEFAULTS.put("output", "target/loadtest-result.json");
+    }
+
+    private final Map<String, String> options;
+    private final String mode;
+    private final LoadReport report = new LoadReport();
+    private final long thinkMs;
+    private final String grade;
+
+    private volatile boolean running = true;
+
+    // 実行中の最大スレッド数（プラットフォームスレッドのみ。Java 17では生徒のスレッドも含む）
+    private int peakThreads;
+
+    LoadTest(Map<String, String> options, String mode) {
+        this.options = options;
+        this.mode = mode;
+        this.thinkMs = Long.parseLong(options.get("think-ms"));
+        this.grade = options.get("grade");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        List<String> appArgs = new ArrayList<>();
+        boolean passThrough = false;
+        for (String arg : args) {
+            if (passThrough) {
+                appArgs.add(arg);
+            } else if ("--".equals(arg)) {
+                passThrough = true;
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                String key = arg.substring(2, arg.indexOf('='));
+                if (!DEFAULTS.containsKey(key)) {
+                    throw new IllegalArgumentException("不明なオプション: " + arg + " （指定できるもの: " + DEFAULTS.keySet() + "）");
+                }
+                options.put(key, arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("--key=value の形で指定してください: " + arg);
+            }
+        }
+
+        String mode = options.get("mode");
+        if (!MODES.contains(mode)) {
+            throw new IllegalArgumentException("--modeに指定できるのは " + MODES + " です: " + mode);
+        }
+        if (!"default".equals(mode)) {
+            if (!options.get("target").isBlank()) {
+                throw new IllegalArgumentException("--targetのアプリはモードを切り替えられないため、--modeと同時に指定できません");
+            }
+            if (appArgs.stream().anyMatch(arg -> arg.startsWith("--" + VIRTUAL_THREADS_PROPERTY + "="))) {
+                throw new IllegalArgumentException("--" + VIRTUAL_THREADS_PROPERTY + " は --mode と同時に指定できません");
+            }
+        }
+
+        List<String> modes = "compare".equals(mode) ? List.of("platform", "virtual") : List.of(mode);
+        Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+        for (String m : modes) {
+            if ("virtual".equals(m) && !VirtualThreads.isSupported()) {
+                System.err.printf("%n⏭️ 仮想スレッドモードはJava 21以上で実行してください（現在: %s）%n",
+                    System.getProperty("java.version"));
+                continue;
+            }
+            results.put(m, new LoadTest(options, m).run(appArgs));
+        }
+
+        // ★ 1つのモードならその結果、compareならモードごとの結果を並べて保存する
+        Path output = Path.of(options.get("output"));
+        if (!results.isEmpty()) {
+            if ("compare".equals(mode)) {
+                LoadReport.printComparison(results);
+                LoadReport.write(output, results);
+            } else {
+                LoadReport.write(output, results.values().iterator().next());
+            }
+            System.err.println("結果: " + output.toAbsolutePath());
+        }
+
+        // ★ アプリ・スタブの非デーモンスレッドが残っても終了する
+        System.exit(0);
+    }
+
+    /**
+     * 1つのモードで実行（スタブ・アプリはモードごとに起動し直し、同じ状態から始める）
+     */
+    Map<String, Object> run(List<String> appArgs) throws Exception {
+        OpenAiStub openAi = null;
+        WikidataStub wikidata = null;
+        ConfigurableApplicationContext context = null;
+        Path workDir = null;
+
+        String target = options.get("target");
+        try {
+            if (target.isBlank()) {
+                openAi = new OpenAiStub(0,
+                    Double.parseDouble(options.get("openai-latency-ms")),
+                    Double.parseDouble(options.get("openai-p99-ms")),
+                    Double.parseDouble(options.get("openai-429-rate")),
+                    Double.parseDouble(options.get("openai-5xx-rate")));
+                wikidata = new WikidataStub(0, Long.parseLong(options.get("wikidata-latency-ms")));
+                openAi.start();
+                wikidata.start();
+
+                workDir = Files.createTempDirectory("loadtest");
+                context = startApp(openAi, wikidata, workDir, appArgs);
+                target = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+            }
+
+            drive(target);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            Map<String, Object> stubs = new LinkedHashMap<>();
+            if (openAi != null) {
+                stubs.put("openai", openAi.stats());
+                openAi.stop();
+            }
+            if (wikidata != null) {
+                stubs.put("wikidata", wikidata.stats());
+                wikidata.stop();
+            }
+            if (workDir != null) {
+                deleteRecursively(workDir);
+            }
+
+            Map<String, Object> settings = new LinkedHashMap<>(options);
+            settings.put("mode", mode);
+            settings.put("clientThreads", VirtualThreads.isSupported() ? "virtual" : "platform");
+            Map<String, Object> summary = report.summary(settings, stubs);
+            report.print(summary);
+            summary.put("peakThreads", peakThreads);
+            System.err.println("peakThreads=" + peakThreads);
+            return summary;
+        }
+    }
+
+    /**
+     * 同じJVM内でアプリを起動（外部APIはスタブへ、保存ファイルは一時ディレクトリへ）
+     */
+    private ConfigurableApplicationContext startApp(OpenAiStub openAi, WikidataStub wikidata, Path workDir,
+                                                    List<String> appArgs) {
+        // 起動ログ・アクセスログで結果が埋もれないように（結果は標準エラー出力に出す）
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+        // ★ DevToolsの再起動（mainの呼び直し）を止める
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        List<String> args = new ArrayList<>(List.of(
+            "--server.port=0",
+            "--openai.api-url=" + openAi.url(),
+            "--app.enable-wikidata=" + options.get("wikidata"),
+            "--app.wikidata.base-url=" + wikidata.url(),
+            "--app.wikipedia.base-url=" + wikidata.url(),
+            // ★ 保存済みのクイズ・キャッシュで生成が省かれないように（毎回OpenAIスタブまで届く）
+            "--app.quiz-bank.enabled=false",
+            "--app.wikidata-cache.file=" + workDir.resolve("wikidata-cache.json"),
+            "--app.wikidata-offline.file=" + workDir.resolve("wikidata-offline.bin"),
+            "--app.token-usage.file=" + workDir.resolve("token-usage.jsonl")));
+        if (!"default".equals(mode)) {
+            args.add("--" + VIRTUAL_THREADS_PROPERTY + "=" + "virtual".equals(mode));
+        }
+        args.addAll(appArgs);
+
+        return SpringApplication.run(ChatGptQuizApplication.class, args.toArray(new String[0]));
+    }
+
+    /**
+     * 生徒を少しずつ増やし（ramp-up）、duration-sの間セッションを繰り返させる
+     */
+    private void drive(String target) throws InterruptedException {
+        int students = Integer.parseInt(options.get("students"));
+        long durationMs = TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("duration-s")));
+        long rampUpMs = TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("ramp-up-s")));
+
+        System.err.printf("負荷試験開始 target=%s mode=%s students=%d durationS=%d%n",
+            target, mode, students, durationMs / 1000);
+
+        ExecutorService executor = studentExecutor();
+        ExecutorService clientExecutor = VirtualThreads.isSupported() ? VirtualThreads.newExecutor() : null;
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(10));
+        if (clientExecutor != null) {
+            builder.executor(clientExecutor);
+        }
+        HttpClient client = builder.build();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        report.start();
+        long deadline = System.currentTimeMillis() + durationMs;
+        for (int i = 0; i < students; i++) {
+            long startDelay = students > 1 ? rampUpMs * i / (students - 1) : 0;
+            executor.submit(() -> {
+                sleep(startDelay);
+                new Student(target, client).loop(deadline);
+            });
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(durationMs + REQUEST_TIMEOUT.toMillis() + rampUpMs, TimeUnit.MILLISECONDS)) {
+            running = false;
+            executor.shutdownNow();
+        }
+        report.stop();
+        peakThreads = threads.getPeakThreadCount();
+        if (clientExecutor != null) {
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 生徒1人に1スレッド（Java 21以上なら仮想スレッド、それ以外はスタックを小さくしたプラットフォームスレッド）
+     */
+    private static ExecutorService studentExecutor() {
+        if (VirtualThreads.isSupported()) {
+            return VirtualThreads.newExecutor();
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(null, r, "student-" + count.incrementAndGet(), STUDENT_STACK_BYTES);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 生徒1人（共有のHttpClientを使い、Cookie＝セッションは生徒ごとに持つ）
+     */
+    private final class Student {
+        private final String base;
+        private final HttpClient client;
+
+        // Cookie名 → 値（パス・有効期限は見ない。アプリが使うのはセッションCookieだけ）
+        private final Map<String, String> cookies = new ConcurrentHashMap<>();
+
+        Student(String base, HttpClient client) {
+            this.base = base;
+            this.client = client;
+        }
+
+        void loop(long deadline) {
+            while (running && System.currentTimeMillis() < deadline) {
+                try {
+                    if (session(deadline)) {
+                        report.sessionCompleted();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    // 個々の失敗は記録済み（次のセッションへ）
+                }
+            }
+        }
+
+        /**
+         * 動画一覧 → クイズ開始 → 全問回答 → 完了ページ（途中で失敗したら打ち切る）
+         */
+        private boolean session(long deadline) throws IOException, InterruptedException {
+            String videosPath = "all".equals(grade) ? "/videos" : "/videos?grade=" + encode(grade);
+            HttpResponse<String> videos = get("videos", videosPath, 200);
+            if (videos == null) {
+                return false;
+            }
+
+            List<String> links = new ArrayList<>();
+            Matcher matcher = QUIZ_LINK.matcher(videos.body());
+            while (matcher.find()) {
+                links.add(matcher.group(1).replace("&amp;", "&"));
+            }
+            if (links.isEmpty()) {
+                return false;
+            }
+            String link = links.get(ThreadLocalRandom.current().nextInt(links.size()));
+            sleep(think());
+
+            HttpResponse<String> redirect = get("video_quiz", link, 302);
+            if (redirect == null) {
+                return false;
+            }
+            String next = redirect.headers().firstValue("Location").map(this::path).orElse(null);
+
+            // ★ 問題数はクイズページの「n / 全体」ではなく、キーワードの数で決まる
+            String keywords = query(link, "keyword");
+            String grades = query(link, "grade");
+            int total = keywords.trim().split("\\s+").length;
+            String tokenParam = "";
+
+            for (int index = 0; index <= total; index++) {
+                String step = index == 0 ? "quiz_first" : index == total ? "finish" : "quiz_next";
+                String path = index == 0 && next != null ? next
+                    : "/quiz?keyword=" + encode(keywords) + "&grade=" + encode(grades) + "&index=" + index
+                      + "&isCorrect=" + ThreadLocalRandom.current().nextBoolean() + tokenParam;
+
+                HttpResponse<String> page = get(step, path, 200);
+                if (page == null) {
+                    return false;
+                }
+                Matcher token = SESSION_TOKEN.matcher(page.body());
+                tokenParam = token.find() ? "&t=" + encode(token.group(1)) : "";
+                if (index < total && page.body().contains(STREAMING_MARKER)
+                        && !stream(keywords, grades, index, tokenParam)) {
+                    return false;
+                }
+                if (index < total) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        return false;
+                    }
+                    sleep(think());
+                }
+            }
+            return true;
+        }
+
+        /**
+         * /quiz/stream を quiz（成功）または failure（失敗）イベントまで受け取る
+         */
+        private boolean stream(String keywords, String grades, int index, String tokenParam)
+                throws IOException, InterruptedException {
+            String path = "/quiz/stream?keyword=" + encode(keywords) + "&grade=" + encode(grades) + "&index=" + index
+                + tokenParam;
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                HttpResponse<Stream<String>> response = client.send(request(path), HttpResponse.BodyHandlers.ofLines());
+                remember(response);
+                try (Stream<String> lines = response.body()) {
+                    if (response.statusCode() == 200) {
+                        Iterator<String> it = lines.iterator();
+                        while (it.hasNext()) {
+                            String line = it.next();
+                            if (line.startsWith("event:quiz")) {
+                                ok = true;
+                                break;
+                            }
+                            if (line.startsWith("event:failure")) {
+                                break;
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                ok = false;
+            }
+            report.record("quiz_stream", System.nanoTime() - start, ok);
+            return ok;
+        }
+
+        /**
+         * 1回のリクエスト（想定外のステータス・エラーページ・通信エラーはエラーとして記録し、nullを返す）
+         */
+        private HttpResponse<String> get(String step, String path, int expectedStatus)
+                throws InterruptedException {
+            long start = System.nanoTime();
+            HttpResponse<String> response = null;
+            try {
+                response = client.send(request(path), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                remember(response);
+            } catch (IOException e) {
+                // 通信エラー（タイムアウトを含む）
+            }
+            boolean ok = response != null
+                && response.statusCode() == expectedStatus
+                && !response.body().contains(ERROR_MARKER);
+            report.record(step, System.nanoTime() - start, ok);
+            return ok ? response : null;
+        }
+
+        private HttpRequest request(String path) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(base + path)).timeout(REQUEST_TIMEOUT);
+            if (!cookies.isEmpty()) {
+                StringBuilder cookie = new StringBuilder();
+                cookies.forEach((name, value) -> {
+                    if (cookie.length() > 0) {
+                        cookie.append("; ");
+                    }
+                    cookie.append(name).append('=').append(value);
+                });
+                builder.header("Cookie", cookie.toString());
+            }
+            return builder.build();
+        }
+
+        // Set-Cookie の「名前=値」だけを覚える（属性は無視）
+        private void remember(HttpResponse<?> response) {
+            for (String header : response.headers().allValues("Set-Cookie")) {
+                String pair = header.split(";", 2)[0];
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    cookies.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+                }
+            }
+        }
+
+        private String path(String location) {
+            URI uri = URI.create(location);
+            return uri.getRawPath() + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        }
+    }
+
+    // 考える時間（think-msを中心に±50%）
+    private long think() {
+        return thinkMs <= 0 ? 0 : thinkMs / 2 + ThreadLocalRandom.current().nextLong(thinkMs + 1);
+    }
+
+    private static String query(String pathAndQuery, String name) {
+        String query = URI.create(pathAndQuery).getQuery();
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                return pair.substring(name.length() + 1);
+            }
+        }
+        return "";
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            // 一時ディレクトリなので無視
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.chatgptquiz.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * OpenAI chat completions のスタブ（負荷試験用）
+ * ・response_formatのスキーマ名（quiz / quiz_set）に合わせたJSONを返す
+ * ・stream=trueの場合はServer-Sent Eventsで少しずつ返す（最後にusage）
+ * ・応答時間は対数正規分布（中央値とp99で指定）
+ * ・一定の割合で429（Retry-After付き）・503を返す
+ */
+public class OpenAiStub {
+
+    // 1問（quiz）と複数問（quiz_set）のプロンプトから、キーワードを取り出す
+    private static final Pattern BATCH_KEYWORD = Pattern.compile("【\\d+】キーワード：(\\S+)");
+
+    // ストリーミングで1回に送る文字数
+    private static final int STREAM_CHUNK_CHARS = 8;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+
+    private final double medianMs;
+    private final double sigma;
+    private final double rate429;
+    private final double rate5xx;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injected429 = new AtomicLong();
+    private final AtomicLong injected5xx = new AtomicLong();
+
+    /**
+     * @param latencyMedianMs 応答時間の中央値
+     * @param latencyP99Ms    応答時間のp99（中央値以下なら一定の応答時間）
+     * @param rate429         429を返す割合（0〜1）
+     * @param rate5xx         503を返す割合（0〜1）
+     */
+    public OpenAiStub(int port, double latencyMedianMs, double latencyP99Ms, double rate429, double rate5xx) throws IOException {
+        this.medianMs = latencyMedianMs;
+        // ★ p99 = 中央値 × exp(2.326σ)
+        this.sigma = latencyP99Ms > latencyMedianMs ? Math.log(latencyP99Ms / latencyMedianMs) / 2.326 : 0;
+        this.rate429 = rate429;
+        this.rate5xx = rate5xx;
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        this.server.createContext("/", this::handle);
+        // ★ 応答待ち（sleep）で他のリクエストを止めないように、リクエストごとにスレッドを使う
+        this.server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "openai-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of("requests", requests.get(), "injected429", injected429.get(), "injected5xx", injected5xx.get());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            requests.incrementAndGet();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double roll = random.nextDouble();
+            if (roll < rate429) {
+                injected429.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"requests\"}}");
+                return;
+            }
+            if (roll < rate429 + rate5xx) {
+                injected5xx.incrementAndGet();
+                sleep(latency() / 4);
+                send(exchange, 503, "{\"error\":{\"message\":\"The server is overloaded\",\"type\":\"server_error\"}}");
+                return;
+            }
+
+            String prompt = request.path("messages").path(0).path("content").asText("");
+            String schema = request.path("response_format").path("json_schema").path("name").asText("quiz");
+            String content = "quiz_set".equals(schema) ? quizSet(prompt) : objectMapper.writeValueAsString(quiz("スタブ"));
+
+            long promptTokens = Math.max(1, prompt.length() / 2);
+            long completionTokens = Math.max(1, content.length() / 2);
+            long delayMs = latency();
+
+            if (request.path("stream").asBoolean(false)) {
+                stream(exchange, content, promptTokens, completionTokens, delayMs);
+            } else {
+                sleep(delayMs);
+                exchange.getResponseHeaders().set("x-ratelimit-remaining-requests", "499");
+                send(exchange, 200, objectMapper.writeValueAsString(Map.of(
+                    "choices", List.of(Map.of("index", 0, "message", Map.of("role", "assistant", "content", content),
+                                              "finish_reason", "stop")),
+                    "usage", usage(promptTokens, completionTokens))));
+            }
+        }
+    }
+
+    /**
+     * ストリーミング応答（最初の行までに応答時間の1/4、残りを各断片に分けて送る）
+     */
+    private void stream(HttpExchange exchange, String content, long promptTokens, long completionTokens,
+                        long delayMs) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+
+        int chunks = Math.max(1, (content.length() + STREAM_CHUNK_CHARS - 1) / STREAM_CHUNK_CHARS);
+        long firstMs = delayMs / 4;
+        long perChunkMs = (delayMs - firstMs) / chunks;
+
+        OutputStream out = exchange.getResponseBody();
+        sleep(firstMs);
+        for (int i = 0; i < content.length(); i += STREAM_CHUNK_CHARS) {
+            String piece = content.substring(i, Math.min(content.length(), i + STREAM_CHUNK_CHARS));
+            event(out, Map.of("choices", List.of(Map.of("index", 0, "delta", Map.of("content", piece)))));
+            sleep(perChunkMs);
+        }
+        event(out, Map.of("choices", List.of(Map.of("index", 0, "delta", Map.of(), "finish_reason", "stop"))));
+        event(out, Map.of("choices", List.of(), "usage", usage(promptTokens, completionTokens)));
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void event(OutputStream out, Object data) throws IOException {
+        out.write(("data: " + objectMapper.writeValueAsString(data) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private String quizSet(String prompt) throws IOException {
+        List<Map<String, Object>> quizzes = new ArrayList<>();
+        Matcher matcher = BATCH_KEYWORD.matcher(prompt);
+        while (matcher.find()) {
+            Map<String, Object> quiz = quiz(matcher.group(1));
+            quiz.put("keyword", matcher.group(1));
+            quizzes.add(quiz);
+        }
+        return objectMapper.writeValueAsString(Map.of("quizzes", quizzes));
+    }
+
+    private static Map<String, Object> quiz(String keyword) {
+        Map<String, Object> quiz = new LinkedHashMap<>();
+        quiz.put("question", "「" + keyword + "」に関係の深いものはどれ？");
+        quiz.put("choices", List.of("選択肢A", "選択肢B", "選択肢C", "選択肢D"));
+        quiz.put("answerIndex", ThreadLocalRandom.current().nextInt(4));
+        return quiz;
+    }
+
+    private static Map<String, Object> usage(long promptTokens, long completionTokens) {
+        return Map.of("prompt_tokens", promptTokens, "completion_tokens", completionTokens,
+                      "total_tokens", promptTokens + completionTokens);
+    }
+
+    private long latency() {
+        if (medianMs <= 0) {
+            return 0;
+        }
+        return Math.round(medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.chatgptquiz.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Wikidata（EntityData / wbgetentities）とWikipedia（抜粋）のスタブ（負荷試験用）
+ * ・記録済みのフィクスチャ（src/jmh/resources/fixtures）があればそれを返す
+ * ・ないエンティティは、フィクスチャのエンティティのIDとラベルを差し替えて返す（処理量をそろえるため）
+ * ・app.wikidata.base-url / app.wikipedia.base-url の両方をこのサーバーに向ける
+ */
+public class WikidataStub {
+
+    private static final Pattern ENTITY_PATH = Pattern.compile("/wiki/Special:EntityData/(Q\\d+)\\.json");
+
+    // IDとラベルを差し替える元のエンティティ
+    private static final String TEMPLATE_ENTITY = "Q171411";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final long latencyMs;
+
+    private final Map<String, JsonNode> entities = new HashMap<>();
+    private final Map<String, String> labels;
+    private final Map<String, String> extracts = new HashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    public WikidataStub(int port, long latencyMs) throws IOException {
+        this.latencyMs = latencyMs;
+
+        for (String id : new String[] {"Q171411", "Q204023"}) {
+            JsonNode root = objectMapper.readTree(fixture("entity-" + id + ".json"));
+            entities.put(id, root.path("entities").path(id));
+        }
+        labels = objectMapper.readValue(fixture("entity-labels.json"), new TypeReference<Map<String, String>>() {});
+        for (JsonNode info : objectMapper.readTree(fixture("wikidata-info.json"))) {
+            extracts.put(info.path("label").asText(), info.path("wikipediaExtract").asText(""));
+        }
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "wikidata-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of("requests", requests.get());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            sleep(latencyMs);
+
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+
+            Matcher entity = ENTITY_PATH.matcher(path);
+            if (entity.matches()) {
+                ObjectNode root = objectMapper.createObjectNode();
+                root.putObject("entities").set(entity.group(1), entity(entity.group(1)));
+                send(exchange, 200, root);
+            } else if ("wbgetentities".equals(query.get("action"))) {
+                send(exchange, 200, labels(query.getOrDefault("ids", "")));
+            } else if ("extracts".equals(query.get("prop"))) {
+                send(exchange, 200, extract(query.getOrDefault("titles", "")));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        }
+    }
+
+    private JsonNode entity(String id) {
+        JsonNode recorded = entities.get(id);
+        if (recorded != null) {
+            return recorded;
+        }
+
+        ObjectNode copy = entities.get(TEMPLATE_ENTITY).deepCopy();
+        String label = "エンティティ" + id;
+        copy.put("id", id);
+        copy.putObject("labels").putObject("ja").put("language", "ja").put("value", label);
+        copy.putObject("sitelinks").putObject("jawiki").put("site", "jawiki").put("title", label);
+        return copy;
+    }
+
+    private JsonNode labels(String ids) {
+        ObjectNode root = objectMapper.createObjectNode();
+        ObjectNode result = root.putObject("entities");
+        for (String id : ids.split("\\|")) {
+            if (id.isEmpty()) {
+                continue;
+            }
+            result.putObject(id).putObject("labels").putObject("ja")
+                .put("language", "ja").put("value", labels.getOrDefault(id, "ラベル" + id));
+        }
+        return root;
+    }
+
+    private JsonNode extract(String title) {
+        String text = extracts.getOrDefault(title.replace('_', ' '),
+            title + "は、負荷試験用のスタブが返す説明文です。");
+
+        ObjectNode root = objectMapper.createObjectNode();
+        root.putObject("query").putObject("pages").putObject("1")
+            .put("pageid", 1).put("title", title).put("extract", text);
+        return root;
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                           URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    static String fixture(String name) {
+        try (InputStream in = WikidataStub.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("フィクスチャが見つかりません: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
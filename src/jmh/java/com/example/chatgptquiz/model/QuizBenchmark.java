@@ -0,0 +1,43 @@
+package com.example.chatgptquiz.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Quiz.fromJson（OpenAIが返すクイズJSONの解析）のベンチマーク
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuizBenchmark {
+
+    // OpenAIのmessage.contentに入っている形
+    private final String plainJson =
+        "{\"question\":\"本能寺の変で織田信長を討った武将は誰？\","
+        + "\"choices\":[\"明智光秀\",\"豊臣秀吉\",\"徳川家康\",\"柴田勝家\"],\"answerIndex\":0}";
+
+    // ```json で囲まれて返ってくる場合
+    private final String fencedJson = "```json\n" + plainJson + "\n```";
+
+    @Benchmark
+    public Quiz fromJson() {
+        return Quiz.fromJson(plainJson);
+    }
+
+    @Benchmark
+    public Quiz fromJsonFenced() {
+        return Quiz.fromJson(fencedJson);
+    }
+}
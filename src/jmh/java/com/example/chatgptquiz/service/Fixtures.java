@@ -0,0 +1,57 @@
+package com.example.chatgptquiz.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.core.env.StandardEnvironment;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * ベンチマーク用のフィクスチャ読み込みと共通の準備
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * src/jmh/resources/fixtures 以下のファイルを文字列で読み込む
+     */
+    static String read(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("フィクスチャが見つかりません: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 標準出力への書き込みを捨てる（ログ出力で計測結果が埋もれないように）
+     * ★ 書き込み処理自体は実行されるので、printlnのコストは計測に含まれる
+     */
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 外部APIを呼ばないベンチマーク用のHTTPクライアント（コンストラクタ引数を満たすだけ）
+     */
+    static OutboundHttpClient httpClient() {
+        return new OutboundHttpClient(new StandardEnvironment(), 10000, false);
+    }
+
+    /**
+     * メモリ上にだけ記録するメトリクス（Actuatorなしで計測対象のクラスを作るため）
+     */
+    static QuizMetrics metrics() {
+        return new QuizMetrics(new SimpleMeterRegistry());
+    }
+}
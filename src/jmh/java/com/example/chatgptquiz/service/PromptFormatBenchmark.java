@@ -0,0 +1,64 @@
+package com.example.chatgptquiz.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.env.StandardEnvironment;
+
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * WikidataInfo → プロンプト用文字列の整形のベンチマーク
+ * ★ fixtures/wikidata-info.json（キャッシュのスナップショットと同じ形）を使う
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromptFormatBenchmark {
+
+    private WikidataService wikidataService;
+    private ChatGptQuizService chatGptQuizService;
+    private List<WikidataInfo> infoList;
+
+    @Setup
+    public void setUp() throws Exception {
+        // formatWikidataForPromptは内容を標準出力に書くため、出力先を捨てる
+        Fixtures.silenceStdout();
+
+        OutboundHttpClient httpClient = Fixtures.httpClient();
+        QuizMetrics metrics = Fixtures.metrics();
+        wikidataService = new WikidataService(httpClient);
+        chatGptQuizService = new ChatGptQuizService(httpClient, new TokenUsageTracker(new StandardEnvironment()), metrics,
+                new OpenAiCircuitBreaker(metrics), new RetryBudget(metrics), new OpenAiRateLimiter(metrics));
+        infoList = new ObjectMapper().readValue(
+            Fixtures.read("wikidata-info.json"), new TypeReference<List<WikidataInfo>>() {});
+    }
+
+    @Benchmark
+    public String formatWikidataInfoForPrompt() {
+        return wikidataService.formatWikidataInfoForPrompt(infoList);
+    }
+
+    @Benchmark
+    public void formatWikidataForPrompt(Blackhole blackhole) {
+        for (WikidataInfo info : infoList) {
+            blackhole.consume(chatGptQuizService.formatWikidataForPrompt(info));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.chatgptquiz.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import com.example.chatgptquiz.model.Video;
+import com.example.chatgptquiz.service.VideoIndex.KeywordEntry;
+
+/**
+ * 番組CSVの読み込み・索引作成（スナップショットからの読み込み）と、VideoServiceの検索のベンチマーク
+ * ★ アプリと同じCSV（src/main/resources）をメモリに読み込んでから計測する
+ * ★ rows=0は実際のCSVそのまま。rows>0は実際の行を（IDを変えながら）繰り返して、その行数の合成カタログを作る
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VideoCatalogBenchmark {
+
+    private static final String CSV_FILE = "nhkforschool_history_banngumi.tsv.csv";
+
+    // 目標は10万行のカタログを1秒を大きく下回って読み込むこと
+    @Param({"0", "100000"})
+    private int rows;
+
+    private String csv;
+    private byte[] snapshot;
+    private List<Video> videos;
+    private VideoCsvLoader videoCsvLoader;
+    private VideoService videoService;
+
+    @Setup
+    public void setUp() throws Exception {
+        // 読み込み時の警告・検索時のログで計測結果が埋もれないように
+        Fixtures.silenceStdout();
+
+        csv = new String(new ClassPathResource(CSV_FILE).getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (rows > 0) {
+            csv = synthesize(csv, rows);
+        }
+        videoCsvLoader = new VideoCsvLoader();
+        videos = videoCsvLoader.load(new StringReader(csv));
+        // ★ 起動時に保存するものと同じスナップショットをメモリ上に作る
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            VideoCatalogSnapshot.write(out, 0L, new VideoIndex(videos));
+        }
+        snapshot = bytes.toByteArray();
+
+        videoService = new VideoService(videoCsvLoader, new VideoCatalogSnapshot(), Fixtures.metrics());
+    }
+
+    /**
+     * 実際のCSVのデータ行を繰り返してrows行にする（IDの先頭に通し番号を付けて重複させない）
+     * ★ 引用符内の改行で行を分けないよう、レコード単位で区切る
+     */
+    private static String synthesize(String source, int rows) {
+        List<String> records = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                records.add(source.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < source.length()) {
+            records.add(source.substring(start) + "\n");
+        }
+
+        String header = records.get(0);
+        List<String> data = records.subList(1, records.size());
+        StringBuilder out = new StringBuilder(source.length() / data.size() * (rows + 1));
+        out.append(header);
+        for (int i = 0; i < rows; i++) {
+            out.append('S').append(i).append('_').append(data.get(i % data.size()));
+        }
+        return out.toString();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Video> loadCsv() throws Exception {
+        return videoCsvLoader.load(new StringReader(csv));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public VideoIndex buildIndex() {
+        return new VideoIndex(videos);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public VideoIndex loadSnapshot() throws Exception {
+        return VideoCatalogSnapshot.read(snapshot, 0L);
+    }
+
+    @Benchmark
+    public List<KeywordEntry> findKeywordLinks() {
+        return videoService.findKeywordLinks("織田信長", "小6");
+    }
+
+    @Benchmark
+    public List<Video> getVideosByGrade() {
+        return videoService.getVideosByGrade("小6");
+    }
+
+    @Benchmark
+    public List<Video> searchByTitle() {
+        return videoService.searchByTitle("織田");
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.chatgptquiz.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.chatgptquiz.service.WikidataService.WikidataProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Wikidata EntityDataレスポンスからのプロパティ抽出・日付整形のベンチマーク
+ * ★ fixtures/entity-*.json（EntityData形式のレスポンス）を使い、ネットワークには接続しない
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WikidataExtractBenchmark {
+
+    // 人物（生年月日・没年月日）と時代（年のみ・年月のみの日付）
+    @Param({"Q171411", "Q204023"})
+    public String entityId;
+
+    // 年月日・年月・年のみ・紀元前
+    private static final String[] TIMES = {
+        "+1582-06-21T00:00:00Z",
+        "+1615-05-00T00:00:00Z",
+        "+1467-00-00T00:00:00Z",
+        "-0660-02-11T00:00:00Z"
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private WikidataService wikidataService;
+    private String response;
+    private JsonNode root;
+    private JsonNode claims;
+    private Map<String, String> entityLabels;
+
+    @Setup
+    public void setUp() throws Exception {
+        Fixtures.silenceStdout();
+
+        wikidataService = new WikidataService(Fixtures.httpClient());
+        response = Fixtures.read("entity-" + entityId + ".json");
+        root = objectMapper.readTree(response);
+        claims = root.path("entities").path(entityId).path("claims");
+        entityLabels = objectMapper.readValue(
+            Fixtures.read("entity-labels.json"), new TypeReference<Map<String, String>>() {});
+    }
+
+    @Benchmark
+    public List<WikidataProperty> extractProperties() {
+        return wikidataService.extractProperties(claims, root, entityLabels);
+    }
+
+    // レスポンスの解析から（1回の取得で行う処理）
+    @Benchmark
+    public List<WikidataProperty> parseAndExtractProperties() throws Exception {
+        JsonNode parsed = objectMapper.readTree(response);
+        return wikidataService.extractProperties(
+            parsed.path("entities").path(entityId).path("claims"), parsed, entityLabels);
+    }
+
+    @Benchmark
+    public void formatDate(Blackhole blackhole) {
+        for (String time : TIMES) {
+            blackhole.consume(wikidataService.formatDate(time));
+        }
+    }
+}
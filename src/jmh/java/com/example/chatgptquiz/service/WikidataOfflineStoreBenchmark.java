@@ -0,0 +1,86 @@
+package com.example.chatgptquiz.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * オフライン用Wikidataファイル（メモリマップ）からの取得のベンチマーク
+ * ★ fixtures/wikidata-info.jsonに架空のエンティティを加えて一時ファイルに書き出し、索引の大きさを変えて計測
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WikidataOfflineStoreBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entities;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private WikidataOfflineStore store;
+    private Path file;
+
+    @Setup
+    public void setUp() throws Exception {
+        Fixtures.silenceStdout();
+
+        List<WikidataInfo> infos = new ArrayList<>(objectMapper.readValue(
+            Fixtures.read("wikidata-info.json"), new TypeReference<List<WikidataInfo>>() {}));
+        WikidataInfo sample = infos.get(0);
+
+        // 実在しないQ番号（1億以上）で件数を水増しする
+        for (int i = infos.size(); i < entities; i++) {
+            WikidataInfo info = new WikidataInfo();
+            info.setEntityId("Q" + (100_000_000 + i));
+            info.setLabel(sample.getLabel());
+            info.setDescription(sample.getDescription());
+            info.setAliases(sample.getAliases());
+            info.setProperties(sample.getProperties());
+            infos.add(info);
+        }
+
+        file = Files.createTempFile("wikidata-offline", ".bin");
+        WikidataOfflineStore.write(file, infos);
+
+        store = new WikidataOfflineStore();
+        store.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public WikidataInfo hit() {
+        return store.get("Q171411");
+    }
+
+    @Benchmark
+    public WikidataInfo miss() {
+        return store.get("Q1");
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.chatgptquiz.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.example.chatgptquiz.service.QuizMetrics;
+
+/**
+ * メトリクス関連の設定
+ * ・各段階の計測はQuizMetricsを通して各サービスで行い、ここでは画面の描画時間の計測を登録する
+ * ・HTTPリクエスト全体の時間（http.server.requests）はActuatorが自動で記録する
+ */
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private final QuizMetrics metrics;
+
+    public MetricsConfig(QuizMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ViewRenderMetricsInterceptor(metrics));
+    }
+}
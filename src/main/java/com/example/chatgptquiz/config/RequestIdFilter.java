@@ -0,0 +1,62 @@
+package com.example.chatgptquiz.config;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * リクエストごとにIDを付け、ログ（MDCのrequestId）とレスポンスヘッダーに出す
+ * ・X-Request-Id ヘッダーがあればそれを使う（ロードバランサーなどで付けたIDとつなげるため）
+ * ・非同期処理の再ディスパッチでも同じIDを使う
+ * ・OpenAI / Wikidataの応答処理スレッドへの引き継ぎはOutboundHttpClientで行う
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Request-Id";
+    public static final String MDC_KEY = "requestId";
+
+    private static final String ATTRIBUTE = RequestIdFilter.class.getName() + ".id";
+
+    // 受け取ったIDはログを壊さない文字だけ許可する
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        String id = (String) request.getAttribute(ATTRIBUTE);
+        if (id == null) {
+            String header = request.getHeader(HEADER);
+            id = header != null && VALID_ID.matcher(header).matches()
+                    ? header
+                    : UUID.randomUUID().toString().substring(0, 8);
+            request.setAttribute(ATTRIBUTE, id);
+            response.setHeader(HEADER, id);
+        }
+
+        MDC.put(MDC_KEY, id);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(MDC_KEY);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+}
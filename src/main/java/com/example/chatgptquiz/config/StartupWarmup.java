@@ -0,0 +1,188 @@
+package com.example.chatgptquiz.config;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.example.chatgptquiz.model.Quiz;
+import com.example.chatgptquiz.service.OutboundHttpClient;
+import com.example.chatgptquiz.service.QuizMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 起動直後のウォームアップ（app.warmup.enabled=true、fast-startプロファイルで有効）
+ * ・最初の生徒がJIT前のコード・未作成のBean・未接続のTLSの待ち時間を払わないようにする
+ * ・ApplicationRunnerとして実行するため、終わるまで（最大timeout-ms）readinessはACCEPTING_TRAFFICにならない
+ * ・各処理は並行して実行し、失敗しても起動は続ける
+ *
+ * 内容:
+ *   beans    … 画面のController（と依存するサービス）を作成（遅延初期化の対象から外す）
+ *   jackson  … Quiz.fromJsonとJSONの書き出し
+ *   pages    … 自分自身にトップ・動画一覧・完了ページを要求（Spring MVC・Thymeleaf・セッション）
+ *   openai   … OpenAIのホストに接続し、TLS接続をKeep-Aliveで残す
+ *
+ * app.warmup.exit=trueの場合はウォームアップ後に終了する（CDSアーカイブ作成用の試運転）
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    // ★ OpenAIの応答と同じ形（コードブロックで囲まれた場合も含めて解析させる）
+    private static final String SAMPLE_QUIZ = "```json\n"
+            + "{\"question\":\"ウォームアップ\",\"choices\":[\"a\",\"b\",\"c\",\"d\"],\"answerIndex\":0}\n"
+            + "```";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+    private final ConfigurableApplicationContext context;
+    private final OutboundHttpClient httpClient;
+    private final QuizMetrics metrics;
+
+    @Value("${app.warmup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.warmup.timeout-ms:15000}")
+    private long timeoutMs;
+
+    @Value("${app.warmup.exit:false}")
+    private boolean exitAfterWarmup;
+
+    @Value("${app.warmup.grade:小6}")
+    private String grade;
+
+    @Value("${openai.api-url:https://api.openai.com/v1/chat/completions}")
+    private String openaiApiUrl;
+
+    public StartupWarmup(ConfigurableApplicationContext context, OutboundHttpClient httpClient, QuizMetrics metrics) {
+        this.context = context;
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        log.info("🔥 ウォームアップ開始 timeoutMs={}", timeoutMs);
+
+        // ★ Beanの作成は他の処理の前提なので先に済ませる
+        task("beans", () -> {
+            context.getBeansWithAnnotation(Controller.class);
+            return CompletableFuture.completedFuture(null);
+        }).join();
+
+        List<CompletableFuture<?>> tasks = new ArrayList<>();
+        tasks.add(task("jackson", () -> CompletableFuture.supplyAsync(this::warmUpJackson)));
+        tasks.add(task("pages", this::warmUpPages));
+        tasks.add(task("openai", this::warmUpOpenAi));
+
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("⚠️ ウォームアップが時間内に終わりませんでした timeoutMs={}", timeoutMs);
+        } catch (Exception e) {
+            // 個々の失敗はtaskで記録済み
+        }
+
+        log.info("🔥 ウォームアップ完了 elapsedMs={}", System.currentTimeMillis() - start);
+
+        if (exitAfterWarmup) {
+            log.info("👋 ウォームアップ後に終了します（app.warmup.exit=true）");
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * 1つのウォームアップ処理を実行し、時間と結果を記録（例外はここで止める）
+     */
+    private CompletableFuture<Void> task(String name, Supplier<CompletableFuture<?>> body) {
+        Timer.Sample sample = metrics.start();
+        CompletableFuture<?> future;
+        try {
+            future = body.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return future.handle((value, e) -> {
+            String outcome = e == null ? "success" : "error";
+            metrics.stop(sample, QuizMetrics.STARTUP_WARMUP, "task", name, "outcome", outcome);
+            if (e != null) {
+                log.debug("⏭️ ウォームアップ失敗（無視） task={} error={}", name, OutboundHttpClient.unwrap(e).toString());
+            }
+            return null;
+        });
+    }
+
+    private Object warmUpJackson() {
+        try {
+            Quiz quiz = Quiz.fromJson(SAMPLE_QUIZ);
+            return new ObjectMapper().writeValueAsString(quiz);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 自分自身のページを要求（Webサーバーなしで起動した場合は何もしない）
+     * ★ 完了ページは問題数を超えたindexで要求し、OpenAIを呼ばずにクイズ画面の処理を通す
+     */
+    private CompletableFuture<?> warmUpPages() {
+        String port = context.getEnvironment().getProperty("local.server.port");
+        if (port == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String base = "http://127.0.0.1:" + port;
+        String encodedGrade = URLEncoder.encode(grade, StandardCharsets.UTF_8);
+
+        return httpClient.getAsync(base + "/", Map.of(), REQUEST_TIMEOUT)
+            .thenCompose(body -> httpClient.getAsync(base + "/videos?grade=" + encodedGrade, Map.of(), REQUEST_TIMEOUT))
+            .thenCompose(body -> httpClient.getAsync(
+                base + "/quiz?keyword=warmup&grade=" + encodedGrade + "&index=1", Map.of(), REQUEST_TIMEOUT));
+    }
+
+    /**
+     * OpenAIのホストに接続（応答の内容・ステータスは問わない、TLS接続を作っておくのが目的）
+     */
+    private CompletableFuture<?> warmUpOpenAi() {
+        URI origin = URI.create(openaiApiUrl).resolve("/");
+        return httpClient.getAsync(origin.toString(), Map.of(), REQUEST_TIMEOUT)
+            .handle((body, e) -> {
+                // ★ 4xxでも接続はできている（ネットワークに届かない場合だけ失敗にする）
+                Throwable cause = e != null ? OutboundHttpClient.unwrap(e) : null;
+                if (cause instanceof ResourceAccessException) {
+                    throw new IllegalStateException(cause);
+                }
+                return body;
+            });
+    }
+}
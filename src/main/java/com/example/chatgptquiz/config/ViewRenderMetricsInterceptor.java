@@ -0,0 +1,54 @@
+package com.example.chatgptquiz.config;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.example.chatgptquiz.service.QuizMetrics;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Thymeleafテンプレートの描画時間を計測
+ * ・postHandle（コントローラー終了、描画前）から afterCompletion（描画後）までを view ごとに記録する
+ * ・非同期（CompletableFuture）のコントローラーでは、結果が返った後の再ディスパッチで計測される
+ * ・リダイレクト・JSON・Server-Sent Eventsは対象外
+ */
+public class ViewRenderMetricsInterceptor implements HandlerInterceptor {
+
+    private static final String SAMPLE = ViewRenderMetricsInterceptor.class.getName() + ".sample";
+    private static final String VIEW = ViewRenderMetricsInterceptor.class.getName() + ".view";
+
+    private final QuizMetrics metrics;
+
+    public ViewRenderMetricsInterceptor(QuizMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        if (modelAndView == null || modelAndView.getViewName() == null
+                || modelAndView.getViewName().startsWith("redirect:")) {
+            return;
+        }
+
+        request.setAttribute(VIEW, modelAndView.getViewName());
+        request.setAttribute(SAMPLE, metrics.start());
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object sample = request.getAttribute(SAMPLE);
+        if (!(sample instanceof Timer.Sample)) {
+            return;
+        }
+
+        request.removeAttribute(SAMPLE);
+        metrics.stop((Timer.Sample) sample, QuizMetrics.VIEW_RENDER,
+                "view", (String) request.getAttribute(VIEW), "outcome", ex == null ? "success" : "error");
+    }
+}
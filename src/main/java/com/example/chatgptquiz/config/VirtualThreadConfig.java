@@ -0,0 +1,32 @@
+package com.example.chatgptquiz.config;
+
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 仮想スレッドモード（app.virtual-threads.enabled=true、Java 21以上）
+ * ・Tomcatのリクエスト処理を仮想スレッドで実行する
+ * ・OpenAI / Wikidataの待ち時間中はスレッドが安価に停止するため、
+ *   server.tomcat.threads.max を増やさずに多数の同時セッションを処理できる
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = VirtualThreads.newExecutor();
+
+        log.info("🧵 仮想スレッドモードでリクエストを処理します");
+
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+}
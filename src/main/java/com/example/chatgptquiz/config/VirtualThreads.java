@@ -0,0 +1,43 @@
+package com.example.chatgptquiz.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 仮想スレッド（Java 21以降）のExecutorを作成
+ * ★ ビルドはJava 17のままでも動くよう、APIはリフレクションで呼び出す
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 実行中のJVMが仮想スレッドに対応しているか
+     */
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * タスクごとに仮想スレッドを作るExecutor
+     * @throws IllegalStateException Java 21未満で実行している場合
+     */
+    public static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(
+                "仮想スレッドにはJava 21以上が必要です（現在: " + System.getProperty("java.version") + "）", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("仮想スレッドのExecutorを作成できませんでした", e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.chatgptquiz.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+
+import com.example.chatgptquiz.model.Video;
+import com.example.chatgptquiz.service.OutboundHttpClient;
+import com.example.chatgptquiz.service.QuizMetrics;
+import com.example.chatgptquiz.service.VideoService;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 描画済みの動画一覧ページ（app.video-pages.prerendered=true、prodプロファイルで有効）
+ * ・カタログは実行中に変わらないため、学年ごとに1回だけ描画し、gzip圧縮したバイト列も作っておく
+ * ・以後はテンプレートを通さずにバイト列を返す（強いETag・Cache-Control付き、If-None-Matchが一致すれば304）
+ * ・カタログの版（CSVのチェックサム）が変わったページは次のアクセスで描き直す
+ * ・起動時に全学年のページを自分自身に要求して描画しておく（readinessの前に済ませる）
+ * ・対象は全学年と、動画のある1つの学年（小3、中1など）だけ
+ *   （動画のない学年・任意の文字列や、カタログにある「中1 中2」のような複数学年の値はキャッシュせず、従来どおり描画する）
+ */
+@Component
+public class PrerenderedVideoPages implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(PrerenderedVideoPages.class);
+
+    // ★ 描画結果を要求者のロケールに左右されないようにする
+    private static final Locale LOCALE = Locale.JAPAN;
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    // 学年（全学年は空文字） → 描画済みページ
+    private final Map<String, Page> pages = new ConcurrentHashMap<>();
+
+    private final VideoService videoService;
+    private final ITemplateEngine templateEngine;
+    private final ConfigurableApplicationContext context;
+    private final OutboundHttpClient httpClient;
+    private final QuizMetrics metrics;
+
+    @Value("${app.video-pages.prerendered:false}")
+    private boolean enabled;
+
+    @Value("${app.video-pages.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    @Value("${app.video-pages.prerender-on-startup:true}")
+    private boolean prerenderOnStartup;
+
+    public PrerenderedVideoPages(VideoService videoService, ITemplateEngine templateEngine,
+                                 ConfigurableApplicationContext context,
+                                 OutboundHttpClient httpClient, QuizMetrics metrics) {
+        this.videoService = videoService;
+        this.templateEngine = templateEngine;
+        this.context = context;
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 描画済みページを返す（304を含む）
+     * @return 対象外の学年ならfalse（呼び出し元で通常どおり描画する）
+     */
+    public boolean serve(String grade, ServletWebRequest webRequest) throws IOException {
+        String key = grade != null ? grade : "";
+        if (!key.isEmpty() && !isPageGrade(key)) {
+            return false;
+        }
+
+        HttpServletRequest request = webRequest.getRequest();
+        HttpServletResponse response = webRequest.getResponse();
+
+        Page page = pages.get(key);
+        boolean hit = page != null && page.version == videoService.getCatalogVersion();
+        metrics.cache("video_page", hit);
+        if (!hit) {
+            page = render(key, request, response);
+            pages.put(key, page);
+        }
+
+        boolean gzip = acceptsGzip(request);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + maxAgeSeconds);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        // ★ gzipと非圧縮は別の表現なので、ETagも分ける
+        if (webRequest.checkNotModified(gzip ? page.gzipEtag : page.etag)) {
+            return true;
+        }
+
+        byte[] body = gzip ? page.gzip : page.html;
+        response.setContentType("text/html;charset=UTF-8");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        return true;
+    }
+
+    /**
+     * 起動時に全学年のページを描画（自分自身に要求し、通常のリクエストと同じ経路で作る）
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        String port = context.getEnvironment().getProperty("local.server.port");
+        if (!enabled || !prerenderOnStartup || port == null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        String base = "http://127.0.0.1:" + port + "/videos";
+
+        List<CompletableFuture<String>> requests = new ArrayList<>();
+        requests.add(httpClient.getAsync(base, Map.of(), REQUEST_TIMEOUT));
+        for (String grade : videoService.getGrades()) {
+            if (!QuizMetrics.isGrade(grade)) {
+                continue;
+            }
+            requests.add(httpClient.getAsync(base + "?grade=" + URLEncoder.encode(grade, StandardCharsets.UTF_8),
+                Map.of(), REQUEST_TIMEOUT));
+        }
+
+        try {
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]))
+                .get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // 描画できなかったページは最初のアクセスで描画する
+            log.warn("⚠️ 動画一覧ページの事前描画に失敗しました error={}", OutboundHttpClient.unwrap(e).toString());
+        }
+
+        log.info("📄 動画一覧ページを事前描画 pages={} elapsedMs={}", pages.size(), System.currentTimeMillis() - start);
+    }
+
+    // 描画済みにする学年（動画のある、1つの学年）
+    private boolean isPageGrade(String grade) {
+        return QuizMetrics.isGrade(grade) && videoService.getGrades().contains(grade);
+    }
+
+    private Page render(String grade, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Timer.Sample sample = metrics.start();
+
+        List<Video> videos = grade.isEmpty() ? videoService.getAllVideos() : videoService.getVideosByGrade(grade);
+        Map<String, Object> variables = Map.of("videos", videos);
+        // ★ ServletContextはリクエストから取る（Webサーバーなしのバッチ実行でもBeanを作れるように）
+        WebContext webContext = new WebContext(request, new NoUrlRewriting(response), request.getServletContext(),
+            LOCALE, variables);
+        if (!grade.isEmpty()) {
+            webContext.setVariable("selectedGrade", grade);
+        }
+
+        byte[] html = templateEngine.process("videos", webContext).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(html.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(html);
+        }
+
+        Page page = new Page(videoService.getCatalogVersion(), html, compressed.toByteArray());
+        metrics.stop(sample, QuizMetrics.VIEW_RENDER, "view", "videos-prerendered", "outcome", "success");
+        log.info("📄 動画一覧ページを描画 grade={} videos={} bytes={} gzipBytes={}",
+                grade.isEmpty() ? "all" : grade, videos.size(), page.html.length, page.gzip.length);
+        return page;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+    }
+
+    private static String etag(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 描画済みページ（非圧縮とgzip、それぞれのETag）
+    private static final class Page {
+        private final long version;
+        private final byte[] html;
+        private final byte[] gzip;
+        private final String etag;
+        private final String gzipEtag;
+
+        Page(long version, byte[] html, byte[] gzip) {
+            this.version = version;
+            this.html = html;
+            this.gzip = gzip;
+            this.etag = etag(html);
+            this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+    }
+
+    // ★ 全員に返すページに、描画したリクエストのセッションID（;jsessionid=）が入らないように
+    private static final class NoUrlRewriting extends HttpServletResponseWrapper {
+        NoUrlRewriting(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public String encodeURL(String url) {
+            return url;
+        }
+
+        @Override
+        public String encodeRedirectURL(String url) {
+            return url;
+        }
+    }
+}
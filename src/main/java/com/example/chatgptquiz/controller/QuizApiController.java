@@ -0,0 +1,329 @@
+package com.example.chatgptquiz.controller;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.chatgptquiz.model.Quiz;
+import com.example.chatgptquiz.service.OutboundHttpClient;
+import com.example.chatgptquiz.service.QuizPrefetcher;
+import com.example.chatgptquiz.service.QuizSessionToken;
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * クイズをJSONで返すAPI（画面と同じクイズバンク・先読み・生成を使う）
+ * ・/api/quiz: 1問（keyword / grade / index、ページと同じセッション・トークンなら同じ問題を返す）
+ * ・/api/quiz/set: 動画の問題一式（バンクにないものはまとめて生成）
+ * ・fields: 返す項目（quiz, wikidataInfo のカンマ区切り、省略時は両方）。quizだけなら応答が小さくなる
+ * ・ETag付きで返し、If-None-Matchが一致すれば304（本文を送らない）
+ *   返す問題が生成なしで決まる場合（セッションで出題済み・トークンのバンクのパターン）は、生成・先読みの前に確かめる
+ * ・セッション・トークンのないリクエストには、同じキーワード・学年なら同じ問題を返す
+ *   （毎回生成すると本文が変わり、ETagが一致しないため。QuizPrefetcher.stable）
+ * ・正解数などの進行状態は扱わない（画面の /quiz で数える）
+ */
+@RestController
+public class QuizApiController {
+
+    private static final Logger log = LoggerFactory.getLogger(QuizApiController.class);
+
+    private static final String FIELD_QUIZ = "quiz";
+    private static final String FIELD_WIKIDATA = "wikidataInfo";
+    private static final Set<String> ALL_FIELDS = Set.of(FIELD_QUIZ, FIELD_WIKIDATA);
+
+    private final QuizPrefetcher quizPrefetcher;
+    private final QuizSessionToken sessionToken;
+    private final ObjectMapper objectMapper;
+
+    // ★ ブラウザがキャッシュしてよい秒数（過ぎた後はETagで確認する）
+    @Value("${app.quiz-api.max-age-seconds:60}")
+    private long maxAgeSeconds;
+
+    public QuizApiController(QuizPrefetcher quizPrefetcher, QuizSessionToken sessionToken, ObjectMapper objectMapper) {
+        this.quizPrefetcher = quizPrefetcher;
+        this.sessionToken = sessionToken;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * index問目のクイズ（続きの問題の先読みも開始する）
+     * ★ 画面から次の問題を先に要求しておけば、次のページはすぐに表示できる
+     */
+    @GetMapping("/api/quiz")
+    public CompletableFuture<ResponseEntity<byte[]>> quiz(
+            @RequestParam("keyword") String keyword,
+            @RequestParam("grade") String grade,
+            @RequestParam(name = "index", defaultValue = "0") int index,
+            @RequestParam(name = "fields", required = false) String fields,
+            @RequestParam(name = "t", required = false) String token,
+            HttpServletRequest request
+    ) {
+        Set<String> selected = parseFields(fields);
+        if (selected == null) {
+            return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST, "fieldsに指定できるのは " + ALL_FIELDS + " です"));
+        }
+
+        List<String> keywordList = Arrays.asList(keyword.trim().split("\\s+"));
+        if (keyword.isBlank()) {
+            return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST, "キーワードが指定されていません"));
+        }
+        if (index < 0 || index >= keywordList.size()) {
+            return CompletableFuture.completedFuture(error(HttpStatus.NOT_FOUND, "問題がありません index=" + index));
+        }
+
+        // ★ ページと同じ先読み（トークン、またはHttpSession）を使う。APIのためにセッションは作らない
+        String sessionId = null;
+        int bankVariant = -1;
+        QuizSessionToken.State state = sessionToken.isEnabled() ? sessionToken.decode(token) : null;
+        if (state != null && state.matches(keywordList, grade)) {
+            sessionId = state.prefetchKey();
+            bankVariant = state.bankVariant(index);
+        } else if (!sessionToken.isEnabled()) {
+            HttpSession session = request.getSession(false);
+            sessionId = session != null ? session.getId() : null;
+        }
+
+        // ★ 返す問題が決まっていれば、生成・先読みの前にIf-None-Matchを確かめる
+        boolean anonymous = sessionId == null && bankVariant < 0;
+        Map<String, Object> known = anonymous
+            ? quizPrefetcher.stable(keywordList.get(index), grade)
+            : quizPrefetcher.peek(sessionId, keyword, grade, keywordList, index, bankVariant);
+        if (known != null) {
+            String etag = etag(serialize(question(keywordList.get(index), index, known, selected)));
+            if (matches(request, etag)) {
+                log.info("⚡ クイズAPI 変更なし keyword=[{}] grade={} index={}", keywordList.get(index), grade, index);
+                return CompletableFuture.completedFuture(notModified(etag));
+            }
+            // ★ セッションがなければ先読みもしないため、生成せずにそのまま返す
+            if (anonymous) {
+                return CompletableFuture.completedFuture(json(question(keywordList.get(index), index, known, selected)));
+            }
+        }
+
+        log.info("🔍 クイズAPI要求 keyword=[{}] grade={} index={} fields={}", keywordList.get(index), grade, index, selected);
+
+        return quizPrefetcher.get(sessionId, keyword, grade, keywordList, index, null, bankVariant)
+            .handle((result, ex) -> {
+                if (ex != null) {
+                    Throwable e = OutboundHttpClient.unwrap(ex);
+                    log.error("❌ クイズAPI生成エラー keyword=[{}] grade={} error={}", keywordList.get(index), grade, e.getMessage());
+                    return error(HttpStatus.SERVICE_UNAVAILABLE, "クイズの生成に失敗しました: " + e.getMessage());
+                }
+                return json(question(keywordList.get(index), index, result, selected));
+            });
+    }
+
+    /**
+     * 動画の問題一式（keywordは動画のキーワードをスペース区切りで）
+     */
+    @GetMapping("/api/quiz/set")
+    public CompletableFuture<ResponseEntity<byte[]>> quizSet(
+            @RequestParam("keyword") String keyword,
+            @RequestParam("grade") String grade,
+            @RequestParam(name = "fields", required = false) String fields,
+            @RequestParam(name = "t", required = false) String token,
+            HttpServletRequest request
+    ) {
+        Set<String> selected = parseFields(fields);
+        if (selected == null) {
+            return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST, "fieldsに指定できるのは " + ALL_FIELDS + " です"));
+        }
+        if (keyword.isBlank()) {
+            return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST, "キーワードが指定されていません"));
+        }
+
+        List<String> keywordList = Arrays.asList(keyword.trim().split("\\s+"));
+
+        // ★ トークンがあれば、ページと同じバンクのパターンを返す（なければ同じキーワード・学年で毎回同じ問題）
+        QuizSessionToken.State state = sessionToken.isEnabled() ? sessionToken.decode(token) : null;
+        QuizSessionToken.State variants = state != null && state.matches(keywordList, grade) ? state : null;
+
+        List<Map<String, Object>> known = new ArrayList<>(keywordList.size());
+        boolean allKnown = true;
+        for (int i = 0; i < keywordList.size(); i++) {
+            Map<String, Object> result = variants != null
+                ? quizPrefetcher.peek(null, keyword, grade, keywordList, i, variants.bankVariant(i))
+                : quizPrefetcher.stable(keywordList.get(i), grade);
+            known.add(result);
+            allKnown &= result != null;
+        }
+
+        // ★ 全問が決まっていれば、生成の前にIf-None-Matchを確かめる
+        if (allKnown) {
+            List<Question> questions = new ArrayList<>(keywordList.size());
+            for (int i = 0; i < keywordList.size(); i++) {
+                questions.add(question(keywordList.get(i), i, known.get(i), selected));
+            }
+            String etag = etag(serialize(new QuizSet(grade, questions)));
+            if (matches(request, etag)) {
+                log.info("⚡ クイズAPI 変更なし（一式） keywords={} grade={}", keywordList, grade);
+                return CompletableFuture.completedFuture(notModified(etag));
+            }
+        }
+
+        log.info("🔍 クイズAPI要求（一式） keywords={} grade={} fields={}", keywordList, grade, selected);
+
+        // ★ トークンのパターンがバンクにない問題は、ページと同じくバンクから選び直す
+        CompletableFuture<List<Map<String, Object>>> all = variants != null
+            ? quizPrefetcher.getAll(grade, keywordList, variants::bankVariant)
+            : quizPrefetcher.completeAll(grade, keywordList, known::get);
+
+        return all
+            .handle((results, ex) -> {
+                if (ex != null) {
+                    Throwable e = OutboundHttpClient.unwrap(ex);
+                    log.error("❌ クイズAPI生成エラー keywords={} grade={} error={}", keywordList, grade, e.getMessage());
+                    return error(HttpStatus.SERVICE_UNAVAILABLE, "クイズの生成に失敗しました: " + e.getMessage());
+                }
+
+                List<Question> questions = new ArrayList<>(results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    questions.add(question(keywordList.get(i), i, results.get(i), selected));
+                }
+                return json(new QuizSet(grade, questions));
+            });
+    }
+
+    /**
+     * @return 不明な項目があればnull
+     */
+    private static Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL_FIELDS;
+        }
+        Set<String> selected = new HashSet<>();
+        for (String field : fields.split(",")) {
+            if (!ALL_FIELDS.contains(field.trim())) {
+                return null;
+            }
+            selected.add(field.trim());
+        }
+        return selected;
+    }
+
+    private static Question question(String keyword, int index, Map<String, Object> result, Set<String> fields) {
+        return new Question(keyword, index,
+                fields.contains(FIELD_QUIZ) ? (Quiz) result.get("quiz") : null,
+                fields.contains(FIELD_WIKIDATA) ? (WikidataInfo) result.get("wikidataInfo") : null);
+    }
+
+    /**
+     * 本文のハッシュをETagにして返す（一致した場合の304はSpring MVCが返す）
+     */
+    private ResponseEntity<byte[]> json(Object body) {
+        byte[] bytes = serialize(body);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(cacheControl())
+                .eTag(etag(bytes))
+                .body(bytes);
+    }
+
+    private ResponseEntity<byte[]> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(cacheControl())
+                .eTag(etag)
+                .build();
+    }
+
+    private CacheControl cacheControl() {
+        return CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePrivate();
+    }
+
+    // ★ 同じ問題・同じfieldsなら同じ本文になるため、生成の前に決まった問題からも同じETagが求まる
+    private static String etag(byte[] bytes) {
+        return "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"";
+    }
+
+    /**
+     * If-None-MatchにETagが含まれるか（弱いETag W/ も同じものとして扱う）
+     */
+    private static boolean matches(HttpServletRequest request, String etag) {
+        for (String header : Collections.list(request.getHeaders(HttpHeaders.IF_NONE_MATCH))) {
+            for (String tag : header.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.startsWith("W/")) {
+                    trimmed = trimmed.substring(2);
+                }
+                if (trimmed.equals(etag) || trimmed.equals("*")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private ResponseEntity<byte[]> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noStore())
+                .body(serialize(Map.of("error", message)));
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("JSONに変換できません", e);
+        }
+    }
+
+    // 1問分（fieldsで選ばなかった項目は出力しない）
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Question {
+        private final String keyword;
+        private final int index;
+        private final Quiz quiz;
+        private final WikidataInfo wikidataInfo;
+
+        public Question(String keyword, int index, Quiz quiz, WikidataInfo wikidataInfo) {
+            this.keyword = keyword;
+            this.index = index;
+            this.quiz = quiz;
+            this.wikidataInfo = wikidataInfo;
+        }
+
+        public String getKeyword() { return keyword; }
+        public int getIndex() { return index; }
+        public Quiz getQuiz() { return quiz; }
+        public WikidataInfo getWikidataInfo() { return wikidataInfo; }
+    }
+
+    // 動画の問題一式
+    public static class QuizSet {
+        private final String grade;
+        private final List<Question> questions;
+
+        public QuizSet(String grade, List<Question> questions) {
+            this.grade = grade;
+            this.questions = questions;
+        }
+
+        public String getGrade() { return grade; }
+        public List<Question> getQuestions() { return questions; }
+    }
+}
@@ -2,27 +2,46 @@ package com.example.chatgptquiz.controller;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.SessionAttributes;
+import org.springframework.web.bind.support.SessionStatus;
 
 import com.example.chatgptquiz.model.Quiz;
-import com.example.chatgptquiz.service.ChatGptQuizService;
+import com.example.chatgptquiz.service.OutboundHttpClient;
+import com.example.chatgptquiz.service.QuizBank;
+import com.example.chatgptquiz.service.QuizPrefetcher;
+import com.example.chatgptquiz.service.QuizSessionToken;
 import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
 
 @Controller
 @SessionAttributes({"correctCount", "totalCount"})
 public class QuizController {
 
-    private final ChatGptQuizService chatGptQuizService;
+    private static final Logger log = LoggerFactory.getLogger(QuizController.class);
+
+    private final QuizPrefetcher quizPrefetcher;
+    private final QuizSessionToken sessionToken;
+    private final QuizBank quizBank;
 
-    public QuizController(ChatGptQuizService chatGptQuizService) {
-        this.chatGptQuizService = chatGptQuizService;
+    // ★ ストリーミングモード（問題をServer-Sent Eventsで少しずつ表示する）
+    @Value("${app.quiz-stream.enabled:false}")
+    private boolean streamEnabled;
+
+    public QuizController(QuizPrefetcher quizPrefetcher, QuizSessionToken sessionToken, QuizBank quizBank) {
+        this.quizPrefetcher = quizPrefetcher;
+        this.sessionToken = sessionToken;
+        this.quizBank = quizBank;
     }
 
     @ModelAttribute("correctCount")
@@ -35,24 +54,37 @@ public class QuizController {
         return 0;
     }
 
+    /**
+     * ★ CompletableFutureを返し、生成を待つ間Tomcatのスレッドを解放する
+     */
     @GetMapping("/quiz")
-    public String quiz(
+    public CompletableFuture<String> quiz(
             @RequestParam("keyword") String keyword,
             @RequestParam("grade") String grade,
             @RequestParam(name = "index", defaultValue = "0") int index,
             @RequestParam(name = "isCorrect", required = false) Boolean isCorrect,
+            @RequestParam(name = "t", required = false) String token,
             @ModelAttribute("correctCount") Integer correctCount,
             @ModelAttribute("totalCount") Integer totalCount,
+            HttpServletRequest request,
+            SessionStatus sessionStatus,
             Model model
     ) {
 
-        System.out.println("🔍 受け取ったキーワード: [" + keyword + "]");
-        System.out.println("🔍 学年: [" + grade + "]");
-        System.out.println("🔍 インデックス: " + index);
-        System.out.println("🔍 正解フラグ: " + isCorrect);
+        log.info("🔍 クイズ要求 keyword=[{}] grade={} index={} isCorrect={}", keyword, grade, index, isCorrect);
+
+        List<String> keywordList = Arrays.asList(keyword.split("\\s+"));
 
-        // 最初の問題の場合、正解数をリセット
-        if (index == 0) {
+        // ★ ステートレスモード: 正解数などはHttpSessionではなくトークンから復元し、次のトークンを発行する
+        QuizSessionToken.State state = null;
+        if (sessionToken.isEnabled() && !keyword.isBlank()) {
+            state = resolveState(token, keywordList, grade, index, isCorrect);
+            correctCount = state.getCorrectCount();
+            totalCount = state.getTotalCount();
+            // HttpSessionに保存しない（セッションも作らない）
+            sessionStatus.setComplete();
+        } else if (index == 0) {
+            // 最初の問題の場合、正解数をリセット
             correctCount = 0;
             totalCount = 0;
         } else if (isCorrect != null) {
@@ -61,7 +93,7 @@ public class QuizController {
                 correctCount++;
             }
             totalCount++;
-            System.out.println("📊 正解数更新: " + correctCount + " / " + totalCount);
+            log.debug("📊 正解数更新 correct={} total={}", correctCount, totalCount);
         }
 
         model.addAttribute("correctCount", correctCount);
@@ -69,54 +101,79 @@ public class QuizController {
 
         if (keyword == null || keyword.isBlank()) {
             model.addAttribute("error", "キーワードが指定されていません");
-            return "error";
+            return CompletableFuture.completedFuture("error");
         }
 
-        List<String> keywordList = Arrays.asList(keyword.split("\\s+"));
-        System.out.println("📝 キーワードリスト: " + keywordList);
-
         // 全てのキーワードを処理し終えたら完了ページへ
         if (index >= keywordList.size()) {
             model.addAttribute("grade", grade);
-            return "quiz-finish";
+            return CompletableFuture.completedFuture("quiz-finish");
         }
 
         String currentKeyword = keywordList.get(index);
-        System.out.println("📌 現在のキーワード: [" + currentKeyword + "]");
-
-        try {
-            // ★ WikidataInfoも一緒に取得
-            Map<String, Object> result = chatGptQuizService.generateSingleQuizWithWikidata(currentKeyword, grade);
-            
-            Quiz quiz = (Quiz) result.get("quiz");
-            WikidataInfo wikidataInfo = (WikidataInfo) result.get("wikidataInfo");
-
-            model.addAttribute("quiz", quiz);
-            model.addAttribute("wikidataInfo", wikidataInfo); // ★ Wikidata情報を追加
+        String sessionId = state != null ? state.prefetchKey() : request.getSession().getId();
+        int bankVariant = state != null ? state.bankVariant(index) : -1;
+        model.addAttribute("sessionToken", state != null ? sessionToken.encode(state) : null);
+        log.debug("📌 現在のキーワード keyword=[{}] questions={}", currentKeyword, keywordList.size());
+
+        // ★ ストリーミングモードですぐに出せない場合は、ページだけ先に返す
+        // ★ 問題はページから /quiz/stream に接続して、生成された順に受け取る
+        if (streamEnabled && !quizPrefetcher.isReady(sessionId, keyword, grade, keywordList, index)) {
+            model.addAttribute("quiz", null);
+            model.addAttribute("streaming", true);
             model.addAttribute("grade", grade);
             model.addAttribute("keyword", keyword);
             model.addAttribute("index", index + 1);
             model.addAttribute("currentIndex", index);
             model.addAttribute("totalQuestions", keywordList.size());
+            return CompletableFuture.completedFuture("quiz");
+        }
 
-            System.out.println("✅ クイズ生成成功: " + quiz.getQuestion());
-            
-            // ★ Wikidata情報の取得状況をログ出力
-            if (wikidataInfo != null) {
-                System.out.println("✅ Wikidata情報取得成功: " + wikidataInfo.getLabel());
-            } else {
-                System.out.println("⚠️ Wikidata情報が取得できませんでした");
-            }
+        // ★ クイズバンク → 先読み済み → その場で生成 の順に取得（WikidataInfoも一緒に）
+        // ★ 続きの問題はバックグラウンドで先読みを開始
+        return quizPrefetcher.get(sessionId, keyword, grade, keywordList, index, null, bankVariant)
+            .handle((result, ex) -> {
+                if (ex != null) {
+                    Throwable e = OutboundHttpClient.unwrap(ex);
+                    log.error("❌ クイズ生成エラー keyword=[{}] grade={} error={}", currentKeyword, grade, e.getMessage(), e);
+                    model.addAttribute("quiz", null);
+                    model.addAttribute("wikidataInfo", null); // ★ エラー時はnull
+                    model.addAttribute("error", "クイズの生成に失敗しました: " + e.getMessage());
+                    return "quiz";
+                }
+
+                Quiz quiz = (Quiz) result.get("quiz");
+                WikidataInfo wikidataInfo = (WikidataInfo) result.get("wikidataInfo");
+
+                model.addAttribute("quiz", quiz);
+                model.addAttribute("wikidataInfo", wikidataInfo); // ★ Wikidata情報を追加
+                model.addAttribute("grade", grade);
+                model.addAttribute("keyword", keyword);
+                model.addAttribute("index", index + 1);
+                model.addAttribute("currentIndex", index);
+                model.addAttribute("totalQuestions", keywordList.size());
+
+                // ★ Wikidata情報の取得状況も一緒にログ出力
+                log.info("✅ クイズ生成成功 keyword=[{}] wikidata={} question={}",
+                        currentKeyword, wikidataInfo != null ? wikidataInfo.getLabel() : "-", quiz.getQuestion());
+
+                return "quiz";
+            });
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ クイズ生成エラー: " + e.getMessage());
-            e.printStackTrace();
-            model.addAttribute("quiz", null);
-            model.addAttribute("wikidataInfo", null); // ★ エラー時はnull
-            model.addAttribute("error", "クイズの生成に失敗しました: " + e.getMessage());
+    /**
+     * トークンから進行状態を復元（最初の問題・別のクイズ・不正なトークンの場合は新しく始める）
+     */
+    private QuizSessionToken.State resolveState(String token, List<String> keywordList, String grade,
+                                                int index, Boolean isCorrect) {
+        QuizSessionToken.State current = index > 0 ? sessionToken.decode(token) : null;
+        if (current != null && current.matches(keywordList, grade)) {
+            return current.advance(index, isCorrect);
         }
 
-        return "quiz";
+        if (index > 0) {
+            log.warn("⚠️ セッショントークンがないか無効なため、途中から数え直します index={}", index);
+        }
+        return sessionToken.start(keywordList, grade, quizBank).advance(index, null);
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package com.example.chatgptquiz.controller;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.chatgptquiz.model.Quiz;
+import com.example.chatgptquiz.service.OutboundHttpClient;
+import com.example.chatgptquiz.service.QuizPrefetcher;
+import com.example.chatgptquiz.service.QuizSessionToken;
+import com.example.chatgptquiz.service.QuizStreamListener;
+
+/**
+ * ストリーミングモードのクイズ配信（Server-Sent Events）
+ * ・question: 生成途中の問題文（その時点までの全体）
+ * ・choice: 確定した選択肢（{"index": 生成順, "text": 選択肢}）
+ * ・quiz: 完成したクイズ（question / choices / answerIndex / wikidataInfo）
+ * ・failure: 生成に失敗した場合のメッセージ
+ */
+@Controller
+public class QuizStreamController {
+
+    private static final Logger log = LoggerFactory.getLogger(QuizStreamController.class);
+
+    // ★ spring.mvc.async.request-timeout と同じ（OpenAIの読み取りタイムアウト60秒より長く）
+    private static final long STREAM_TIMEOUT_MS = 90_000;
+
+    private final QuizPrefetcher quizPrefetcher;
+    private final QuizSessionToken sessionToken;
+
+    public QuizStreamController(QuizPrefetcher quizPrefetcher, QuizSessionToken sessionToken) {
+        this.quizPrefetcher = quizPrefetcher;
+        this.sessionToken = sessionToken;
+    }
+
+    @GetMapping(path = "/quiz/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter quizStream(
+            @RequestParam("keyword") String keyword,
+            @RequestParam("grade") String grade,
+            @RequestParam(name = "index", defaultValue = "0") int index,
+            @RequestParam(name = "t", required = false) String token,
+            HttpServletRequest request
+    ) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+
+        List<String> keywordList = Arrays.asList(keyword.split("\\s+"));
+
+        if (keyword.isBlank() || index < 0 || index >= keywordList.size()) {
+            send(emitter, "failure", "キーワードが指定されていません");
+            emitter.complete();
+            return emitter;
+        }
+
+        // ★ ステートレスモードでは、ページと同じトークンから先読みのキーとバンクのパターン番号を取り出す
+        String sessionId = null;
+        int bankVariant = -1;
+        if (sessionToken.isEnabled()) {
+            QuizSessionToken.State state = sessionToken.decode(token);
+            if (state != null && state.matches(keywordList, grade) && state.getIndex() == index) {
+                sessionId = state.prefetchKey();
+                bankVariant = state.bankVariant(index);
+            }
+        } else {
+            sessionId = request.getSession().getId();
+        }
+
+        log.info("📡 ストリーミング配信開始 keyword=[{}] grade={} index={}", keywordList.get(index), grade, index);
+
+        QuizStreamListener listener = new QuizStreamListener() {
+            @Override
+            public void onQuestion(String question) {
+                send(emitter, "question", question);
+            }
+
+            @Override
+            public void onChoice(int choiceIndex, String choice) {
+                send(emitter, "choice", Map.of("index", choiceIndex, "text", choice));
+            }
+        };
+
+        // ★ 先読み済み・バンクにある場合は完成したクイズだけを送る
+        quizPrefetcher.get(sessionId, keyword, grade, keywordList, index, listener, bankVariant)
+            .whenComplete((result, ex) -> {
+                if (ex != null) {
+                    Throwable e = OutboundHttpClient.unwrap(ex);
+                    log.error("❌ クイズ生成エラー keyword=[{}] grade={} error={}", keywordList.get(index), grade, e.getMessage());
+                    send(emitter, "failure", "クイズの生成に失敗しました: " + e.getMessage());
+                    emitter.complete();
+                    return;
+                }
+
+                Quiz quiz = (Quiz) result.get("quiz");
+
+                Map<String, Object> data = new HashMap<>();
+                data.put("question", quiz.getQuestion());
+                data.put("choices", quiz.getChoices());
+                data.put("answerIndex", quiz.getAnswerIndex());
+                data.put("wikidataInfo", result.get("wikidataInfo"));
+
+                send(emitter, "quiz", data);
+                emitter.complete();
+
+                log.info("✅ ストリーミング配信完了 keyword=[{}] question={}", keywordList.get(index), quiz.getQuestion());
+            });
+
+        return emitter;
+    }
+
+    /**
+     * イベントを送信（ブラウザが閉じられた場合などは無視し、生成結果は捨てる）
+     */
+    private void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("⏭️ ストリーミング配信先が切断されました event={} error={}", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.chatgptquiz.controller;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.example.chatgptquiz.service.TokenUsageTracker;
+
+/**
+ * OpenAIのトークン使用量・料金の集計（起動から現在まで）をJSONで返す（/actuator/usage）
+ * ・groups: モデル × 学年 × Wikidata参考情報の有無 × 呼び出し方法ごとの合計
+ * ・topKeywords: 1回あたりのトークン数が多いキーワード
+ * ・recentCalls: 直近の呼び出し
+ * ★ 料金やキーワードを含むため、Actuatorのエンドポイントとして公開する
+ *   （management.endpoints.web.exposure.include に usage を含めたときだけ公開される）
+ */
+@Component
+@Endpoint(id = "usage")
+public class UsageEndpoint {
+
+    private static final int DEFAULT_TOP = 20;
+
+    private final TokenUsageTracker tokenUsageTracker;
+
+    public UsageEndpoint(TokenUsageTracker tokenUsageTracker) {
+        this.tokenUsageTracker = tokenUsageTracker;
+    }
+
+    @ReadOperation
+    public TokenUsageTracker.Report usage(@Nullable Integer top) {
+        return tokenUsageTracker.report(top != null ? top : DEFAULT_TOP);
+    }
+}
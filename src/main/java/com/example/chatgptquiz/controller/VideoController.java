@@ -1,13 +1,19 @@
 package com.example.chatgptquiz.controller;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.List;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import com.example.chatgptquiz.model.Video;
 import com.example.chatgptquiz.service.VideoService;
@@ -15,10 +21,14 @@ import com.example.chatgptquiz.service.VideoService;
 @Controller
 public class VideoController {
 
+    private static final Logger log = LoggerFactory.getLogger(VideoController.class);
+
     private final VideoService videoService;
+    private final PrerenderedVideoPages prerenderedPages;
 
-    public VideoController(VideoService videoService) {
+    public VideoController(VideoService videoService, PrerenderedVideoPages prerenderedPages) {
         this.videoService = videoService;
+        this.prerenderedPages = prerenderedPages;
     }
 
     @GetMapping("/")
@@ -29,8 +39,15 @@ public class VideoController {
     @GetMapping("/videos")
     public String videoList(
             @RequestParam(value = "grade", required = false) String grade,
-            Model model
-    ) {
+            Model model,
+            ServletWebRequest webRequest,
+            HttpServletResponse response
+    ) throws IOException {
+        // ★ 描画済みのページを返したらnull（HttpServletResponseを引数に取っているので、応答済みとして扱われる）
+        if (prerenderedPages.isEnabled() && prerenderedPages.serve(grade, webRequest)) {
+            return null;
+        }
+
         List<Video> videos;
 
         if (grade != null && !grade.isEmpty()) {
@@ -62,7 +79,7 @@ public class VideoController {
                    "&grade=" + encodedGrade + "&index=0";
                    
         } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+            log.error("❌ URLエンコードに失敗しました", e);
             return "error";
         }
     }
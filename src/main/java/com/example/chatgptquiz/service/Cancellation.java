@@ -0,0 +1,58 @@
+package com.example.chatgptquiz.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 生成の呼び出し元からのキャンセル要求（先読みが不要になった場合など）
+ * ・順番待ち（OpenAiRateLimiter）中の呼び出しは順番待ちから外し、OpenAIを呼び出さない
+ * ・送信済みの呼び出しは止めない（Futureは呼び出しが終わったときに完了する）
+ * ★ CompletableFuture.cancelは呼び出し元のFutureを完了させるだけで、その先の順番待ち・送信は止まらないため、これを渡して止める
+ */
+public final class Cancellation {
+
+    // ★ キャンセルしない呼び出し元（画面で待っている生成など）
+    public static final Cancellation NONE = new Cancellation();
+
+    private final CompletableFuture<Void> signal = new CompletableFuture<>();
+
+    public void cancel() {
+        if (this != NONE) {
+            signal.complete(null);
+        }
+    }
+
+    public boolean isCancelled() {
+        return signal.isDone();
+    }
+
+    /**
+     * キャンセルされたらactionを実行する（キャンセル済みならすぐに実行する）
+     */
+    public void onCancel(Runnable action) {
+        if (this != NONE) {
+            signal.thenRun(action);
+        }
+    }
+
+    /**
+     * すべてがキャンセルされたらキャンセルされる（まとめて生成を、その結果を待つ問題すべてが不要になったら止める）
+     */
+    public static Cancellation whenAll(List<Cancellation> cancellations) {
+        // NONEが含まれていればキャンセルされない
+        if (cancellations.contains(NONE)) {
+            return NONE;
+        }
+        Cancellation all = new Cancellation();
+        AtomicInteger remaining = new AtomicInteger(cancellations.size());
+        for (Cancellation cancellation : cancellations) {
+            cancellation.onCancel(() -> {
+                if (remaining.decrementAndGet() == 0) {
+                    all.cancel();
+                }
+            });
+        }
+        return all;
+    }
+}
@@ -1,40 +1,59 @@
 package com.example.chatgptquiz.service;
 
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
-import com.example.chatgptquiz.model.KeywordWikidataLink;
 import com.example.chatgptquiz.model.Quiz;
-import com.example.chatgptquiz.model.Video;
+import com.example.chatgptquiz.service.OpenAiRateLimiter.Priority;
+import com.example.chatgptquiz.service.VideoIndex.KeywordEntry;
 import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.Timer;
+
 @Service
 public class ChatGptQuizService {
 
-    private static final String OPENAI_API_URL =
-            "https://api.openai.com/v1/chat/completions";
+    private static final Logger log = LoggerFactory.getLogger(ChatGptQuizService.class);
+
+    // ★ プロンプト・レスポンス本文などの大きな出力（DEBUGのときだけ出す）
+    private static final Logger payloadLog = LoggerFactory.getLogger("com.example.chatgptquiz.payload");
+
+    // 読み取りタイムアウト60秒（接続タイムアウトはOutboundHttpClientで設定）
+    private static final Duration OPENAI_TIMEOUT = Duration.ofSeconds(60);
 
-    private final RestTemplate restTemplate;
+    private final OutboundHttpClient httpClient;
+    private final TokenUsageTracker tokenUsageTracker;
+    private final QuizMetrics metrics;
+    private final OpenAiCircuitBreaker circuitBreaker;
+    private final RetryBudget retryBudget;
+    private final OpenAiRateLimiter rateLimiter;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final String apiKey = System.getenv("OPENAI_API_KEY");
     
     // ★ 設定値をapplication.propertiesから取得
-    @Value("${app.enable-wikidata:false}")
-    private boolean enableWikidata;
+    // ★ 送信先（負荷試験・起動時間の計測ではスタブに向ける）
+    @Value("${openai.api-url:https://api.openai.com/v1/chat/completions}")
+    private String openaiApiUrl;
     
     @Value("${openai.model:gpt-4o}")
     private String openaiModel;
@@ -42,21 +61,44 @@ public class ChatGptQuizService {
     @Value("${openai.max-tokens:5000}")
     private int maxTokens;
     
+    // ★ 送信ペースの計算に使う、1問あたりの出力トークン数の見積もり
+    @Value("${app.openai-rate-limit.completion-tokens-per-question:300}")
+    private int completionTokensPerQuestion;
+    
     @Autowired
     private VideoService videoService;
     
     @Autowired
     private WikidataService wikidataService;
 
-    // ★ コンストラクタでタイムアウト設定
-    public ChatGptQuizService() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(30000);  // 接続タイムアウト30秒
-        factory.setReadTimeout(60000);     // 読み取りタイムアウト60秒
-        
-        this.restTemplate = new RestTemplate(factory);
+    // ★ レプリカ間で共有するキャッシュ（1つのレプリカが生成したクイズを他のレプリカでも使う）
+    @Autowired(required = false)
+    private TieredCache sharedCache;
+
+    // 指示文・スキーマを変えたら上げる（共有キャッシュのキーに含め、古い指示文のクイズを使わないように）
+    @Value("${app.shared-cache.prompt-version:1}")
+    private String promptVersion;
+
+    @Value("${app.shared-cache.quiz-ttl-minutes:60}")
+    private long sharedQuizTtlMinutes;
+
+    // ★ 同じ「キーワード × 学年 × モデル」の生成が実行中なら、新しく呼ばずにその結果を共有する
+    private final SingleFlight<String, Map<String, Object>> generations = new SingleFlight<>();
+    private final SingleFlight<String, List<Map<String, Object>>> quizSets = new SingleFlight<>();
+
+    // ★ 共通HTTPクライアント（接続の使い回し・同時実行数制限）
+    // ★ OpenAIの障害時はサーキットブレーカーですぐに失敗させ、一時的な失敗は予算の範囲で再試行する
+    // ★ 送信はOpenAiRateLimiterで順番待ちし、アカウントのレート上限を超えないようにする
+    public ChatGptQuizService(OutboundHttpClient httpClient, TokenUsageTracker tokenUsageTracker, QuizMetrics metrics,
+                              OpenAiCircuitBreaker circuitBreaker, RetryBudget retryBudget, OpenAiRateLimiter rateLimiter) {
+        this.httpClient = httpClient;
+        this.tokenUsageTracker = tokenUsageTracker;
+        this.metrics = metrics;
+        this.circuitBreaker = circuitBreaker;
+        this.retryBudget = retryBudget;
+        this.rateLimiter = rateLimiter;
         
-        System.out.println("✅ ChatGptQuizService初期化完了");
+        log.info("✅ ChatGptQuizService初期化完了");
     }
 
     /**
@@ -64,21 +106,432 @@ public class ChatGptQuizService {
      * ★ WikidataInfoも一緒に返す
      */
     public Map<String, Object> generateSingleQuizWithWikidata(String keyword, String grade) {
+        return OutboundHttpClient.await(generateSingleQuizWithWikidataAsync(keyword, grade));
+    }
+
+    /**
+     * generateSingleQuizWithWikidataの非同期版
+     * ★ Wikidata取得 → OpenAI呼び出しをつなげ、呼び出し元スレッドをブロックしない
+     * ★ 同時に同じキーワード・学年の問題を求められた場合（クラス全員が同じ動画を開いたなど）は1回だけ生成する
+     */
+    public CompletableFuture<Map<String, Object>> generateSingleQuizWithWikidataAsync(String keyword, String grade) {
+        return generateSingleQuizWithWikidataAsync(keyword, grade, null);
+    }
+
+    /**
+     * ストリーミング版（listenerがnullなら通常の生成）
+     * ★ OpenAIをstream=trueで呼び出し、問題文・選択肢を生成された順にlistenerへ通知する
+     * ★ 同じキーワード・学年の生成が実行中の場合はそれを待つ（途中経過は通知されず、完成したクイズだけが返る）
+     */
+    public CompletableFuture<Map<String, Object>> generateSingleQuizWithWikidataAsync(String keyword, String grade,
+                                                                                      QuizStreamListener listener) {
+        return generateSingleQuizWithWikidataAsync(keyword, grade, listener, Priority.INTERACTIVE);
+    }
+
+    /**
+     * 優先度を指定して生成（先読み・一括生成はBACKGROUNDにして、画面で待っている生成を先に送る）
+     * ★ 同じキーワード・学年の生成が実行中の場合は、最初の呼び出しの優先度のまま
+     */
+    public CompletableFuture<Map<String, Object>> generateSingleQuizWithWikidataAsync(String keyword, String grade,
+                                                                                      QuizStreamListener listener,
+                                                                                      Priority priority) {
+        return generateSingleQuizWithWikidataAsync(keyword, grade, listener, priority, Cancellation.NONE);
+    }
+
+    /**
+     * キャンセルできる版（先読みが不要になったら、順番待ち中の呼び出しを止める）
+     * ★ 同じキーワード・学年の生成を待っている呼び出し元すべてがキャンセルした場合だけ止める
+     * ★ 返すFutureは生成が止まる（送信済みなら応答を受け取る）まで完了しない
+     */
+    public CompletableFuture<Map<String, Object>> generateSingleQuizWithWikidataAsync(String keyword, String grade,
+                                                                                      QuizStreamListener listener,
+                                                                                      Priority priority,
+                                                                                      Cancellation cancellation) {
+        String key = keyword + "\t" + grade + "\t" + openaiModel;
+        
+        // 呼び出し元ごとに結果のMapを分ける（共有したMapを書き換えられないように）
+        return generations.execute(key, cancellation, running -> getSharedQuizAsync(keyword, grade).thenCompose(shared -> {
+                // ★ 他のレプリカが生成済みならOpenAIを呼ばない（ストリーミングでも完成したクイズだけを返す）
+                if (shared != null) {
+                    log.info("⚡ 共有キャッシュのクイズを使用 keyword=[{}] grade={}", keyword, grade);
+                    return CompletableFuture.completedFuture(shared);
+                }
+                return generate(keyword, grade, listener, priority, running).thenApply(result -> {
+                    putSharedQuiz(keyword, grade, result);
+                    return result;
+                });
+            }))
+            .thenApply(HashMap::new);
+    }
+
+    /**
+     * 別パターンの問題を新しく生成（クイズバンクの生成用）
+     * ★ 共有キャッシュ・実行中の生成は使わない（使うと同じ問題が返り、パターンがすべて同じになる）
+     * ★ 共有キャッシュにも保存しない（画面に出している共有のクイズを入れ替えないように）
+     */
+    public CompletableFuture<Map<String, Object>> generateQuizVariantAsync(String keyword, String grade, Priority priority) {
+        return generate(keyword, grade, null, priority, Cancellation.NONE);
+    }
+
+    /**
+     * 動画のキーワードすべての問題を、1回のOpenAI呼び出しでまとめて生成
+     * ★ 指示文・JSONスキーマを1回分にまとめ、往復回数とプロンプトのトークン数を減らす
+     * ★ 結果はkeywordsと同じ順番（各要素はgenerateSingleQuizWithWikidataと同じ形、生成できなかったものはnull）
+     */
+    public CompletableFuture<List<Map<String, Object>>> generateQuizSetWithWikidataAsync(List<String> keywords, String grade) {
+        return generateQuizSetWithWikidataAsync(keywords, grade, Cancellation.NONE);
+    }
+
+    /**
+     * キャンセルできる版（generateSingleQuizWithWikidataAsyncと同じ）
+     */
+    public CompletableFuture<List<Map<String, Object>>> generateQuizSetWithWikidataAsync(List<String> keywords, String grade,
+                                                                                       Cancellation cancellation) {
+        String key = String.join(" ", keywords) + "\t" + grade + "\t" + openaiModel;
         
-        WikidataInfo wikidataInfo = null;
+        return quizSets.execute(key, cancellation, running -> generateSet(keywords, grade, running).thenApply(results -> {
+                // ★ まとめて生成した問題も1問ずつ共有する
+                for (int i = 0; i < results.size(); i++) {
+                    putSharedQuiz(keywords.get(i), grade, results.get(i));
+                }
+                return results;
+            }))
+            .thenApply(results -> {
+                // 呼び出し元ごとに結果のMapを分ける
+                List<Map<String, Object>> copy = new ArrayList<>(results.size());
+                for (Map<String, Object> result : results) {
+                    copy.add(result != null ? new HashMap<>(result) : null);
+                }
+                return copy;
+            });
+    }
+
+    /**
+     * 共有キャッシュから生成済みのクイズを取得（generateSingleQuizWithWikidataと同じ形、なければnullで完了）
+     * ★ 共有の保存先との通信はTieredCacheの専用スレッドで行う（呼び出し元スレッドをブロックしない）
+     */
+    private CompletableFuture<Map<String, Object>> getSharedQuizAsync(String keyword, String grade) {
+        if (sharedCache == null || !sharedCache.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return sharedCache.getAsync("quiz", sharedQuizVersion(), grade + "\t" + keyword, SharedQuiz.class)
+            .thenApply(shared -> {
+                if (shared == null || shared.getQuiz() == null) {
+                    return null;
+                }
+                Map<String, Object> result = new HashMap<>();
+                result.put("quiz", shared.getQuiz());
+                result.put("wikidataInfo", shared.getWikidataInfo());
+                return result;
+            });
+    }
+
+    // ★ 共有の保存先への書き込みは完了を待たない
+    private void putSharedQuiz(String keyword, String grade, Map<String, Object> result) {
+        if (sharedCache == null || !sharedCache.isEnabled() || result == null || result.get("quiz") == null) {
+            return;
+        }
+        sharedCache.put("quiz", sharedQuizVersion(), grade + "\t" + keyword,
+            new SharedQuiz((Quiz) result.get("quiz"), (WikidataInfo) result.get("wikidataInfo")),
+            Duration.ofMinutes(sharedQuizTtlMinutes));
+    }
+
+    // ★ モデルと指示文のバージョンで分ける
+    private String sharedQuizVersion() {
+        return openaiModel + "-p" + promptVersion;
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> generateSet(List<String> keywords, String grade,
+                                                                     Cancellation cancellation) {
         
-        // ★ Wikidata機能が有効な場合のみ取得を試みる
-        if (enableWikidata) {
-            System.out.println("🔍 Wikidata取得を試行中...");
-            try {
-                wikidataInfo = getWikidataInfoForKeyword(keyword, grade);
-            } catch (Exception e) {
-                System.err.println("⚠️ Wikidata取得をスキップ: " + e.getMessage());
+        // ★ キーワードごとのWikidata取得は並行して行う
+        List<CompletableFuture<WikidataInfo>> wikidataFutures = new ArrayList<>(keywords.size());
+        
+        for (String keyword : keywords) {
+            if (wikidataService.isEnabled()) {
+                wikidataFutures.add(getWikidataInfoForKeyword(keyword, grade)
+                    .exceptionally(e -> {
+                        log.warn("⚠️ Wikidata取得をスキップ keyword={} error={}", keyword, OutboundHttpClient.unwrap(e).getMessage());
+                        return null;
+                    }));
+            } else {
+                wikidataFutures.add(CompletableFuture.completedFuture(null));
+            }
+        }
+        
+        if (!wikidataService.isEnabled()) {
+            log.debug("⏭️ Wikidata取得はスキップされました（設定で無効）");
+        }
+        
+        return CompletableFuture.allOf(wikidataFutures.toArray(new CompletableFuture[0]))
+            .thenCompose(v -> {
+                List<WikidataInfo> wikidataInfos = new ArrayList<>(keywords.size());
+                for (CompletableFuture<WikidataInfo> future : wikidataFutures) {
+                    wikidataInfos.add(future.join());
+                }
+                return requestQuizSet(keywords, grade, wikidataInfos, cancellation);
+            });
+    }
+
+    /**
+     * OpenAI APIで複数キーワードの問題をまとめて生成
+     */
+    private CompletableFuture<List<Map<String, Object>>> requestQuizSet(List<String> keywords, String grade,
+                                                                      List<WikidataInfo> wikidataInfos,
+                                                                      Cancellation cancellation) {
+
+        CompletableFuture<List<Map<String, Object>>> future;
+
+        try {
+            StringBuilder prompt = new StringBuilder();
+            prompt.append("次の各キーワードについて、そのキーワードを答えにした4択問題を1問ずつ作成してください。\n");
+            prompt.append("対象学年：").append(grade).append("\n\n");
+            
+            for (int i = 0; i < keywords.size(); i++) {
+                prompt.append(String.format("【%d】キーワード：%s\n", i + 1, keywords.get(i)));
+                
+                String wikidataContext = formatWikidataForPrompt(wikidataInfos.get(i));
+                if (!wikidataContext.isEmpty()) {
+                    prompt.append("=== 参考情報（問題作成のヒント） ===\n")
+                          .append(wikidataContext)
+                          .append("====================================\n");
+                }
+                prompt.append("\n");
             }
+            
+            prompt.append("quizzesには上のキーワードと同じ順番で1問ずつ入れ、keywordにはキーワードをそのまま入れてください。\n");
+            prompt.append("短い文章にしてください。\n");
+            prompt.append("説明文・前置き・コードブロックは禁止です。");
+
+            Map<String, Object> itemProperties = new LinkedHashMap<>();
+            itemProperties.put("keyword", Map.of("type", "string"));
+            itemProperties.putAll(quizSchemaProperties());
+
+            Map<String, Object> schema = Map.of(
+                "type", "object",
+                "properties", Map.of(
+                    "quizzes", Map.of(
+                        "type", "array",
+                        "items", Map.of(
+                            "type", "object",
+                            "properties", itemProperties,
+                            "required", List.of("keyword", "question", "choices", "answerIndex")
+                        ),
+                        "minItems", keywords.size(),
+                        "maxItems", keywords.size()
+                    )
+                ),
+                "required", List.of("quizzes")
+            );
+
+            String json = toRequestJson(prompt.toString(), "quiz_set", schema, false);
+            log.debug("まとめて生成 questions={} keywords={}", keywords.size(), keywords);
+            
+            TokenUsageTracker.Call usage = usageCall("batch", String.join(" ", keywords), grade,
+                wikidataInfos.stream().anyMatch(info -> info != null));
+            usage.setQuestions(keywords.size());
+            long startNanos = System.nanoTime();
+            
+            // ★ まとめて生成は最初の問題を画面で待っているため、INTERACTIVEで送る
+            future = callOpenAi(() -> timeOpenAi(httpClient.postJsonForResponseAsync(
+                openaiApiUrl,
+                json,
+                Map.of("Authorization", "Bearer " + apiKey),
+                OPENAI_TIMEOUT
+            ), "batch", grade), Priority.INTERACTIVE, grade, estimateTokens(json, keywords.size()), true, cancellation)
+                .thenApply(response -> parseQuizSetResponse(response.body(), keywords, wikidataInfos, usage, startNanos));
+
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return translateErrors(future);
+    }
+
+    /**
+     * まとめて生成したレスポンスから、キーワードごとのQuizを取り出す
+     * ★ keywordが一致するものを優先し、見つからなければ同じ位置のものを使う
+     */
+    private List<Map<String, Object>> parseQuizSetResponse(String response, List<String> keywords,
+                                                           List<WikidataInfo> wikidataInfos,
+                                                           TokenUsageTracker.Call usage, long startNanos) {
+        if (response == null || response.isEmpty()) {
+            throw new RuntimeException("OpenAI APIからレスポンスがありませんでした");
+        }
+
+        payloadLog.debug("🤖 OpenAI 生レスポンス:\n{}", response);
+
+        JsonNode quizzes;
+        try {
+            JsonNode root = objectMapper.readTree(response);
+            recordUsage(usage, startNanos, root);
+            
+            String content = root.path("choices").path(0).path("message").path("content").asText();
+            
+            if (content.isBlank()) {
+                throw new RuntimeException("GPTが出力を返しませんでした（token不足）");
+            }
+            
+            payloadLog.debug("📄 生成クイズJSON:\n{}", content);
+            
+            quizzes = objectMapper.readTree(content).path("quizzes");
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("OpenAI APIのレスポンスを解析できませんでした: " + e.getMessage(), e);
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(keywords.size());
+        
+        for (int i = 0; i < keywords.size(); i++) {
+            JsonNode node = null;
+            for (JsonNode candidate : quizzes) {
+                if (keywords.get(i).equals(candidate.path("keyword").asText())) {
+                    node = candidate;
+                    break;
+                }
+            }
+            if (node == null) {
+                node = quizzes.path(i);
+            }
+            
+            Quiz quiz = toQuiz(node);
+            if (quiz == null) {
+                log.warn("⚠️ まとめて生成の結果に問題がありません keyword={}", keywords.get(i));
+                results.add(null);
+                continue;
+            }
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("quiz", quiz);
+            result.put("wikidataInfo", wikidataInfos.get(i));
+            results.add(result);
+        }
+        
+        log.info("✅ まとめて生成成功 generated={} requested={}", results.stream().filter(r -> r != null).count(), keywords.size());
+        
+        return results;
+    }
+
+    /**
+     * JSONの1要素をQuizにする（4択として不完全な場合はnull）
+     */
+    private Quiz toQuiz(JsonNode node) {
+        JsonNode choices = node.path("choices");
+        int answerIndex = node.path("answerIndex").asInt(-1);
+        
+        if (node.path("question").asText().isBlank() || !choices.isArray() || choices.size() != 4
+                || answerIndex < 0 || answerIndex >= choices.size()) {
+            return null;
+        }
+        
+        List<String> choiceList = new ArrayList<>(choices.size());
+        choices.forEach(choice -> choiceList.add(choice.asText()));
+        
+        Quiz quiz = new Quiz();
+        quiz.setQuestion(node.path("question").asText());
+        quiz.setChoices(choiceList);
+        quiz.setAnswerIndex(answerIndex);
+        return quiz;
+    }
+
+    /**
+     * Wikidata取得 → OpenAI呼び出しで1問生成
+     */
+    private CompletableFuture<Map<String, Object>> generate(String keyword, String grade, QuizStreamListener listener,
+                                                            Priority priority, Cancellation cancellation) {
+        
+        CompletableFuture<WikidataInfo> wikidataFuture;
+        
+        // ★ Wikidata機能が有効な場合のみ取得を試みる
+        if (wikidataService.isEnabled()) {
+            wikidataFuture = getWikidataInfoForKeyword(keyword, grade)
+                .exceptionally(e -> {
+                    log.warn("⚠️ Wikidata取得をスキップ keyword={} error={}", keyword, OutboundHttpClient.unwrap(e).getMessage());
+                    return null;
+                });
         } else {
-            System.out.println("⏭️ Wikidata取得はスキップされました（設定で無効）");
+            log.debug("⏭️ Wikidata取得はスキップされました（設定で無効）");
+            wikidataFuture = CompletableFuture.completedFuture(null);
         }
         
+        return wikidataFuture.thenCompose(wikidataInfo -> listener != null
+            ? requestQuizStream(keyword, grade, wikidataInfo, listener, priority, cancellation)
+            : requestQuiz(keyword, grade, wikidataInfo, priority, cancellation));
+    }
+
+    /**
+     * OpenAI APIでクイズを1問生成
+     */
+    private CompletableFuture<Map<String, Object>> requestQuiz(String keyword, String grade, WikidataInfo wikidataInfo,
+                                                               Priority priority, Cancellation cancellation) {
+
+        CompletableFuture<Map<String, Object>> future;
+
+        try {
+            String json = buildRequestJson(keyword, grade, wikidataInfo, false);
+            
+            TokenUsageTracker.Call usage = usageCall("single", keyword, grade, wikidataInfo != null);
+            long startNanos = System.nanoTime();
+            
+            future = callOpenAi(() -> timeOpenAi(httpClient.postJsonForResponseAsync(
+                openaiApiUrl,
+                json,
+                Map.of("Authorization", "Bearer " + apiKey),
+                OPENAI_TIMEOUT
+            ), "single", grade), priority, grade, estimateTokens(json, 1), true, cancellation)
+                .thenApply(response -> parseQuizResponse(response.body(), wikidataInfo, usage, startNanos));
+
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return translateErrors(future);
+    }
+
+    /**
+     * OpenAI APIでクイズを1問生成（stream=true、途中経過をlistenerへ通知）
+     */
+    private CompletableFuture<Map<String, Object>> requestQuizStream(String keyword, String grade, WikidataInfo wikidataInfo,
+                                                                     QuizStreamListener listener, Priority priority,
+                                                                     Cancellation cancellation) {
+
+        CompletableFuture<Map<String, Object>> future;
+
+        try {
+            String json = buildRequestJson(keyword, grade, wikidataInfo, true);
+            
+            // ★ 受信スレッドからのみ書き込み、完了後に読む
+            StreamState state = new StreamState();
+            QuizStreamParser parser = new QuizStreamParser(listener);
+            
+            TokenUsageTracker.Call usage = usageCall("stream", keyword, grade, wikidataInfo != null);
+            long startNanos = System.nanoTime();
+            
+            // ★ 途中経過をlistenerへ通知済みの場合があるため、ストリーミングは再試行しない
+            future = callOpenAi(() -> timeOpenAi(httpClient.postJsonStreamAsync(
+                openaiApiUrl,
+                json,
+                Map.of("Authorization", "Bearer " + apiKey),
+                OPENAI_TIMEOUT,
+                line -> acceptStreamLine(line, state, parser)
+            ), "stream", grade), priority, grade, estimateTokens(json, 1), false, cancellation).thenApply(response -> {
+                recordUsage(usage, startNanos, state.usage, state.finishReason);
+                return toResult(state.content.toString(), wikidataInfo);
+            });
+
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return translateErrors(future);
+    }
+
+    /**
+     * リクエスト本文（JSON）を作成
+     */
+    private String buildRequestJson(String keyword, String grade, WikidataInfo wikidataInfo, boolean stream) throws Exception {
+        
         String wikidataContext = formatWikidataForPrompt(wikidataInfo);
 
         String prompt = String.format(
@@ -99,112 +552,340 @@ public class ChatGptQuizService {
             grade
         );
 
-        try {
-            Map<String, Object> requestBody = Map.of(
-                "model", openaiModel,  // ★ 設定ファイルから取得
-                "messages", List.of(
-                    Map.of("role", "user", "content", prompt)
-                ),
-                "max_completion_tokens", maxTokens,  // ★ 設定ファイルから取得
-                "response_format", Map.of(
-                    "type", "json_schema",
-                    "json_schema", Map.of(
-                        "name", "quiz",
-                        "schema", Map.of(
-                            "type", "object",
-                            "properties", Map.of(
-                                "question", Map.of("type", "string"),
-                                "choices", Map.of(
-                                    "type", "array",
-                                    "items", Map.of("type", "string"),
-                                    "minItems", 4,
-                                    "maxItems", 4
-                                ),
-                                "answerIndex", Map.of("type", "integer")
-                            ),
-                            "required", List.of("question", "choices", "answerIndex")
-                        )
-                    )
+        return toRequestJson(prompt, "quiz", quizSchema(), stream);
+    }
+
+    /**
+     * クイズ1問分のJSONスキーマ
+     */
+    private Map<String, Object> quizSchema() {
+        return Map.of(
+            "type", "object",
+            "properties", quizSchemaProperties(),
+            "required", List.of("question", "choices", "answerIndex")
+        );
+    }
+
+    /**
+     * クイズ1問分のプロパティ
+     * ★ 生成される順番（問題文 → 選択肢 → 正解）を固定するため、順序つきのMapにする
+     */
+    private Map<String, Object> quizSchemaProperties() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("question", Map.of("type", "string"));
+        properties.put("choices", Map.of(
+            "type", "array",
+            "items", Map.of("type", "string"),
+            "minItems", 4,
+            "maxItems", 4
+        ));
+        properties.put("answerIndex", Map.of("type", "integer"));
+        return properties;
+    }
+
+    /**
+     * プロンプトとJSONスキーマからリクエスト本文（JSON）を作成
+     */
+    private String toRequestJson(String prompt, String schemaName, Map<String, Object> schema, boolean stream) throws Exception {
+
+        Map<String, Object> requestBody = new HashMap<>(Map.of(
+            "model", openaiModel,  // ★ 設定ファイルから取得
+            "messages", List.of(
+                Map.of("role", "user", "content", prompt)
+            ),
+            "max_completion_tokens", maxTokens,  // ★ 設定ファイルから取得
+            "response_format", Map.of(
+                "type", "json_schema",
+                "json_schema", Map.of(
+                    "name", schemaName,
+                    "schema", schema
                 )
-            );
+            )
+        ));
 
-            String json = objectMapper.writeValueAsString(requestBody);
+        // ★ ストリーミングでは生成された分から順に受け取る（使用トークン数は最後のチャンクで受け取る）
+        if (stream) {
+            requestBody.put("stream", true);
+            requestBody.put("stream_options", Map.of("include_usage", true));
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
+        String json = objectMapper.writeValueAsString(requestBody);
 
-            HttpEntity<String> entity = new HttpEntity<>(json, headers);
+        log.info("🚀 OpenAI APIリクエスト送信 schema={} model={} maxTokens={} stream={}", schemaName, openaiModel, maxTokens, stream);
+        payloadLog.debug("プロンプト:\n{}", prompt);
+        
+        return json;
+    }
 
-            System.out.println("🚀 OpenAI APIリクエスト送信中...");
-            System.out.println("   モデル: " + openaiModel);
-            System.out.println("   最大トークン: " + maxTokens);
-            
-            String response = restTemplate.postForObject(
-                OPENAI_API_URL,
-                entity,
-                String.class
-            );
-            
-            // ★ レスポンスのnullチェック
-            if (response == null || response.isEmpty()) {
-                throw new RuntimeException("OpenAI APIからレスポンスがありませんでした");
+    /**
+     * OpenAIの応答を受け取り終わるまでの時間を計測
+     */
+    private <T> CompletableFuture<T> timeOpenAi(CompletableFuture<T> future, String kind, String grade) {
+        return metrics.time(future, QuizMetrics.OPENAI_REQUEST,
+            "model", openaiModel, "kind", kind, "grade", QuizMetrics.grade(grade));
+    }
+
+    /**
+     * レート制限の順番待ち → サーキットブレーカーを通してOpenAIを呼び出す（retryなら一時的な失敗を再試行する）
+     * ★ 学年ごとに順番に送る（1つの学年の生成が送信枠を占有しないように）
+     * ★ 応答のレート制限ヘッダー（429のRetry-Afterなど）は次の送信ペースに反映する
+     * ★ cancellationがキャンセルされたら、順番待ち中・送信前の呼び出しはOpenAIに送らない
+     * ★ サーキットブレーカーがOPENなら順番待ちに入れずにすぐ失敗させ、待っている間にOPENになった場合は送信枠を戻す
+     */
+    private CompletableFuture<HttpResponse<String>> callOpenAi(Supplier<CompletableFuture<HttpResponse<String>>> call,
+                                                               Priority priority, String grade, long estimatedTokens,
+                                                               boolean retry, Cancellation cancellation) {
+        Supplier<CompletableFuture<HttpResponse<String>>> attempt = () -> {
+            if (!circuitBreaker.isCallPermitted()) {
+                return CompletableFuture.failedFuture(new OpenAiCircuitBreaker.CircuitOpenException());
             }
+            return rateLimiter.acquire(priority, grade, estimatedTokens, cancellation)
+                .thenCompose(v -> {
+                    // 送り出された直後にキャンセルされた場合も送らない（取った送信枠は戻す）
+                    if (cancellation.isCancelled()) {
+                        rateLimiter.release(estimatedTokens);
+                        return CompletableFuture.<HttpResponse<String>>failedFuture(
+                            new CancellationException("生成はキャンセルされました"));
+                    }
+                    return circuitBreaker.execute(call, ChatGptQuizService::isTransient)
+                        .whenComplete((response, e) -> {
+                            if (e != null && OutboundHttpClient.unwrap(e) instanceof OpenAiCircuitBreaker.CircuitOpenException) {
+                                rateLimiter.release(estimatedTokens);
+                            }
+                        });
+                })
+                .whenComplete((response, e) -> {
+                    if (response != null) {
+                        rateLimiter.onResponse(response.headers()::firstValue, false);
+                    } else {
+                        rateLimiter.onError(OutboundHttpClient.unwrap(e));
+                    }
+                });
+        };
+        return retry ? retryBudget.execute(attempt, ChatGptQuizService::isTransient) : attempt.get();
+    }
 
-            System.out.println("🤖 OpenAI 生レスポンス:\n" + response);
+    /**
+     * 1回の呼び出しで使うトークン数の見積もり
+     * ★ プロンプトは日本語が約1文字1トークン、英数字（JSONスキーマなど）は約4文字1トークンのため、間をとって2文字1トークン
+     */
+    private long estimateTokens(String json, int questions) {
+        return json.length() / 2 + (long) Math.min(maxTokens, completionTokensPerQuestion * questions);
+    }
 
-            JsonNode root = objectMapper.readTree(response);
-            String content = root
-                    .get("choices")
-                    .get(0)
-                    .get("message")
-                    .get("content")
-                    .asText();
-
-            if (content == null || content.isBlank()) {
-                throw new RuntimeException("GPTが出力を返しませんでした（token不足）");
+    /**
+     * 一時的な失敗か（接続エラー・タイムアウト・5xx・429）
+     * ★ APIキー誤りなどの4xxは再試行しても同じ結果になるため含めない
+     */
+    private static boolean isTransient(Throwable e) {
+        return e instanceof ResourceAccessException
+            || e instanceof HttpServerErrorException
+            || (e instanceof HttpClientErrorException
+                && ((HttpClientErrorException) e).getStatusCode().value() == 429);
+    }
+
+    /**
+     * エラーを従来と同じメッセージの例外に変換
+     */
+    private <T> CompletableFuture<T> translateErrors(CompletableFuture<T> future) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(translateError(OutboundHttpClient.unwrap(ex)));
+            } else {
+                result.complete(value);
             }
+        });
+        return result;
+    }
 
-            System.out.println("📄 生成クイズJSON:\n" + content);
+    /**
+     * ストリーミング応答の1行を処理（"data: {...}" の行から生成された文字列を取り出す）
+     */
+    private void acceptStreamLine(String line, StreamState state, QuizStreamParser parser) {
+        if (!line.startsWith("data:")) {
+            return;
+        }
+        
+        String data = line.substring(5).trim();
+        if (data.isEmpty() || "[DONE]".equals(data)) {
+            return;
+        }
+        
+        JsonNode chunk;
+        try {
+            chunk = objectMapper.readTree(data);
+        } catch (Exception e) {
+            throw new RuntimeException("ストリーミング応答を解析できませんでした: " + e.getMessage(), e);
+        }
+        
+        JsonNode choice = chunk.path("choices").path(0);
+        JsonNode delta = choice.path("delta").path("content");
+        
+        if (delta.isTextual()) {
+            state.content.append(delta.asText());
+            parser.feed(delta.asText());
+        }
+        if (choice.path("finish_reason").isTextual()) {
+            state.finishReason = choice.path("finish_reason").asText();
+        }
+        if (chunk.path("usage").isObject()) {
+            state.usage = chunk.path("usage");
+        }
+    }
 
-            Quiz quiz = Quiz.fromJson(content);
-            
-            // ★ QuizとWikidataInfoを両方返す
-            Map<String, Object> result = new HashMap<>();
-            result.put("quiz", quiz);
-            result.put("wikidataInfo", wikidataInfo);
+    /**
+     * ストリーミング応答の受信状態（生成された文字列・最後に届いた使用トークン数）
+     */
+    private static class StreamState {
+        final StringBuilder content = new StringBuilder();
+        JsonNode usage;
+        String finishReason;
+    }
+
+    /**
+     * トークン使用量の記録を作成（送信直前に呼ぶ）
+     */
+    private TokenUsageTracker.Call usageCall(String kind, String keyword, String grade, boolean wikidata) {
+        TokenUsageTracker.Call call = new TokenUsageTracker.Call();
+        call.setModel(openaiModel);
+        call.setKind(kind);
+        call.setKeyword(keyword);
+        call.setGrade(grade);
+        call.setWikidata(wikidata);
+        return call;
+    }
+
+    /**
+     * レスポンス全体からトークン使用量を記録
+     */
+    private void recordUsage(TokenUsageTracker.Call call, long startNanos, JsonNode root) {
+        recordUsage(call, startNanos, root.path("usage"), root.path("choices").path(0).path("finish_reason").asText(null));
+    }
+
+    /**
+     * トークン使用量を記録（usageが返されなかった場合は0として数える）
+     */
+    private void recordUsage(TokenUsageTracker.Call call, long startNanos, JsonNode usage, String finishReason) {
+        call.setLatencyMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        call.setFinishReason(finishReason);
+        if (usage != null) {
+            call.setPromptTokens(usage.path("prompt_tokens").asLong());
+            call.setCompletionTokens(usage.path("completion_tokens").asLong());
+            call.setCachedTokens(usage.path("prompt_tokens_details").path("cached_tokens").asLong());
+        }
+        tokenUsageTracker.record(call);
+        metrics.tokens(call.getModel(), call.getPromptTokens(), call.getCompletionTokens());
+    }
+
+    /**
+     * OpenAI APIのレスポンスからQuizを取り出す
+     */
+    private Map<String, Object> parseQuizResponse(String response, WikidataInfo wikidataInfo,
+                                                  TokenUsageTracker.Call usage, long startNanos) {
+        // ★ レスポンスのnullチェック
+        if (response == null || response.isEmpty()) {
+            throw new RuntimeException("OpenAI APIからレスポンスがありませんでした");
+        }
+
+        payloadLog.debug("🤖 OpenAI 生レスポンス:\n{}", response);
+
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(response);
+        } catch (Exception e) {
+            throw new RuntimeException("OpenAI APIのレスポンスを解析できませんでした: " + e.getMessage(), e);
+        }
+
+        recordUsage(usage, startNanos, root);
+
+        String content = root
+                .get("choices")
+                .get(0)
+                .get("message")
+                .get("content")
+                .asText();
+
+        return toResult(content, wikidataInfo);
+    }
+
+    /**
+     * 生成されたクイズJSONを、QuizとWikidataInfoのMapにする
+     */
+    private Map<String, Object> toResult(String content, WikidataInfo wikidataInfo) {
+        if (content == null || content.isBlank()) {
+            throw new RuntimeException("GPTが出力を返しませんでした（token不足）");
+        }
+
+        payloadLog.debug("📄 生成クイズJSON:\n{}", content);
+
+        Timer.Sample sample = metrics.start();
+        Quiz quiz;
+        try {
+            quiz = Quiz.fromJson(content);
+        } catch (RuntimeException e) {
+            metrics.stop(sample, QuizMetrics.QUIZ_PARSE, "outcome", "error");
+            metrics.error("quiz_parse");
+            throw e;
+        }
+        metrics.stop(sample, QuizMetrics.QUIZ_PARSE, "outcome", "success");
+        
+        // ★ QuizとWikidataInfoを両方返す
+        Map<String, Object> result = new HashMap<>();
+        result.put("quiz", quiz);
+        result.put("wikidataInfo", wikidataInfo);
+        
+        log.debug("✅ クイズ生成成功");
+        
+        return result;
+    }
+
+    /**
+     * OpenAI呼び出しの例外を利用者向けメッセージの例外に変換
+     */
+    private RuntimeException translateError(Throwable e) {
+        // ★ 呼び出し元がキャンセルした（失敗ではないため、エラーとして数えない）
+        if (e instanceof CancellationException) {
+            return (CancellationException) e;
+        }
+        
+        if (e instanceof OpenAiCircuitBreaker.CircuitOpenException || e instanceof OpenAiRateLimiter.QueueFullException) {
+            metrics.error(e instanceof OpenAiRateLimiter.QueueFullException ? "openai_queue_full" : "openai_circuit_open");
             
-            System.out.println("✅ クイズ生成成功");
+            log.warn("⏭️ OpenAI APIを呼び出せないため生成しません reason={} state={}", e.getMessage(), circuitBreaker.getState());
+            return new RuntimeException("OpenAI APIが混み合っています。しばらくしてから再度お試しください", e);
+        }
+        
+        if (e instanceof ResourceAccessException) {
+            metrics.error("openai_network");
             
-            return result;
-
-        } catch (ResourceAccessException e) {
             // ★ ネットワークエラー用の詳細メッセージ
-            System.err.println("❌ OpenAI APIへの接続に失敗しました");
-            System.err.println("原因: " + e.getMessage());
-            System.err.println("\n【対処方法】");
-            System.err.println("1. インターネット接続を確認してください");
-            System.err.println("2. ファイアウォール/プロキシ設定を確認してください");
-            System.err.println("3. 無線接続に切り替えてみてください");
-            throw new RuntimeException("OpenAI APIへの接続エラー。ネットワーク設定を確認してください", e);
+            log.error("❌ OpenAI APIへの接続に失敗しました error={}"
+                    + "（インターネット接続・ファイアウォール/プロキシ設定を確認するか、無線接続に切り替えてみてください）",
+                    e.getMessage());
+            return new RuntimeException("OpenAI APIへの接続エラー。ネットワーク設定を確認してください", e);
+        }
+        
+        if (e instanceof HttpClientErrorException) {
+            HttpClientErrorException httpError = (HttpClientErrorException) e;
+            metrics.error("openai_client_error");
             
-        } catch (HttpClientErrorException e) {
             // ★ APIエラー用の詳細メッセージ
-            System.err.println("❌ OpenAI APIエラー: " + e.getStatusCode());
-            System.err.println("レスポンス: " + e.getResponseBodyAsString());
+            log.error("❌ OpenAI APIエラー status={} response={}", httpError.getStatusCode().value(), httpError.getResponseBodyAsString());
             
-            if (e.getStatusCode().value() == 401) {
-                throw new RuntimeException("OpenAI APIキーが無効です。環境変数OPENAI_API_KEYを確認してください", e);
-            } else if (e.getStatusCode().value() == 404) {
-                throw new RuntimeException("指定されたモデル「" + openaiModel + "」が見つかりません。application.propertiesを確認してください", e);
+            if (httpError.getStatusCode().value() == 401) {
+                return new RuntimeException("OpenAI APIキーが無効です。環境変数OPENAI_API_KEYを確認してください", e);
+            } else if (httpError.getStatusCode().value() == 404) {
+                return new RuntimeException("指定されたモデル「" + openaiModel + "」が見つかりません。application.propertiesを確認してください", e);
             }
             
-            throw new RuntimeException("OpenAI APIエラー: " + e.getResponseBodyAsString(), e);
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("クイズ生成に失敗しました: " + e.getMessage(), e);
+            return new RuntimeException("OpenAI APIエラー: " + httpError.getResponseBodyAsString(), e);
         }
+        
+        metrics.error(e instanceof HttpServerErrorException ? "openai_server_error" : "openai_other");
+        
+        log.error("❌ クイズ生成に失敗しました", e);
+        return new RuntimeException("クイズ生成に失敗しました: " + e.getMessage(), e);
     }
     
     /**
@@ -217,62 +898,45 @@ public class ChatGptQuizService {
     
     /**
      * ★ キーワードに対応するWikidata情報を取得（クイズ生成直前に実行）
-     * ★ WikidataInfoオブジェクトとして返す
+     * ★ WikidataInfoオブジェクトとして返す（見つからなければnull）
      */
-    private WikidataInfo getWikidataInfoForKeyword(String keyword, String grade) {
-        try {
-            System.out.println("\n" + "═".repeat(80));
-            System.out.println("🔍 キーワード「" + keyword + "」のWikidata情報を取得中...");
-            System.out.println("═".repeat(80));
+    private CompletableFuture<WikidataInfo> getWikidataInfoForKeyword(String keyword, String grade) {
+        log.debug("🔍 Wikidata情報を取得中 keyword={} grade={}", keyword, grade);
+        
+        CompletableFuture<WikidataInfo> future = CompletableFuture.completedFuture(null);
+        
+        // ★ 索引から「学年 × キーワード」に一致するWikidataリンクを取得し、最初に取得できたものを使う
+        for (KeywordEntry entry : videoService.findKeywordLinks(keyword, grade)) {
             
-            // 該当する学年の動画を取得
-            List<Video> videos = videoService.getVideosByGrade(grade);
+            // ★ ここでWikidata APIを呼び出す（クイズ生成直前）
+            String entityId = entry.getEntityId();
             
-            // キーワードが含まれる動画を探す
-            for (Video video : videos) {
-                if (video.getKeyword() != null && video.getKeyword().contains(keyword)) {
-                    
-                    // ★ Wikidataリンクリストを取得
-                    List<KeywordWikidataLink> linkList = video.getKeywordWikidataLinks();
-                    
-                    if (linkList != null && !linkList.isEmpty()) {
-                        for (KeywordWikidataLink linkInfo : linkList) {
-                            
-                            // 該当キーワードのリンクを見つける
-                            if (linkInfo.getKeyword().equals(keyword)) {
-                                
-                                // ★ ここでWikidata APIを呼び出す（クイズ生成直前）
-                                String entityId = wikidataService.extractEntityId(linkInfo.getWikidataUrl());
-                                
-                                if (entityId != null) {
-                                    WikidataInfo wikidataInfo = wikidataService.fetchWikidataInfo(entityId);
-                                    
-                                    if (wikidataInfo != null) {
-                                        System.out.println("✅ Wikidata情報取得完了");
-                                        System.out.println("═".repeat(80) + "\n");
-                                        return wikidataInfo;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
+            if (entityId != null) {
+                future = future.thenCompose(found -> found != null
+                    ? CompletableFuture.completedFuture(found)
+                    : wikidataService.fetchWikidataInfoAsync(entityId));
             }
-            
-            System.out.println("⚠️ 該当するWikidata情報が見つかりませんでした");
-            System.out.println("═".repeat(80) + "\n");
-            
-        } catch (Exception e) {
-            System.err.println("⚠️ Wikidata情報取得エラー: " + e.getMessage());
         }
         
-        return null;
+        return future.handle((wikidataInfo, e) -> {
+            if (e != null) {
+                log.warn("⚠️ Wikidata情報取得エラー keyword={} error={}", keyword, OutboundHttpClient.unwrap(e).getMessage());
+                return null;
+            }
+            if (wikidataInfo != null) {
+                log.debug("✅ Wikidata情報取得完了 keyword={} entityId={}", keyword, wikidataInfo.getEntityId());
+            } else {
+                log.info("⚠️ 該当するWikidata情報が見つかりませんでした keyword={} grade={}", keyword, grade);
+            }
+            return wikidataInfo;
+        });
     }
     
     /**
      * ★ WikidataInfoをプロンプト用にフォーマット
+     * ★ ベンチマーク（src/jmh）から呼ぶためパッケージプライベート
      */
-    private String formatWikidataForPrompt(WikidataInfo wikidataInfo) {
+    String formatWikidataForPrompt(WikidataInfo wikidataInfo) {
         if (wikidataInfo == null) {
             return "";
         }
@@ -303,9 +967,28 @@ public class ChatGptQuizService {
             }
         }
         
-        System.out.println("📋 参考情報の内容:");
-        System.out.println(sb.toString());
+        payloadLog.debug("📋 参考情報の内容:\n{}", sb);
         
         return sb.toString();
     }
-}
\ No newline at end of file
+
+    // 共有キャッシュに保存する形（クイズと参考にしたWikidata情報）
+    public static class SharedQuiz {
+        private Quiz quiz;
+        private WikidataInfo wikidataInfo;
+
+        public SharedQuiz() {
+        }
+
+        public SharedQuiz(Quiz quiz, WikidataInfo wikidataInfo) {
+            this.quiz = quiz;
+            this.wikidataInfo = wikidataInfo;
+        }
+
+        public Quiz getQuiz() { return quiz; }
+        public void setQuiz(Quiz quiz) { this.quiz = quiz; }
+
+        public WikidataInfo getWikidataInfo() { return wikidataInfo; }
+        public void setWikidataInfo(WikidataInfo wikidataInfo) { this.wikidataInfo = wikidataInfo; }
+    }
+}
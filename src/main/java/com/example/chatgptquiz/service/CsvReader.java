@@ -0,0 +1,220 @@
+package com.example.chatgptquiz.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RFC 4180準拠のストリーミングCSVリーダー
+ * ・char配列のバッファ上で1文字ずつ解析（正規表現・行単位の文字列を作らない）
+ * ・値の文字列は get() で参照された列だけ作る
+ * ・ダブルクォートで囲まれたカンマ・改行、"" によるエスケープに対応
+ * ・先頭のBOM、CRLF / LF / CR の改行に対応
+ * ・列数が足りない行（末尾の空欄が省略された行）も読める
+ *
+ * 使い方:
+ *   CsvReader csv = new CsvReader(reader);
+ *   csv.readHeader();
+ *   while (csv.next()) { String title = csv.get("name"); }
+ */
+public final class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean started;
+
+    // ★ 行ごとに使い回す（読み込み中の行の文字と、各列の開始・終了位置）
+    private char[] row = new char[1024];
+    private int rowLength;
+    private int fieldStart;
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int fieldCount;
+
+    private Map<String, Integer> headerIndex = Collections.emptyMap();
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 1行目をヘッダーとして読み込み、列名 → 列番号の対応を作る
+     * @return ヘッダーがあればtrue（ファイルが空ならfalse）
+     */
+    public boolean readHeader() throws IOException {
+        if (!next()) {
+            return false;
+        }
+
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < fieldCount; i++) {
+            index.putIfAbsent(get(i).trim(), i);
+        }
+        headerIndex = index;
+        return true;
+    }
+
+    /**
+     * 列名から列番号を取得（無ければ-1）
+     */
+    public int columnIndex(String name) {
+        Integer i = headerIndex.get(name);
+        return i != null ? i : -1;
+    }
+
+    /**
+     * 次の行を読み込む
+     * @return 行があればtrue
+     */
+    public boolean next() throws IOException {
+        fieldCount = 0;
+        rowLength = 0;
+        fieldStart = 0;
+
+        if (!started) {
+            started = true;
+            skipBom();
+        }
+
+        if (!fill()) {
+            return false;
+        }
+
+        boolean quoted = false;
+        boolean afterQuote = false;
+
+        while (fill()) {
+            char c = buffer[position++];
+
+            if (quoted) {
+                if (c == '"') {
+                    // "" はエスケープされたダブルクォート
+                    if (fill() && buffer[position] == '"') {
+                        append('"');
+                        position++;
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                    }
+                } else {
+                    append(c);
+                }
+                continue;
+            }
+
+            switch (c) {
+                case ',':
+                    endField();
+                    afterQuote = false;
+                    break;
+                case '\r':
+                    if (fill() && buffer[position] == '\n') {
+                        position++;
+                    }
+                    endField();
+                    return true;
+                case '\n':
+                    endField();
+                    return true;
+                case '"':
+                    // フィールド先頭のクォートのみ特別扱い（途中のクォートは文字として扱う）
+                    if (rowLength == fieldStart && !afterQuote) {
+                        quoted = true;
+                    } else {
+                        append(c);
+                    }
+                    break;
+                default:
+                    append(c);
+            }
+        }
+
+        // 最終行（改行なし）
+        endField();
+        return true;
+    }
+
+    /**
+     * 列番号で値を取得（列が無い行では空文字）
+     */
+    public String get(int column) {
+        if (column < 0 || column >= fieldCount || starts[column] == ends[column]) {
+            return "";
+        }
+        return new String(row, starts[column], ends[column] - starts[column]);
+    }
+
+    /**
+     * 列名で値を取得（列が無い行では空文字）
+     */
+    public String get(String name) {
+        return get(columnIndex(name));
+    }
+
+    /**
+     * 現在の行の列数
+     */
+    public int size() {
+        return fieldCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void append(char c) {
+        if (rowLength == row.length) {
+            row = Arrays.copyOf(row, row.length * 2);
+        }
+        row[rowLength++] = c;
+    }
+
+    private void endField() {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = fieldStart;
+        ends[fieldCount] = rowLength;
+        fieldCount++;
+        fieldStart = rowLength;
+    }
+
+    private void skipBom() throws IOException {
+        if (fill() && buffer[position] == '\uFEFF') {
+            position++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+
+        int n = reader.read(buffer, 0, buffer.length);
+        while (n == 0) {
+            n = reader.read(buffer, 0, buffer.length);
+        }
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
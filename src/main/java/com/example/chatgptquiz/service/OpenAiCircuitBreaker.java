@@ -0,0 +1,230 @@
+package com.example.chatgptquiz.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * OpenAI呼び出しのサーキットブレーカー
+ * ・CLOSED: 通常どおり呼び出し、直近window-size回の結果を記録する
+ * ・OPEN: 失敗率・遅い呼び出しの割合がしきい値を超えたら、open-seconds秒間は呼び出さずにすぐ失敗させる
+ * ・HALF_OPEN: その後half-open-calls回だけ試しに呼び出し、すべて成功すればCLOSEDに戻す（1回でも失敗すればOPEN）
+ * ・失敗とみなすのはfailurePredicateに一致する例外のみ（APIキー誤りなど、OpenAIが応答できている4xxは成功扱い）
+ */
+@Component
+public class OpenAiCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final QuizMetrics metrics;
+
+    @Value("${app.openai-breaker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.openai-breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${app.openai-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${app.openai-breaker.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${app.openai-breaker.slow-call-ms:20000}")
+    private long slowCallMs;
+
+    @Value("${app.openai-breaker.slow-call-rate-threshold:80}")
+    private int slowCallRateThreshold;
+
+    @Value("${app.openai-breaker.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${app.openai-breaker.half-open-calls:2}")
+    private int halfOpenCalls;
+
+    // ★ 以下はすべてthisで同期して更新する
+    private State state = State.CLOSED;
+
+    // 直近の結果（リングバッファ）
+    private boolean[] failed;
+    private boolean[] slow;
+    private int recorded;
+    private int position;
+    private int failureCount;
+    private int slowCount;
+
+    private long openedAt;
+    private int halfOpenPermitted;
+    private int halfOpenSucceeded;
+
+    public OpenAiCircuitBreaker(QuizMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        windowSize = Math.max(1, windowSize);
+        failed = new boolean[windowSize];
+        slow = new boolean[windowSize];
+
+        metrics.gauge(QuizMetrics.OPENAI_CIRCUIT_STATE, this, breaker -> breaker.getState().ordinal());
+    }
+
+    /**
+     * 呼び出しを許可されればcallを実行し、結果を記録する
+     * ★ OPENのときはcallを実行せず、CircuitOpenExceptionで失敗したFutureをすぐに返す
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call, Predicate<Throwable> failurePredicate) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        if (!tryAcquire()) {
+            metrics.count(QuizMetrics.OPENAI_CIRCUIT_REJECTED);
+            return CompletableFuture.failedFuture(new CircuitOpenException());
+        }
+
+        long startNanos = System.nanoTime();
+
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return future.whenComplete((value, ex) -> {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            boolean failure = ex != null && failurePredicate.test(OutboundHttpClient.unwrap(ex));
+            onResult(failure, elapsedMs >= slowCallMs);
+        });
+    }
+
+    /**
+     * 今呼び出せば許可されるか（許可は取らない）
+     * ★ 呼び出す前に順番待ちをする場合に先に確かめる（OPENの間に待ったうえで断られないように）
+     * ★ 許可されない場合はexecuteで断った場合と同じく数える
+     */
+    public boolean isCallPermitted() {
+        if (!enabled) {
+            return true;
+        }
+
+        boolean permitted;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                permitted = System.currentTimeMillis() - openedAt >= TimeUnit.SECONDS.toMillis(openSeconds);
+            } else if (state == State.HALF_OPEN) {
+                permitted = halfOpenPermitted < halfOpenCalls;
+            } else {
+                permitted = true;
+            }
+        }
+
+        if (!permitted) {
+            metrics.count(QuizMetrics.OPENAI_CIRCUIT_REJECTED);
+        }
+        return permitted;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < TimeUnit.SECONDS.toMillis(openSeconds)) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitted >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenPermitted++;
+        }
+
+        return true;
+    }
+
+    private synchronized void onResult(boolean failure, boolean slowCall) {
+        if (state == State.HALF_OPEN) {
+            if (failure || slowCall) {
+                transition(State.OPEN);
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+
+        // OPENになる前に送信した呼び出しの結果は数えない
+        if (state == State.OPEN) {
+            return;
+        }
+
+        if (recorded == windowSize) {
+            failureCount -= failed[position] ? 1 : 0;
+            slowCount -= slow[position] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[position] = failure;
+        slow[position] = slowCall;
+        failureCount += failure ? 1 : 0;
+        slowCount += slowCall ? 1 : 0;
+        position = (position + 1) % windowSize;
+
+        if (recorded >= minimumCalls
+                && (failureCount * 100 >= failureRateThreshold * recorded
+                    || slowCount * 100 >= slowCallRateThreshold * recorded)) {
+            log.warn("🔌 OpenAIの失敗・遅延が続いているため呼び出しを停止 failures={} slow={} calls={} openSeconds={}",
+                    failureCount, slowCount, recorded, openSeconds);
+            transition(State.OPEN);
+        }
+    }
+
+    private void transition(State next) {
+        if (next != State.OPEN || state != State.CLOSED) {
+            log.info("🔌 サーキットブレーカーの状態変更 from={} to={}", state, next);
+        }
+
+        state = next;
+
+        if (next == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+        if (next == State.HALF_OPEN) {
+            halfOpenPermitted = 0;
+            halfOpenSucceeded = 0;
+        }
+        if (next == State.CLOSED) {
+            recorded = 0;
+            position = 0;
+            failureCount = 0;
+            slowCount = 0;
+        }
+    }
+
+    /**
+     * OPENのため呼び出さなかった
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException() {
+            super("OpenAI APIの呼び出しを一時停止中（失敗・遅延が続いたため）");
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.example.chatgptquiz.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * OpenAI呼び出しの送信順・送信ペースの制御（アカウントのRPM / TPM上限に合わせる）
+ * ・リクエスト数とトークン数のトークンバケットで、上限を超えない範囲で送信する
+ * ・順番待ちは優先度（画面で待っている生成 → 先読み・一括生成）ごと、その中は学年ごとに1件ずつ順番に送る
+ * ・先読み・一括生成もbackground-max-delay-ms以上待ったものは先に送る（画面の生成が続いても送れなくならないように）
+ * ・OpenAIの x-ratelimit-* ヘッダーで残り回数を合わせ、429のときは Retry-After まで送信を止める
+ */
+@Component
+public class OpenAiRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiRateLimiter.class);
+
+    // x-ratelimit-reset-* の形式（例: 1s, 6m0s, 20ms, 1.5s）
+    private static final Pattern DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    public enum Priority { INTERACTIVE, BACKGROUND }
+
+    private final QuizMetrics metrics;
+
+    @Value("${app.openai-rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.openai-rate-limit.requests-per-minute:500}")
+    private double requestsPerMinute;
+
+    @Value("${app.openai-rate-limit.tokens-per-minute:30000}")
+    private double tokensPerMinute;
+
+    @Value("${app.openai-rate-limit.burst-seconds:10}")
+    private double burstSeconds;
+
+    @Value("${app.openai-rate-limit.max-queue:500}")
+    private int maxQueue;
+
+    @Value("${app.openai-rate-limit.max-wait-ms:30000}")
+    private long maxWaitMs;
+
+    @Value("${app.openai-rate-limit.default-pause-ms:1000}")
+    private long defaultPauseMs;
+
+    @Value("${app.openai-rate-limit.background-max-delay-ms:10000}")
+    private long backgroundMaxDelayMs;
+
+    // ★ 以下はすべてthisで同期して更新する
+    private final Map<Priority, LinkedHashMap<String, Deque<Ticket>>> queues = new EnumMap<>(Priority.class);
+    private int queued;
+    private double requestTokens;
+    private double tokenTokens;
+    private long refilledAt;
+    private long pausedUntil;
+    private ScheduledFuture<?> wakeUp;
+
+    private ScheduledExecutorService dispatcher;
+
+    public OpenAiRateLimiter(QuizMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+        }
+        requestTokens = requestCapacity();
+        tokenTokens = tokenCapacity();
+        refilledAt = System.nanoTime();
+        pausedUntil = refilledAt;
+
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "openai-rate-limiter");
+            t.setDaemon(true);
+            return t;
+        });
+
+        metrics.gauge(QuizMetrics.OPENAI_QUEUE_SIZE, this, OpenAiRateLimiter::queued);
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * 送信してよくなったら完了するFutureを返す
+     * ★ laneごとに1件ずつ順番に送る（同じ優先度の中で1つの学年が送信枠を占有しないように）
+     * ★ 順番待ちがmax-queueを超える・max-wait-ms以上待った場合はQueueFullExceptionで失敗する
+     * ★ cancellationがキャンセルされたら順番待ちから外し、CancellationExceptionで失敗する（送信枠は使わない）
+     */
+    public CompletableFuture<Void> acquire(Priority priority, String lane, long estimatedTokens, Cancellation cancellation) {
+        if (cancellation.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException("生成はキャンセルされました"));
+        }
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Ticket ticket = new Ticket(priority, lane != null ? lane : "", estimatedTokens, metrics.start(),
+            MDC.getCopyOfContextMap());
+
+        synchronized (this) {
+            if (queued >= maxQueue) {
+                metrics.count(QuizMetrics.OPENAI_QUEUE_REJECTED, "priority", priority.name().toLowerCase());
+                return CompletableFuture.failedFuture(new QueueFullException());
+            }
+            queues.get(priority).computeIfAbsent(ticket.lane, k -> new ArrayDeque<>()).add(ticket);
+            queued++;
+        }
+
+        cancellation.onCancel(() -> {
+            if (remove(ticket)) {
+                OutboundHttpClient.withContext(ticket.context, () ->
+                    ticket.future.completeExceptionally(new CancellationException("生成はキャンセルされました")));
+            }
+        });
+
+        // ★ 待ち時間の上限は1件ごとに数える（先頭以外・送信を一時停止している間も期限切れにする）
+        CompletableFuture.delayedExecutor(maxWaitMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (remove(ticket)) {
+                metrics.count(QuizMetrics.OPENAI_QUEUE_REJECTED, "priority", priority.name().toLowerCase());
+                OutboundHttpClient.withContext(ticket.context, () ->
+                    ticket.future.completeExceptionally(new QueueFullException()));
+            }
+        });
+
+        dispatcher.execute(this::drain);
+        return ticket.future;
+    }
+
+    /**
+     * acquireで取った送信枠を戻す（送信しなかった場合: 送信直前にキャンセルされた・サーキットブレーカーに断られたなど）
+     */
+    public void release(long estimatedTokens) {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (this) {
+            refill();
+            requestTokens = Math.min(requestCapacity(), requestTokens + 1);
+            tokenTokens = Math.min(tokenCapacity(), tokenTokens + estimatedTokens);
+        }
+
+        dispatcher.execute(this::drain);
+    }
+
+    /**
+     * OpenAIの応答（成功・失敗）のヘッダーで送信ペースを合わせる
+     */
+    public void onResponse(Function<String, Optional<String>> header, boolean rateLimited) {
+        if (!enabled) {
+            return;
+        }
+
+        long pauseMs = 0;
+
+        if (rateLimited) {
+            // ★ Retry-After（秒）→ retry-after-ms → リセットまでの時間 → 既定値 の順で待ち時間を決める
+            pauseMs = header.apply("retry-after-ms").map(OpenAiRateLimiter::parseLong)
+                .or(() -> header.apply("retry-after").map(v -> parseLong(v) * 1000))
+                .orElse(-1L);
+            if (pauseMs < 0) {
+                pauseMs = Math.max(
+                    header.apply("x-ratelimit-reset-requests").map(OpenAiRateLimiter::parseDuration).orElse(0L),
+                    header.apply("x-ratelimit-reset-tokens").map(OpenAiRateLimiter::parseDuration).orElse(0L));
+            }
+            if (pauseMs <= 0) {
+                pauseMs = defaultPauseMs;
+            }
+            metrics.count(QuizMetrics.OPENAI_RATE_LIMITED);
+            log.warn("🚦 OpenAIのレート制限に達したため送信を一時停止 pauseMs={}", pauseMs);
+        }
+
+        Optional<Long> remainingRequests = header.apply("x-ratelimit-remaining-requests").map(OpenAiRateLimiter::parseLong);
+        Optional<Long> remainingTokens = header.apply("x-ratelimit-remaining-tokens").map(OpenAiRateLimiter::parseLong);
+
+        synchronized (this) {
+            refill();
+
+            // ★ 他のプロセス・アプリと共有しているアカウントでは、手元の残りより少ないことがある
+            remainingRequests.filter(v -> v >= 0).ifPresent(v -> requestTokens = Math.min(requestTokens, v));
+            remainingTokens.filter(v -> v >= 0).ifPresent(v -> tokenTokens = Math.min(tokenTokens, v));
+
+            if (pauseMs > 0) {
+                pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMs));
+            }
+        }
+
+        dispatcher.execute(this::drain);
+    }
+
+    /**
+     * 例外が429なら、そのヘッダーで送信ペースを合わせる
+     */
+    public void onError(Throwable e) {
+        if (e instanceof HttpClientErrorException && ((HttpClientErrorException) e).getStatusCode().value() == 429) {
+            HttpClientErrorException error = (HttpClientErrorException) e;
+            onResponse(name -> Optional.ofNullable(error.getResponseHeaders())
+                .map(headers -> headers.getFirst(name)), true);
+        }
+    }
+
+    /**
+     * 送信できる順番待ちを送り出す（dispatcherスレッドで実行）
+     */
+    private void drain() {
+        List<Ticket> ready = new ArrayList<>();
+
+        synchronized (this) {
+            refill();
+
+            long now = System.nanoTime();
+            long waitNanos = 0;
+
+            while (queued > 0) {
+                if (pausedUntil - now > 0) {
+                    waitNanos = pausedUntil - now;
+                    break;
+                }
+
+                Ticket ticket = peek(now);
+
+                // ★ 上限より大きい見積もりは、バケットが満杯なら通す（永久に送れなくならないように）
+                double tokensNeeded = Math.min(ticket.estimatedTokens, tokenCapacity());
+                if (requestTokens < 1 || tokenTokens < tokensNeeded) {
+                    double requestWait = (1 - requestTokens) / perNano(requestsPerMinute);
+                    double tokenWait = (tokensNeeded - tokenTokens) / perNano(tokensPerMinute);
+                    waitNanos = (long) Math.max(Math.max(requestWait, tokenWait), TimeUnit.MILLISECONDS.toNanos(1));
+                    break;
+                }
+
+                requestTokens -= 1;
+                tokenTokens -= ticket.estimatedTokens;
+                ready.add(poll(now));
+            }
+
+            // ★ 予定より早く送れるようになった場合（優先度の高い小さな呼び出しが来たなど）は起きる時刻を早める
+            // ★ 起きる時刻を過ぎている（このdrainがwakeUpから呼ばれた）場合も、まだ送れなければ次を予約する
+            if (waitNanos > 0 && (wakeUp == null || wakeUp.isDone()
+                    || wakeUp.getDelay(TimeUnit.NANOSECONDS) <= 0 || wakeUp.getDelay(TimeUnit.NANOSECONDS) > waitNanos)) {
+                if (wakeUp != null) {
+                    wakeUp.cancel(false);
+                }
+                wakeUp = dispatcher.schedule(this::drain, waitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        for (Ticket ticket : ready) {
+            metrics.stop(ticket.sample, QuizMetrics.OPENAI_QUEUE_WAIT, "priority", ticket.priority.name().toLowerCase());
+            // ★ 続きの送信処理はこのスレッドで実行されるため、呼び出し元のMDCを戻す
+            OutboundHttpClient.withContext(ticket.context, () -> ticket.future.complete(null));
+        }
+    }
+
+    /**
+     * 順番待ちから外す（送り出し済みならfalse）
+     */
+    private synchronized boolean remove(Ticket ticket) {
+        LinkedHashMap<String, Deque<Ticket>> lanes = queues.get(ticket.priority);
+        Deque<Ticket> lane = lanes.get(ticket.lane);
+        if (lane == null || !lane.remove(ticket)) {
+            return false;
+        }
+        // 空のlaneは残さない（peek・nextLanesは先頭のlaneに順番待ちがある前提）
+        if (lane.isEmpty()) {
+            lanes.remove(ticket.lane);
+        }
+        queued--;
+        return true;
+    }
+
+    /**
+     * 次に送る順番待ち（優先度の高い順、同じ優先度では先頭のlane）
+     */
+    private Ticket peek(long now) {
+        return nextLanes(now).values().iterator().next().peek();
+    }
+
+    /**
+     * peekした順番待ちを取り出し、そのlaneを最後尾に回す
+     */
+    private Ticket poll(long now) {
+        LinkedHashMap<String, Deque<Ticket>> lanes = nextLanes(now);
+        Iterator<Map.Entry<String, Deque<Ticket>>> it = lanes.entrySet().iterator();
+
+        Map.Entry<String, Deque<Ticket>> lane = it.next();
+        Ticket ticket = lane.getValue().poll();
+        it.remove();
+        if (!lane.getValue().isEmpty()) {
+            lanes.put(lane.getKey(), lane.getValue());
+        }
+        queued--;
+        return ticket;
+    }
+
+    /**
+     * 次に送る優先度のlane一覧
+     * ★ 先頭の先読み・一括生成がbackground-max-delay-ms以上待っていれば、画面の生成より先に送る
+     */
+    private LinkedHashMap<String, Deque<Ticket>> nextLanes(long now) {
+        LinkedHashMap<String, Deque<Ticket>> background = queues.get(Priority.BACKGROUND);
+        if (!background.isEmpty()) {
+            Ticket oldest = background.values().iterator().next().peek();
+            if (now - oldest.enqueuedAt > TimeUnit.MILLISECONDS.toNanos(backgroundMaxDelayMs)) {
+                return background;
+            }
+        }
+
+        for (LinkedHashMap<String, Deque<Ticket>> lanes : queues.values()) {
+            if (!lanes.isEmpty()) {
+                return lanes;
+            }
+        }
+        throw new IllegalStateException("queue is empty");
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - refilledAt;
+        refilledAt = now;
+
+        requestTokens = Math.min(requestCapacity(), requestTokens + elapsed * perNano(requestsPerMinute));
+        tokenTokens = Math.min(tokenCapacity(), tokenTokens + elapsed * perNano(tokensPerMinute));
+    }
+
+    // ★ 一度に送れる量はburst-seconds秒分まで（空いていた後に一斉に送って429にならないように）
+    private double requestCapacity() {
+        return Math.max(1, requestsPerMinute * burstSeconds / 60);
+    }
+
+    private double tokenCapacity() {
+        return Math.max(1, tokensPerMinute * burstSeconds / 60);
+    }
+
+    private static double perNano(double perMinute) {
+        return perMinute / TimeUnit.MINUTES.toNanos(1);
+    }
+
+    private synchronized int queued() {
+        return queued;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return (long) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * "6m0s" / "1.5s" / "20ms" などをミリ秒にする
+     */
+    static long parseDuration(String value) {
+        Matcher matcher = DURATION.matcher(value);
+        double millis = 0;
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "h": millis += amount * 3_600_000; break;
+                case "m": millis += amount * 60_000; break;
+                case "s": millis += amount * 1_000; break;
+                default: millis += amount; break;
+            }
+        }
+        return (long) Math.ceil(millis);
+    }
+
+    // 順番待ち1件
+    private static final class Ticket {
+        private final Priority priority;
+        private final String lane;
+        private final long estimatedTokens;
+        private final Timer.Sample sample;
+        private final Map<String, String> context;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Ticket(Priority priority, String lane, long estimatedTokens, Timer.Sample sample, Map<String, String> context) {
+            this.priority = priority;
+            this.lane = lane;
+            this.estimatedTokens = estimatedTokens;
+            this.sample = sample;
+            this.context = context;
+        }
+    }
+
+    /**
+     * 順番待ちが多すぎる・待ち時間が長すぎるため送信しなかった
+     */
+    public static class QueueFullException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public QueueFullException() {
+            super("OpenAI APIの順番待ちが混み合っています");
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.example.chatgptquiz.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+import com.example.chatgptquiz.config.VirtualThreads;
+
+/**
+ * 外部API（OpenAI / Wikidata / Wikipedia）呼び出し用の共通HTTPクライアント
+ * ・java.net.http.HttpClientを1つだけ共有し、Keep-Alive接続を使い回す
+ * ・ホストごとに同時リクエスト数を制限（超えた分は順番待ち、待ち行列が上限なら即失敗、リクエストのタイムアウトまでに始まらなければ失敗）
+ * ・結果はCompletableFutureで返し、呼び出し側のスレッドをブロックしない
+ * ・ストリーミング応答（Server-Sent Events）は届いた行から順に処理できる
+ * ・エラーはRestTemplateと同じ例外（HttpClientErrorException / ResourceAccessException など）に変換する
+ * ・呼び出し元のログ用コンテキスト（MDCのリクエストIDなど）を、応答を処理するスレッドに引き継ぐ
+ */
+@Service
+public class OutboundHttpClient {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundHttpClient.class);
+
+    // ★ 順番待ちのタイムアウトが指定されていないリクエスト用
+    private static final Duration DEFAULT_QUEUE_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient client;
+    private final Environment environment;
+    private final Map<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+
+    // 順番待ちのリクエストを開始するExecutor（完了コールバックの中で次を直接始めない）
+    private final Executor dispatcher;
+
+    @Value("${app.http.max-concurrency-per-host:16}")
+    private int maxConcurrencyPerHost;
+
+    @Value("${app.http.max-queue-per-host:256}")
+    private int maxQueuePerHost;
+
+    public OutboundHttpClient(Environment environment,
+                              @Value("${app.http.connect-timeout-ms:10000}") long connectTimeoutMs,
+                              @Value("${app.virtual-threads.enabled:false}") boolean virtualThreads) {
+        this.environment = environment;
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL);
+
+        // ★ 仮想スレッドモードではレスポンス処理も仮想スレッドで行う
+        if (virtualThreads) {
+            Executor executor = VirtualThreads.newExecutor();
+            builder.executor(executor);
+            this.dispatcher = executor;
+        } else {
+            this.dispatcher = ForkJoinPool.commonPool();
+        }
+
+        this.client = builder.build();
+
+        log.info("✅ OutboundHttpClient初期化完了");
+    }
+
+    /**
+     * GETリクエスト（レスポンス本文を返す）
+     */
+    public CompletableFuture<String> getAsync(String url, Map<String, String> headers, Duration timeout) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .GET();
+        headers.forEach(builder::header);
+        return sendAsync(builder.build()).thenApply(HttpResponse::body);
+    }
+
+    /**
+     * JSONをPOSTするリクエスト（レスポンス本文を返す）
+     */
+    public CompletableFuture<String> postJsonAsync(String url, String json, Map<String, String> headers, Duration timeout) {
+        return postJsonForResponseAsync(url, json, headers, timeout).thenApply(HttpResponse::body);
+    }
+
+    /**
+     * JSONをPOSTするリクエスト（レスポンスヘッダーも使う場合）
+     */
+    public CompletableFuture<HttpResponse<String>> postJsonForResponseAsync(String url, String json, Map<String, String> headers,
+                                                                           Duration timeout) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8));
+        headers.forEach(builder::header);
+        return sendAsync(builder.build());
+    }
+
+    /**
+     * JSONをPOSTし、レスポンス本文を1行ずつ受け取るリクエスト（Server-Sent Eventsのストリーミング用）
+     * ★ 2xxの場合は受信した行をonLineに渡し、全行を受け取ったら完了する（返すレスポンスの本文は空）
+     * ★ 2xx以外の場合は本文をまとめて読み、postJsonAsyncと同じ例外で失敗する
+     */
+    public CompletableFuture<HttpResponse<String>> postJsonStreamAsync(String url, String json, Map<String, String> headers,
+                                                       Duration timeout, Consumer<String> onLine) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8));
+        headers.forEach(builder::header);
+
+        Map<String, String> context = MDC.getCopyOfContextMap();
+
+        HttpResponse.BodyHandler<String> handler = info -> info.statusCode() / 100 == 2
+                ? HttpResponse.BodySubscribers.fromLineSubscriber(
+                        new LineSubscriber(onLine, context), subscriber -> "", StandardCharsets.UTF_8, null)
+                : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+
+        return sendAsync(builder.build(), handler);
+    }
+
+    /**
+     * リクエストを送信（ホストごとの同時実行数制限つき）
+     * ★ 2xx以外はHttpStatusCodeException、通信エラーはResourceAccessExceptionで失敗する
+     */
+    public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+        return sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<String> handler) {
+        String host = request.uri().getHost();
+        HostLimiter limiter = limiters.computeIfAbsent(host, h -> new HostLimiter(h,
+            environment.getProperty("app.http.max-concurrency." + h, Integer.class, maxConcurrencyPerHost),
+            maxQueuePerHost, dispatcher));
+
+        Map<String, String> context = MDC.getCopyOfContextMap();
+
+        // ★ HttpRequestのタイムアウトは送信後にしか数えないため、順番待ちにも同じ時間を上限にする
+        Duration queueTimeout = request.timeout().orElse(DEFAULT_QUEUE_TIMEOUT);
+
+        return limiter.submit(queueTimeout, () -> {
+            CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+
+            // ★ 後続の処理（thenApplyなど）はここで同期的に実行されるため、その間だけMDCを戻す
+            client.sendAsync(request, handler)
+                .whenComplete((response, ex) -> withContext(context, () -> {
+                    if (ex != null) {
+                        result.completeExceptionally(toIoError(request, unwrap(ex)));
+                    } else if (response.statusCode() / 100 != 2) {
+                        result.completeExceptionally(toStatusError(response));
+                    } else {
+                        result.complete(response);
+                    }
+                }));
+
+            return result;
+        });
+    }
+
+    /**
+     * 呼び出し元のMDCを設定してactionを実行し、終わったら元に戻す
+     */
+    static void withContext(Map<String, String> context, Runnable action) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        if (context != null) {
+            MDC.setContextMap(context);
+        } else {
+            MDC.clear();
+        }
+        try {
+            action.run();
+        } finally {
+            if (previous != null) {
+                MDC.setContextMap(previous);
+            } else {
+                MDC.clear();
+            }
+        }
+    }
+
+    /**
+     * 同期的に結果を待つ（CompletionExceptionは元の例外に戻す）
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("処理が中断されました", e);
+        }
+    }
+
+    /**
+     * CompletionExceptionなどの包みを外して元の例外を取り出す
+     */
+    public static Throwable unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    private RuntimeException toIoError(HttpRequest request, Throwable ex) {
+        if (ex instanceof RuntimeException) {
+            return (RuntimeException) ex;
+        }
+        String message = "I/O error on " + request.method() + " request for \"" + request.uri() + "\": " + ex.getMessage();
+        if (ex instanceof IOException) {
+            return new ResourceAccessException(message, (IOException) ex);
+        }
+        return new ResourceAccessException(message, new IOException(ex));
+    }
+
+    private RuntimeException toStatusError(HttpResponse<String> response) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+
+        byte[] body = response.body() != null ? response.body().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int code = response.statusCode();
+        HttpStatus status = HttpStatus.resolve(code);
+
+        if (status == null) {
+            return new UnknownHttpStatusCodeException(code, "", headers, body, StandardCharsets.UTF_8);
+        }
+        if (status.is4xxClientError()) {
+            return HttpClientErrorException.create(status, status.getReasonPhrase(), headers, body, StandardCharsets.UTF_8);
+        }
+        return HttpServerErrorException.create(status, status.getReasonPhrase(), headers, body, StandardCharsets.UTF_8);
+    }
+
+    // 受信した行をそのまま渡すSubscriber（行の処理で例外が出ても受信は続ける）
+    private static final class LineSubscriber implements Flow.Subscriber<String> {
+        private final Consumer<String> onLine;
+        private final Map<String, String> context;
+
+        LineSubscriber(Consumer<String> onLine, Map<String, String> context) {
+            this.onLine = onLine;
+            this.context = context;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            withContext(context, () -> {
+                try {
+                    onLine.accept(line);
+                } catch (RuntimeException e) {
+                    log.warn("⚠️ ストリーミング応答の処理エラー error={}", e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // 失敗はsendAsyncの結果として通知される
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    // ホストごとの同時実行数制限（上限を超えた分は完了を待って順番に開始）
+    private static final class HostLimiter {
+        private final String host;
+        private final int maxConcurrency;
+        private final int maxQueue;
+        private final Executor dispatcher;
+        private final Deque<Waiter> waiting = new ArrayDeque<>();
+        private int active;
+
+        HostLimiter(String host, int maxConcurrency, int maxQueue, Executor dispatcher) {
+            this.host = host;
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.maxQueue = Math.max(0, maxQueue);
+            this.dispatcher = dispatcher;
+        }
+
+        <T> CompletableFuture<T> submit(Duration queueTimeout, Supplier<CompletableFuture<T>> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+
+            Runnable start = () -> {
+                CompletableFuture<T> running;
+                try {
+                    running = task.get();
+                } catch (RuntimeException e) {
+                    running = CompletableFuture.failedFuture(e);
+                }
+                running.whenComplete((value, ex) -> {
+                    release();
+                    if (ex != null) {
+                        result.completeExceptionally(unwrap(ex));
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            };
+
+            Waiter waiter = null;
+            synchronized (this) {
+                if (active < maxConcurrency) {
+                    active++;
+                } else if (waiting.size() >= maxQueue) {
+                    // ★ 待ち行列が上限なら、待たせずに失敗させる（呼び出し側のリトライ・代替に任せる）
+                    return CompletableFuture.failedFuture(new ResourceAccessException(
+                        "同時リクエスト数と順番待ちが上限に達しています host=" + host + " queue=" + maxQueue));
+                } else {
+                    waiter = new Waiter(start, result);
+                    waiting.add(waiter);
+                }
+            }
+
+            if (waiter == null) {
+                start.run();
+                return result;
+            }
+
+            // 期限までに始まらなければ待ち行列から外して失敗させる
+            Waiter queued = waiter;
+            CompletableFuture.delayedExecutor(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> expire(queued, queueTimeout));
+            return result;
+        }
+
+        private void expire(Waiter waiter, Duration queueTimeout) {
+            boolean removed;
+            synchronized (this) {
+                removed = waiting.remove(waiter);
+            }
+            if (removed) {
+                waiter.result.completeExceptionally(new ResourceAccessException(
+                    "順番待ちがタイムアウトしました host=" + host + " timeoutMs=" + queueTimeout.toMillis()));
+            }
+        }
+
+        private void release() {
+            Waiter next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    active--;
+                }
+            }
+            if (next != null) {
+                // ★ 完了コールバックの中で直接始めると、すぐに失敗するリクエストが続いたときに再帰が深くなる
+                Waiter started = next;
+                try {
+                    dispatcher.execute(started.start);
+                } catch (RuntimeException e) {
+                    // 開始できなかった分の枠を戻して、次の待ちに回す
+                    started.result.completeExceptionally(e);
+                    release();
+                }
+            }
+        }
+    }
+
+    // 順番待ちのリクエスト
+    private static final class Waiter {
+        private final Runnable start;
+        private final CompletableFuture<?> result;
+
+        Waiter(Runnable start, CompletableFuture<?> result) {
+            this.start = start;
+            this.result = result;
+        }
+    }
+}
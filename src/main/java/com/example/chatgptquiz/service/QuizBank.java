@@ -0,0 +1,210 @@
+package com.example.chatgptquiz.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.chatgptquiz.model.Quiz;
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 事前生成したクイズの保管庫（キーワード × 学年ごとに複数パターン）
+ * ・QuizBankGeneratorがまとめて生成し、ローカルファイルに保存する
+ * ・QuizControllerはここから出題し、無い場合のみOpenAIで生成する
+ */
+@Service
+public class QuizBank {
+
+    private static final Logger log = LoggerFactory.getLogger(QuizBank.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Map<String, BankEntry> entries = new ConcurrentHashMap<>();
+
+    @Value("${app.quiz-bank.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.quiz-bank.file:quiz-bank.json}")
+    private String bankFile;
+
+    /**
+     * 起動時に保存済みのクイズを読み込む
+     */
+    @PostConstruct
+    public void load() {
+        if (bankFile == null || bankFile.isBlank()) {
+            return;
+        }
+
+        File file = new File(bankFile);
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            Map<String, BankEntry> loaded = objectMapper.readValue(
+                file, new TypeReference<LinkedHashMap<String, BankEntry>>() {});
+
+            for (BankEntry entry : loaded.values()) {
+                if (entry != null && entry.getKeyword() != null && entry.getGrade() != null) {
+                    entries.put(key(entry.getKeyword(), entry.getGrade()), entry);
+                }
+            }
+
+            log.info("✅ クイズバンク読み込み完了 pairs={} file={}", entries.size(), bankFile);
+
+        } catch (Exception e) {
+            log.warn("⚠️ クイズバンクの読み込みに失敗しました（空で開始） file={} error={}", bankFile, e.getMessage());
+        }
+    }
+
+    /**
+     * 現在の内容をファイルに保存（一時ファイル経由で置き換え）
+     */
+    public synchronized void save() {
+        if (bankFile == null || bankFile.isBlank()) {
+            return;
+        }
+
+        try {
+            Path target = Paths.get(bankFile).toAbsolutePath();
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), new LinkedHashMap<>(entries));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            log.warn("⚠️ クイズバンクの保存に失敗しました file={} error={}", bankFile, e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 保存済みのクイズを1問ランダムに取り出す
+     * ★ generateSingleQuizWithWikidataと同じ形（quiz / wikidataInfo）で返す
+     * @return 該当がなければnull
+     */
+    public Map<String, Object> pick(String keyword, String grade) {
+        return get(keyword, grade, pickVariant(keyword, grade));
+    }
+
+    /**
+     * 出題するパターンの番号をランダムに選ぶ（ステートレスセッションでトークンに記録する）
+     * @return 該当がなければ-1
+     */
+    public int pickVariant(String keyword, String grade) {
+        int count = enabled ? count(keyword, grade) : 0;
+        return count > 0 ? ThreadLocalRandom.current().nextInt(count) : -1;
+    }
+
+    /**
+     * 番号を指定して保存済みのクイズを取り出す
+     * ★ パターンは追加されるだけなので、同じバンクファイルを使うレプリカ間では同じ問題になる
+     * @return 該当がなければnull
+     */
+    public Map<String, Object> get(String keyword, String grade, int variant) {
+        if (!enabled || variant < 0) {
+            return null;
+        }
+
+        BankEntry entry = entries.get(key(keyword, grade));
+        if (entry == null) {
+            return null;
+        }
+
+        List<Quiz> quizzes = entry.getQuizzes();
+        if (variant >= quizzes.size()) {
+            return null;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("quiz", quizzes.get(variant));
+        result.put("wikidataInfo", entry.getWikidataInfo());
+        return result;
+    }
+
+    /**
+     * 生成したクイズを1パターン追加
+     */
+    public void addVariant(String keyword, String grade, Quiz quiz, WikidataInfo wikidataInfo) {
+        BankEntry entry = entries.computeIfAbsent(key(keyword, grade), k -> new BankEntry(keyword, grade));
+        entry.getQuizzes().add(quiz);
+        if (wikidataInfo != null) {
+            entry.setWikidataInfo(wikidataInfo);
+        }
+    }
+
+    /**
+     * 保存済みパターン数
+     */
+    public int count(String keyword, String grade) {
+        BankEntry entry = entries.get(key(keyword, grade));
+        return entry != null ? entry.getQuizzes().size() : 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private String key(String keyword, String grade) {
+        return grade + "\t" + keyword;
+    }
+
+    // キーワード × 学年ごとの保存データ
+    public static class BankEntry {
+        private String keyword;
+        private String grade;
+        private List<Quiz> quizzes = new CopyOnWriteArrayList<>();
+        private WikidataInfo wikidataInfo;
+
+        public BankEntry() {
+        }
+
+        public BankEntry(String keyword, String grade) {
+            this.keyword = keyword;
+            this.grade = grade;
+        }
+
+        public String getKeyword() { return keyword; }
+        public void setKeyword(String keyword) { this.keyword = keyword; }
+
+        public String getGrade() { return grade; }
+        public void setGrade(String grade) { this.grade = grade; }
+
+        public List<Quiz> getQuizzes() { return quizzes; }
+        public void setQuizzes(List<Quiz> quizzes) {
+            this.quizzes = new CopyOnWriteArrayList<>(quizzes != null ? quizzes : new ArrayList<>());
+        }
+
+        public WikidataInfo getWikidataInfo() { return wikidataInfo; }
+        public void setWikidataInfo(WikidataInfo wikidataInfo) { this.wikidataInfo = wikidataInfo; }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.chatgptquiz.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+
+import com.example.chatgptquiz.model.Quiz;
+import com.example.chatgptquiz.model.Video;
+import com.example.chatgptquiz.service.OpenAiRateLimiter.Priority;
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+
+/**
+ * クイズバンクの一括生成（バッチ）
+ * ・全動画の「キーワード × 学年」を洗い出し、組ごとにNパターン生成する
+ * ・同時実行数を制限してOpenAI APIを呼び出す
+ * ・既に規定数あるものはスキップするため、途中で止めても再開できる
+ * ・保存はN組ごとと最後に1回（毎回だとバンク全体の書き出しが組の数だけ繰り返される）
+ *
+ * 実行例:
+ *   mvn spring-boot:run -Dspring-boot.run.arguments="--app.quiz-bank.generate-on-startup=true --spring.main.web-application-type=none"
+ */
+@Service
+public class QuizBankGenerator implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(QuizBankGenerator.class);
+
+    private final VideoService videoService;
+    private final ChatGptQuizService chatGptQuizService;
+    private final QuizBank quizBank;
+
+    @Value("${app.quiz-bank.generate-on-startup:false}")
+    private boolean generateOnStartup;
+
+    @Value("${app.quiz-bank.variants-per-pair:3}")
+    private int variantsPerPair;
+
+    @Value("${app.quiz-bank.concurrency:4}")
+    private int concurrency;
+
+    @Value("${app.quiz-bank.save-every-pairs:20}")
+    private int saveEveryPairs;
+
+    public QuizBankGenerator(VideoService videoService, ChatGptQuizService chatGptQuizService, QuizBank quizBank) {
+        this.videoService = videoService;
+        this.chatGptQuizService = chatGptQuizService;
+        this.quizBank = quizBank;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (generateOnStartup) {
+            generateAll();
+        }
+    }
+
+    /**
+     * 全ての「キーワード × 学年」についてクイズを生成
+     */
+    public GenerationReport generateAll() {
+        List<String[]> pairs = collectPairs();
+        GenerationReport report = new GenerationReport(pairs.size());
+
+        log.info("🏦 クイズバンク生成開始 pairs={} variants={} concurrency={}", pairs.size(), variantsPerPair, concurrency);
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+
+        try {
+            for (String[] pair : pairs) {
+                executor.submit(() -> generatePair(pair[0], pair[1], report));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        quizBank.save();
+
+        log.info("🏦 クイズバンク生成完了 elapsedMs={} generated={} quizzes={} skipped={} failed={}",
+                System.currentTimeMillis() - start, report.getGenerated(), report.getGeneratedQuizzes(),
+                report.getSkipped(), report.getFailed());
+        for (String failure : report.getFailures()) {
+            log.warn("❌ 生成失敗 {}", failure);
+        }
+
+        return report;
+    }
+
+    /**
+     * 1組分のクイズを生成（不足分のみ）
+     */
+    private void generatePair(String keyword, String grade, GenerationReport report) {
+        int missing = variantsPerPair - quizBank.count(keyword, grade);
+        if (missing <= 0) {
+            report.skipped.incrementAndGet();
+            return;
+        }
+
+        boolean added = false;
+        try {
+            for (int i = 0; i < missing; i++) {
+                // ★ 画面で待っている生成を先に送るため、BACKGROUNDで順番待ちする
+                // ★ パターンごとに新しく生成する（共有キャッシュの同じ問題を使わない）
+                Map<String, Object> result = OutboundHttpClient.await(
+                    chatGptQuizService.generateQuizVariantAsync(keyword, grade, Priority.BACKGROUND));
+                quizBank.addVariant(keyword, grade, (Quiz) result.get("quiz"), (WikidataInfo) result.get("wikidataInfo"));
+                added = true;
+                report.generatedQuizzes.incrementAndGet();
+            }
+            report.generated.incrementAndGet();
+
+        } catch (Exception e) {
+            report.failed.incrementAndGet();
+            report.failures.add(keyword + " / " + grade + ": " + e.getMessage());
+
+        } finally {
+            // ★ N組ごとに保存（中断しても次回は最後に保存したところから再開できる）
+            if (added && report.unsaved.incrementAndGet() % Math.max(1, saveEveryPairs) == 0) {
+                quizBank.save();
+            }
+            report.printProgress();
+        }
+    }
+
+    /**
+     * 全動画から「キーワード × 学年」の組を重複なく集める
+     * ★ 学年はQuizControllerに渡される値（動画のgrades列）そのまま
+     */
+    private List<String[]> collectPairs() {
+        Set<String> seen = new LinkedHashSet<>();
+        List<String[]> pairs = new ArrayList<>();
+
+        for (Video video : videoService.getAllVideos()) {
+            if (video.getKeyword() == null || video.getKeyword().isBlank()) {
+                continue;
+            }
+            for (String keyword : video.getKeyword().trim().split("\\s+")) {
+                if (seen.add(video.getGrades() + "\t" + keyword)) {
+                    pairs.add(new String[] {keyword, video.getGrades()});
+                }
+            }
+        }
+
+        return pairs;
+    }
+
+    // 生成結果のレポート
+    public static class GenerationReport {
+        private final int total;
+        private final AtomicInteger generated = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger generatedQuizzes = new AtomicInteger();
+        // 追加のあった組の数（save-every-pairsごとに保存する）
+        private final AtomicInteger unsaved = new AtomicInteger();
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        public GenerationReport(int total) {
+            this.total = total;
+        }
+
+        public int getTotal() { return total; }
+        public int getGenerated() { return generated.get(); }
+        public int getFailed() { return failed.get(); }
+        public int getSkipped() { return skipped.get(); }
+        public int getGeneratedQuizzes() { return generatedQuizzes.get(); }
+        public List<String> getFailures() { return failures; }
+
+        private void printProgress() {
+            int done = generated.get() + failed.get() + skipped.get();
+            if (done % 20 == 0 || done == total) {
+                log.info("🏦 進捗 done={} total={}", done, total);
+            }
+        }
+    }
+}
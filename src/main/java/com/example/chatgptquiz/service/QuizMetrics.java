@@ -0,0 +1,123 @@
+package com.example.chatgptquiz.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * クイズ生成の各段階のメトリクス（/actuator/prometheus で公開）
+ * ・メトリクス名はここに集め、タグは少ない種類の値（学年・モデル・結果など）だけにする
+ * ・キーワードやエンティティIDはタグにしない（種類が増え続けるため）
+ */
+@Component
+public class QuizMetrics {
+
+    public static final String CATALOG_LOAD = "quiz.catalog.load";
+    public static final String KEYWORD_LOOKUP = "quiz.keyword.lookup";
+    public static final String WIKIDATA_REQUEST = "quiz.wikidata.request";
+    public static final String OPENAI_REQUEST = "quiz.openai.request";
+    public static final String OPENAI_TOKENS = "quiz.openai.tokens";
+    public static final String OPENAI_RETRIES = "quiz.openai.retries";
+    public static final String OPENAI_QUEUE_WAIT = "quiz.openai.queue.wait";
+    public static final String OPENAI_QUEUE_SIZE = "quiz.openai.queue.size";
+    public static final String OPENAI_QUEUE_REJECTED = "quiz.openai.queue.rejected";
+    public static final String OPENAI_RATE_LIMITED = "quiz.openai.rate.limited";
+    public static final String OPENAI_CIRCUIT_STATE = "quiz.openai.circuit.state";
+    public static final String OPENAI_CIRCUIT_REJECTED = "quiz.openai.circuit.rejected";
+    public static final String QUIZ_PARSE = "quiz.parse";
+    public static final String VIEW_RENDER = "quiz.view.render";
+    public static final String CACHE_REQUESTS = "quiz.cache.requests";
+    public static final String ERRORS = "quiz.errors";
+    public static final String PREFETCH_IN_FLIGHT = "quiz.prefetch.in.flight";
+    public static final String PREFETCH_SESSIONS = "quiz.prefetch.sessions";
+    public static final String STARTUP_WARMUP = "quiz.startup.warmup";
+
+    // ★ 学年は「小3」「中1」などの形のみタグにする（それ以外の入力はother）
+    private static final Pattern GRADE = Pattern.compile("[小中][1-6]");
+
+    private final MeterRegistry registry;
+
+    public QuizMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 計測開始
+     */
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * 計測終了（タグは "キー", "値" の組で指定）
+     */
+    public void stop(Timer.Sample sample, String name, String... tags) {
+        sample.stop(registry.timer(name, tags));
+    }
+
+    /**
+     * 非同期処理の完了までを計測し、結果（success / error）をoutcomeタグに付ける
+     */
+    public <T> CompletableFuture<T> time(CompletableFuture<T> future, String name, String... tags) {
+        Timer.Sample sample = start();
+        return future.whenComplete((value, e) ->
+            sample.stop(registry.timer(name, Tags.of(tags).and("outcome", e == null ? "success" : "error"))));
+    }
+
+    /**
+     * キャッシュの参照結果（hit / miss）
+     */
+    public void cache(String cache, boolean hit) {
+        registry.counter(CACHE_REQUESTS, "cache", cache, "result", hit ? "hit" : "miss").increment();
+    }
+
+    /**
+     * エラーの発生（typeは固定の種類名）
+     */
+    public void error(String type) {
+        registry.counter(ERRORS, "type", type).increment();
+    }
+
+    /**
+     * 件数を1つ増やす
+     */
+    public void count(String name, String... tags) {
+        registry.counter(name, tags).increment();
+    }
+
+    /**
+     * OpenAIの使用トークン数
+     */
+    public void tokens(String model, long promptTokens, long completionTokens) {
+        registry.counter(OPENAI_TOKENS, "model", model, "type", "prompt").increment(promptTokens);
+        registry.counter(OPENAI_TOKENS, "model", model, "type", "completion").increment(completionTokens);
+    }
+
+    /**
+     * 現在値（件数など）を公開する
+     */
+    public <T> void gauge(String name, T obj, ToDoubleFunction<T> value) {
+        Gauge.builder(name, obj, value).register(registry);
+    }
+
+    /**
+     * 学年をタグ用の値にする
+     */
+    public static String grade(String grade) {
+        return isGrade(grade) ? grade : "other";
+    }
+
+    /**
+     * 1つの学年（「小3」「中1」など）か
+     */
+    public static boolean isGrade(String grade) {
+        return grade != null && GRADE.matcher(grade).matches();
+    }
+}
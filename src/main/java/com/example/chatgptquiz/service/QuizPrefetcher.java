@@ -0,0 +1,523 @@
+package com.example.chatgptquiz.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.chatgptquiz.service.OpenAiRateLimiter.Priority;
+
+/**
+ * クイズの先読み生成
+ * ・出題中に次の問題（prefetch-depth問先まで）をバックグラウンドで生成しておく
+ * ・セッションごとにFutureを保持し、次のリクエストではそれを待つだけにする
+ * ・放置されたセッションの先読みは一定時間後に破棄する
+ * ・まとめて生成モードでは、最初の問題で残りの問題すべてを1回のOpenAI呼び出しで生成する
+ * ・生成に失敗した場合は、同じキーワード・学年で最近生成したクイズを代わりに出題する
+ * ・同じ問題をもう一度求められた場合（再読み込み・APIでの先読みの後のページ表示）は、前回と同じクイズを返す
+ */
+@Service
+public class QuizPrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(QuizPrefetcher.class);
+
+    private final ChatGptQuizService chatGptQuizService;
+    private final QuizBank quizBank;
+    private final RecentQuizCache recentQuizzes;
+    private final QuizMetrics metrics;
+
+    private final Map<String, SessionPrefetch> sessions = new ConcurrentHashMap<>();
+
+    @Value("${app.quiz-prefetch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.quiz-prefetch.depth:2}")
+    private int depth;
+
+    @Value("${app.quiz-prefetch.max-in-flight:100}")
+    private int maxInFlight;
+
+    @Value("${app.quiz-prefetch.session-ttl-minutes:30}")
+    private long sessionTtlMinutes;
+
+    @Value("${app.quiz-prefetch.batch:false}")
+    private boolean batch;
+
+    // ★ 実行中の先読み数（上限を超えたら先読みしない）
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ScheduledExecutorService sweeper;
+
+    public QuizPrefetcher(ChatGptQuizService chatGptQuizService, QuizBank quizBank, RecentQuizCache recentQuizzes,
+                          QuizMetrics metrics) {
+        this.chatGptQuizService = chatGptQuizService;
+        this.quizBank = quizBank;
+        this.recentQuizzes = recentQuizzes;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quiz-prefetch-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireIdleSessions, 1, 1, TimeUnit.MINUTES);
+
+        metrics.gauge(QuizMetrics.PREFETCH_IN_FLIGHT, inFlight, AtomicInteger::get);
+        metrics.gauge(QuizMetrics.PREFETCH_SESSIONS, sessions, Map::size);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * index問目のクイズを取得し、続きの問題の先読みを開始する
+     * ★ generateSingleQuizWithWikidataと同じ形（quiz / wikidataInfo）で返す
+     */
+    public CompletableFuture<Map<String, Object>> get(String sessionId, String keyword, String grade,
+                                                      List<String> keywordList, int index) {
+        return get(sessionId, keyword, grade, keywordList, index, null);
+    }
+
+    /**
+     * ストリーミング版（先読み・バンクにない場合は、生成の途中経過をlistenerへ通知する）
+     */
+    public CompletableFuture<Map<String, Object>> get(String sessionId, String keyword, String grade,
+                                                      List<String> keywordList, int index,
+                                                      QuizStreamListener listener) {
+        return get(sessionId, keyword, grade, keywordList, index, listener, -1);
+    }
+
+    /**
+     * バンクのパターン番号を指定する版（ステートレスセッション: どのレプリカでも同じ問題を出す）
+     * @param bankVariant QuizBank.pickVariantで選んだ番号（-1ならランダム）
+     */
+    public CompletableFuture<Map<String, Object>> get(String sessionId, String keyword, String grade,
+                                                      List<String> keywordList, int index,
+                                                      QuizStreamListener listener, int bankVariant) {
+        if (!enabled || sessionId == null) {
+            return load(keywordList.get(index), grade, listener, Priority.INTERACTIVE, bankVariant);
+        }
+
+        SessionPrefetch prefetch = sessions.compute(sessionId, (id, current) -> {
+            // 別の動画のクイズを始めた場合は、前の先読みを破棄
+            if (current == null || !current.matches(keyword, grade)) {
+                if (current != null) {
+                    current.cancelAll();
+                }
+                return new SessionPrefetch(keyword, grade);
+            }
+            return current;
+        });
+        prefetch.touch();
+
+        // ★ 直前に返した問題なら同じものを返す（先読みは開始済み）
+        CompletableFuture<Map<String, Object>> served = prefetch.served(index);
+        if (served != null) {
+            metrics.cache("prefetch", true);
+            return served;
+        }
+
+        // 前の問題までの先読みは不要になったので破棄
+        prefetch.futures.entrySet().removeIf(e -> {
+            if (e.getKey() < index) {
+                e.getValue().cancellation.cancel();
+                return true;
+            }
+            return false;
+        });
+
+        // ★ まとめて生成モード: セッションの最初のリクエストで、この問題以降をまとめて生成する
+        if (batch && prefetch.batchStarted.compareAndSet(false, true)) {
+            scheduleBatch(prefetch, keywordList, grade, index);
+        }
+
+        Prefetch prefetched = prefetch.futures.remove(index);
+        CompletableFuture<Map<String, Object>> future = prefetched != null ? prefetched.future : null;
+
+        // ★ 失敗した先読みは使わない（BACKGROUNDの順番待ちで断られただけなら、画面の生成として送れば通る）
+        if (future != null && future.isCompletedExceptionally()) {
+            log.info("↩️ 先読みが失敗していたため生成し直す index={}", index);
+            future = null;
+        }
+
+        schedule(prefetch, keywordList, grade, index + 1);
+
+        metrics.cache("prefetch", future != null);
+
+        if (future == null) {
+            future = load(keywordList.get(index), grade, listener, Priority.INTERACTIVE, bankVariant);
+        } else {
+            log.info("⚡ 先読み済みのクイズを使用 index={}", index);
+            future = retryInteractiveIfQueueFull(future, keywordList.get(index), grade, bankVariant);
+        }
+
+        prefetch.serve(index, future);
+        return future;
+    }
+
+    /**
+     * 実行中の先読みが順番待ちで断られた場合は、画面の生成（INTERACTIVE）としてやり直す
+     */
+    private CompletableFuture<Map<String, Object>> retryInteractiveIfQueueFull(
+            CompletableFuture<Map<String, Object>> future, String keyword, String grade, int bankVariant) {
+        return future
+            .handle((result, e) -> {
+                if (e == null) {
+                    return CompletableFuture.completedFuture(result);
+                }
+                if (OutboundHttpClient.unwrap(e) instanceof OpenAiRateLimiter.QueueFullException) {
+                    log.info("↩️ 先読みが順番待ちで断られたため生成し直す keyword={}", keyword);
+                    return load(keyword, grade, null, Priority.INTERACTIVE, bankVariant);
+                }
+                return CompletableFuture.<Map<String, Object>>failedFuture(OutboundHttpClient.unwrap(e));
+            })
+            .thenCompose(f -> f);
+    }
+
+    /**
+     * 動画のすべての問題を取得（JSON APIで問題一式を返す場合）
+     * ★ バンクにないものは1回のOpenAI呼び出しでまとめて生成し、生成できなかったものは1問ずつ生成する
+     * ★ 結果はkeywordListと同じ順番（各要素はgenerateSingleQuizWithWikidataと同じ形）
+     * @param bankVariant 問題番号 → QuizBank.pickVariantで選んだ番号（-1ならランダム）
+     */
+    public CompletableFuture<List<Map<String, Object>>> getAll(String grade, List<String> keywordList,
+                                                               IntUnaryOperator bankVariant) {
+        return completeAll(grade, keywordList, i -> fromBank(keywordList.get(i), grade, bankVariant.applyAsInt(i)));
+    }
+
+    /**
+     * 動画のすべての問題を取得（決まっている問題はknownから、それ以外は生成する）
+     * @param known 問題番号 → 決まっているクイズ（なければnull）
+     */
+    public CompletableFuture<List<Map<String, Object>>> completeAll(String grade, List<String> keywordList,
+                                                                    IntFunction<Map<String, Object>> known) {
+        List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>(keywordList.size());
+        List<Integer> indexes = new ArrayList<>();
+        List<String> keywords = new ArrayList<>();
+
+        for (int i = 0; i < keywordList.size(); i++) {
+            Map<String, Object> banked = known.apply(i);
+            futures.add(banked != null ? CompletableFuture.completedFuture(banked) : null);
+            if (banked == null) {
+                indexes.add(i);
+                keywords.add(keywordList.get(i));
+            }
+        }
+
+        if (indexes.size() == 1) {
+            futures.set(indexes.get(0), load(keywords.get(0), grade, null, Priority.INTERACTIVE, -1));
+        } else if (!indexes.isEmpty()) {
+            log.info("📦 問題一式をまとめて生成 keywords={}", keywords);
+
+            CompletableFuture<List<Map<String, Object>>> quizSet =
+                chatGptQuizService.generateQuizSetWithWikidataAsync(keywords, grade);
+
+            for (int j = 0; j < indexes.size(); j++) {
+                int position = j;
+                String keyword = keywords.get(j);
+                futures.set(indexes.get(j), quizSet
+                    .handle((results, e) -> {
+                        Map<String, Object> result = results != null ? results.get(position) : null;
+                        if (result != null) {
+                            recentQuizzes.put(keyword, grade, result);
+                            return CompletableFuture.completedFuture(result);
+                        }
+                        log.info("↩️ まとめて生成できなかったため1問ずつ生成 keyword={}", keyword);
+                        return load(keyword, grade, null, Priority.INTERACTIVE, -1);
+                    })
+                    .thenCompose(f -> f));
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(v -> {
+                List<Map<String, Object>> results = new ArrayList<>(futures.size());
+                futures.forEach(f -> results.add(f.join()));
+                return results;
+            });
+    }
+
+    /**
+     * from問目からdepth問分の生成を開始（開始済み・バンクにあるものは除く）
+     */
+    private void schedule(SessionPrefetch prefetch, List<String> keywordList, String grade, int from) {
+        int to = Math.min(keywordList.size(), from + depth);
+
+        for (int i = from; i < to; i++) {
+            String nextKeyword = keywordList.get(i);
+
+            if (prefetch.futures.containsKey(i) || quizBank.count(nextKeyword, grade) > 0) {
+                continue;
+            }
+
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                // 混雑時は先読みしない（リクエスト時にその場で生成される）
+                inFlight.decrementAndGet();
+                log.info("⏭️ 先読み数が上限のためスキップ keyword={} inFlight={}", nextKeyword, maxInFlight);
+                return;
+            }
+
+            Cancellation cancellation = new Cancellation();
+            CompletableFuture<Map<String, Object>> future =
+                load(nextKeyword, grade, null, Priority.BACKGROUND, -1, cancellation);
+            // ★ キャンセル後も、順番待ちから外れる・送信済みの応答を受け取るまでは実行中として数える
+            future.whenComplete((r, e) -> inFlight.decrementAndGet());
+            prefetch.futures.put(i, new Prefetch(future, cancellation));
+        }
+    }
+
+    /**
+     * from問目以降（バンクにあるものを除く）を1回のOpenAI呼び出しでまとめて生成
+     * ★ 生成できなかった問題・呼び出しが失敗した場合は1問ずつの生成に切り替える
+     */
+    private void scheduleBatch(SessionPrefetch prefetch, List<String> keywordList, String grade, int from) {
+        List<Integer> indexes = new ArrayList<>();
+        List<String> keywords = new ArrayList<>();
+
+        for (int i = from; i < keywordList.size(); i++) {
+            String keyword = keywordList.get(i);
+            if (!prefetch.futures.containsKey(i) && !(quizBank.isEnabled() && quizBank.count(keyword, grade) > 0)) {
+                indexes.add(i);
+                keywords.add(keyword);
+            }
+        }
+
+        // 1問だけなら通常の生成と同じ
+        if (indexes.size() < 2) {
+            return;
+        }
+
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            log.info("⏭️ 先読み数が上限のため、まとめて生成をスキップ keywords={} inFlight={}", keywords, maxInFlight);
+            return;
+        }
+
+        log.info("📦 まとめて生成を開始 keywords={}", keywords);
+
+        // ★ 問題ごとにキャンセルし、すべての問題が不要になったらまとめて生成も止める
+        List<Cancellation> cancellations = new ArrayList<>(indexes.size());
+        for (int j = 0; j < indexes.size(); j++) {
+            cancellations.add(new Cancellation());
+        }
+
+        CompletableFuture<List<Map<String, Object>>> quizSet =
+            chatGptQuizService.generateQuizSetWithWikidataAsync(keywords, grade, Cancellation.whenAll(cancellations));
+        quizSet.whenComplete((r, e) -> inFlight.decrementAndGet());
+
+        for (int j = 0; j < indexes.size(); j++) {
+            int position = j;
+            String keyword = keywords.get(j);
+            Cancellation cancellation = cancellations.get(j);
+            // 今の問題は画面で待っている
+            Priority priority = indexes.get(j) == from ? Priority.INTERACTIVE : Priority.BACKGROUND;
+
+            CompletableFuture<Map<String, Object>> future = quizSet
+                .handle((results, e) -> {
+                    Map<String, Object> result = results != null ? results.get(position) : null;
+                    if (result != null) {
+                        recentQuizzes.put(keyword, grade, result);
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    if (cancellation.isCancelled()) {
+                        return CompletableFuture.<Map<String, Object>>failedFuture(
+                            new CancellationException("先読みはキャンセルされました"));
+                    }
+                    log.info("↩️ まとめて生成できなかったため1問ずつ生成 keyword={}", keyword);
+                    return load(keyword, grade, null, priority, -1, cancellation);
+                })
+                .thenCompose(f -> f);
+
+            prefetch.futures.put(indexes.get(j), new Prefetch(future, cancellation));
+        }
+    }
+
+    /**
+     * index問目として返すクイズが生成なしで決まっていれば、それを返す（getと同じ順で探す）
+     * ・このセッションで直前に返した問題（完了しているもの）
+     * ・指定したパターン番号のバンクの問題
+     * ★ 先読み・生成は開始しない（JSON APIで、If-None-Matchを生成の前に確かめるため）
+     * @return 決まっていなければnull
+     */
+    public Map<String, Object> peek(String sessionId, String keyword, String grade, List<String> keywordList,
+                                    int index, int bankVariant) {
+        SessionPrefetch prefetch = enabled && sessionId != null ? sessions.get(sessionId) : null;
+        if (prefetch != null && prefetch.matches(keyword, grade)) {
+            CompletableFuture<Map<String, Object>> served = prefetch.served(index);
+            if (served != null) {
+                return served.isDone() && !served.isCompletedExceptionally() ? served.join() : null;
+            }
+        }
+        return quizBank.get(keywordList.get(index), grade, bankVariant);
+    }
+
+    /**
+     * セッション・トークンのないリクエスト（JSON APIを直接呼ぶ場合）で返すクイズ
+     * ★ 同じキーワード・学年には同じ問題を返す（バンクの最初のパターン → 最近生成したクイズの最も古いもの）
+     * ★ 生成した問題はRecentQuizCacheに記録されるため、一度生成すれば次からはそれを返す
+     * @return どちらにもなければnull
+     */
+    public Map<String, Object> stable(String keyword, String grade) {
+        Map<String, Object> result = quizBank.get(keyword, grade, 0);
+        return result != null ? result : recentQuizzes.first(keyword, grade);
+    }
+
+    /**
+     * index問目のクイズがすぐに出せるか（バンクにある、または先読みが完了している）
+     */
+    public boolean isReady(String sessionId, String keyword, String grade, List<String> keywordList, int index) {
+        if (quizBank.isEnabled() && quizBank.count(keywordList.get(index), grade) > 0) {
+            return true;
+        }
+
+        SessionPrefetch prefetch = sessionId != null ? sessions.get(sessionId) : null;
+        if (prefetch == null || !prefetch.matches(keyword, grade)) {
+            return false;
+        }
+
+        CompletableFuture<Map<String, Object>> future = prefetch.served(index);
+        if (future == null) {
+            Prefetch prefetched = prefetch.futures.get(index);
+            future = prefetched != null ? prefetched.future : null;
+        }
+        return future != null && future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    private CompletableFuture<Map<String, Object>> load(String keyword, String grade, QuizStreamListener listener,
+                                                        Priority priority, int bankVariant) {
+        return load(keyword, grade, listener, priority, bankVariant, Cancellation.NONE);
+    }
+
+    private CompletableFuture<Map<String, Object>> load(String keyword, String grade, QuizStreamListener listener,
+                                                        Priority priority, int bankVariant, Cancellation cancellation) {
+        Map<String, Object> result = fromBank(keyword, grade, bankVariant);
+        if (result != null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return chatGptQuizService.generateSingleQuizWithWikidataAsync(keyword, grade, listener, priority, cancellation)
+            .handle((generated, e) -> {
+                if (e == null) {
+                    recentQuizzes.put(keyword, grade, generated);
+                    return generated;
+                }
+
+                // キャンセルした先読みは代替しない
+                if (OutboundHttpClient.unwrap(e) instanceof CancellationException) {
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+
+                // ★ OpenAIの障害・呼び出し停止中は、最近生成したクイズで代替する
+                Map<String, Object> stale = recentQuizzes.pick(keyword, grade);
+                metrics.cache("fallback", stale != null);
+                if (stale == null) {
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+
+                log.warn("♻️ 生成に失敗したため、以前に生成したクイズを出題 keyword={} grade={} error={}",
+                        keyword, grade, OutboundHttpClient.unwrap(e).getMessage());
+                return stale;
+            });
+    }
+
+    private Map<String, Object> fromBank(String keyword, String grade, int bankVariant) {
+        Map<String, Object> result = bankVariant >= 0 ? quizBank.get(keyword, grade, bankVariant) : null;
+        if (result == null) {
+            result = quizBank.pick(keyword, grade);
+        }
+        if (quizBank.isEnabled()) {
+            metrics.cache("quiz_bank", result != null);
+        }
+        return result;
+    }
+
+    /**
+     * 一定時間アクセスのないセッションの先読みをキャンセル
+     */
+    private void expireIdleSessions() {
+        long deadline = System.currentTimeMillis() - sessionTtlMinutes * 60_000L;
+
+        sessions.entrySet().removeIf(e -> {
+            if (e.getValue().lastAccess < deadline) {
+                e.getValue().cancelAll();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    // セッションごとの先読み状態
+    private static class SessionPrefetch {
+        private final String keyword;
+        private final String grade;
+        private final Map<Integer, Prefetch> futures = new ConcurrentHashMap<>();
+        private volatile long lastAccess = System.currentTimeMillis();
+        // まとめて生成を開始済みか
+        private final AtomicBoolean batchStarted = new AtomicBoolean();
+        // 直前に返した問題（先読みとは別に持ち、キャンセルしない: 待っているリクエストがある場合もある）
+        private int servedIndex = -1;
+        private CompletableFuture<Map<String, Object>> served;
+
+        SessionPrefetch(String keyword, String grade) {
+            this.keyword = keyword;
+            this.grade = grade;
+        }
+
+        boolean matches(String keyword, String grade) {
+            return this.keyword.equals(keyword) && this.grade.equals(grade);
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        synchronized void serve(int index, CompletableFuture<Map<String, Object>> future) {
+            servedIndex = index;
+            served = future;
+        }
+
+        // 失敗した問題は作り直す
+        synchronized CompletableFuture<Map<String, Object>> served(int index) {
+            return servedIndex == index && served != null && !served.isCompletedExceptionally() ? served : null;
+        }
+
+        // ★ 順番待ち中の生成はOpenAIに送らない（送信済みのリクエストは止まらないが、結果は破棄される）
+        void cancelAll() {
+            futures.values().forEach(p -> p.cancellation.cancel());
+            futures.clear();
+        }
+    }
+
+    // 先読み1件（キャンセルはcancellationで伝える: futureは生成が止まるまで完了しない）
+    private static final class Prefetch {
+        private final CompletableFuture<Map<String, Object>> future;
+        private final Cancellation cancellation;
+
+        Prefetch(CompletableFuture<Map<String, Object>> future, Cancellation cancellation) {
+            this.future = future;
+            this.cancellation = cancellation;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.chatgptquiz.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * ステートレスセッションのトークン（app.stateless-session.enabled=true）
+ * ・クイズの進行状態（キーワード一覧・出題中の番号・正解数・バンクのパターン番号）をURLに載せる
+ * ・HMAC-SHA256で署名するため、どのレプリカでも検証でき、スティッキーセッションもセッション複製も不要
+ * ・形式: base64url( 本体 + 署名の先頭16バイト )
+ */
+@Service
+public class QuizSessionToken {
+
+    private static final Logger log = LoggerFactory.getLogger(QuizSessionToken.class);
+
+    private static final int VERSION = 1;
+    private static final int MAC_BYTES = 16;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Value("${app.stateless-session.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.stateless-session.secret:}")
+    private String secret;
+
+    @Value("${app.stateless-session.ttl-minutes:180}")
+    private long ttlMinutes;
+
+    private SecretKeySpec key;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            random.nextBytes(keyBytes);
+            if (enabled) {
+                // ★ レプリカごとに別の鍵になるため、他のレプリカが発行したトークンは検証できない
+                log.warn("⚠️ SESSION_TOKEN_SECRETが未設定のため、起動ごとのランダムな鍵で署名します（複数レプリカでは共通の値を設定してください）");
+            }
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 新しいクイズの開始（バンクにあるキーワードは、ここで出題するパターンを決めておく）
+     */
+    public State start(List<String> keywords, String grade, QuizBank quizBank) {
+        short[] variants = new short[keywords.size()];
+        for (int i = 0; i < variants.length; i++) {
+            variants[i] = (short) quizBank.pickVariant(keywords.get(i), grade);
+        }
+        return new State(random.nextLong(), grade, keywords, 0, 0, 0, variants, System.currentTimeMillis() / 1000);
+    }
+
+    public String encode(State state) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeLong(state.sessionId);
+            out.writeInt((int) state.issuedAt);
+            out.writeUTF(state.grade);
+            out.writeShort(state.keywords.size());
+            for (int i = 0; i < state.keywords.size(); i++) {
+                out.writeUTF(state.keywords.get(i));
+                out.writeShort(state.bankVariants[i]);
+            }
+            out.writeShort(state.index);
+            out.writeShort(state.correctCount);
+            out.writeShort(state.totalCount);
+            out.flush();
+
+            byte[] body = bytes.toByteArray();
+            byte[] token = Arrays.copyOf(body, body.length + MAC_BYTES);
+            System.arraycopy(mac(body), 0, token, body.length, MAC_BYTES);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * トークンを検証して状態を取り出す
+     * @return 形式・署名が不正、または有効期限切れならnull
+     */
+    public State decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(token);
+            if (bytes.length <= MAC_BYTES) {
+                return null;
+            }
+
+            byte[] body = Arrays.copyOf(bytes, bytes.length - MAC_BYTES);
+            byte[] signature = Arrays.copyOfRange(bytes, bytes.length - MAC_BYTES, bytes.length);
+            if (!MessageDigest.isEqual(signature, Arrays.copyOf(mac(body), MAC_BYTES))) {
+                log.warn("⚠️ セッショントークンの署名が一致しません");
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            if (in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            long sessionId = in.readLong();
+            long issuedAt = Integer.toUnsignedLong(in.readInt());
+            String grade = in.readUTF();
+            int size = in.readUnsignedShort();
+            List<String> keywords = new ArrayList<>(size);
+            short[] variants = new short[size];
+            for (int i = 0; i < size; i++) {
+                keywords.add(in.readUTF());
+                variants[i] = in.readShort();
+            }
+            int index = in.readUnsignedShort();
+            int correctCount = in.readUnsignedShort();
+            int totalCount = in.readUnsignedShort();
+
+            if (System.currentTimeMillis() / 1000 - issuedAt > ttlMinutes * 60) {
+                log.debug("⏰ セッショントークンの有効期限切れ issuedAt={}", issuedAt);
+                return null;
+            }
+
+            return new State(sessionId, grade, keywords, index, correctCount, totalCount, variants, issuedAt);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("⚠️ セッショントークンを読み取れません error={}", e.toString());
+            return null;
+        }
+    }
+
+    private byte[] mac(byte[] body) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(body);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * クイズの進行状態（不変、進めるたびに新しいトークンを発行する）
+     * ★ indexは出題中の問題。次の問題への遷移（index + 1）でだけ回答結果を反映するため、再読み込みで二重に数えない
+     */
+    public static class State {
+        private final long sessionId;
+        private final String grade;
+        private final List<String> keywords;
+        private final int index;
+        private final int correctCount;
+        private final int totalCount;
+        private final short[] bankVariants;
+        private final long issuedAt;
+
+        State(long sessionId, String grade, List<String> keywords, int index, int correctCount, int totalCount,
+              short[] bankVariants, long issuedAt) {
+            this.sessionId = sessionId;
+            this.grade = grade;
+            this.keywords = Collections.unmodifiableList(keywords);
+            this.index = index;
+            this.correctCount = correctCount;
+            this.totalCount = totalCount;
+            this.bankVariants = bankVariants;
+            this.issuedAt = issuedAt;
+        }
+
+        /**
+         * 同じクイズ（キーワード・学年）のトークンか
+         */
+        public boolean matches(List<String> keywords, String grade) {
+            return this.keywords.equals(keywords) && this.grade.equals(grade);
+        }
+
+        /**
+         * nextIndex問目へ進めた状態（出題中の次の問題への遷移でだけ回答結果を反映）
+         */
+        public State advance(int nextIndex, Boolean isCorrect) {
+            int correct = correctCount;
+            int total = totalCount;
+            if (nextIndex == index + 1 && isCorrect != null) {
+                if (isCorrect) {
+                    correct++;
+                }
+                total++;
+            }
+            return new State(sessionId, grade, keywords, nextIndex, correct, total, bankVariants, issuedAt);
+        }
+
+        /**
+         * 先読みのキー（HttpSessionのIDと重ならないように）
+         */
+        public String prefetchKey() {
+            return "t:" + Long.toHexString(sessionId);
+        }
+
+        public int bankVariant(int i) {
+            return i < bankVariants.length ? bankVariants[i] : -1;
+        }
+
+        public List<String> getKeywords() { return keywords; }
+        public String getGrade() { return grade; }
+        public int getIndex() { return index; }
+        public int getCorrectCount() { return correctCount; }
+        public int getTotalCount() { return totalCount; }
+    }
+}
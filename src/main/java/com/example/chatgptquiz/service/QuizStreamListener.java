@@ -0,0 +1,19 @@
+package com.example.chatgptquiz.service;
+
+/**
+ * ストリーミング生成中のクイズを途中経過として受け取る
+ * ★ OpenAIからの受信スレッドで呼ばれるため、重い処理はしないこと
+ */
+public interface QuizStreamListener {
+
+    /**
+     * 問題文が伸びたとき（その時点までの問題文全体）
+     */
+    void onQuestion(String question);
+
+    /**
+     * 選択肢が1つ確定したとき
+     * @param index 生成された順番（answerIndexと同じ番号）
+     */
+    void onChoice(int index, String choice);
+}
@@ -0,0 +1,157 @@
+package com.example.chatgptquiz.service;
+
+import java.util.Arrays;
+
+/**
+ * 生成途中のクイズJSONを少しずつ読み、問題文と選択肢を取り出す
+ * ・{"question": "...", "choices": ["...", ...], "answerIndex": 0} の形を前提とする
+ * ・問題文は届いた分だけ、選択肢は1つ閉じるごとにリスナーへ通知する
+ * ・JSONとしての検証はしない（完成後にQuiz.fromJsonで改めて解析する）
+ */
+final class QuizStreamParser {
+
+    private static final String KEY_QUESTION = "question";
+    private static final String KEY_CHOICES = "choices";
+
+    private final QuizStreamListener listener;
+
+    // 開いているオブジェクト・配列（'{' / '['）
+    private char[] stack = new char[8];
+    private int depth;
+
+    private boolean inString;
+    private boolean stringIsKey;
+    private boolean expectKey;
+    private boolean escape;
+    private int hexRemaining;
+    private int hexValue;
+    private final StringBuilder string = new StringBuilder();
+
+    // 最上位オブジェクトで直前に読んだキー
+    private String topKey;
+
+    private final StringBuilder question = new StringBuilder();
+    private boolean questionChanged;
+    private int choiceCount;
+
+    QuizStreamParser(QuizStreamListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 受信した断片を読み進める
+     */
+    void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            accept(chunk.charAt(i));
+        }
+
+        // ★ 問題文は断片ごとにまとめて通知する（1文字ずつは送らない）
+        if (questionChanged) {
+            questionChanged = false;
+            listener.onQuestion(question.toString());
+        }
+    }
+
+    private void accept(char c) {
+        if (inString) {
+            acceptInString(c);
+            return;
+        }
+
+        switch (c) {
+            case '"':
+                inString = true;
+                stringIsKey = top() == '{' && expectKey;
+                string.setLength(0);
+                break;
+            case '{':
+                push(c);
+                expectKey = true;
+                break;
+            case '[':
+                push(c);
+                break;
+            case '}':
+            case ']':
+                if (depth > 0) {
+                    depth--;
+                }
+                break;
+            case ':':
+                expectKey = false;
+                break;
+            case ',':
+                expectKey = top() == '{';
+                break;
+            default:
+                // 数値・true/false・空白は読み飛ばす
+        }
+    }
+
+    private void acceptInString(char c) {
+        if (hexRemaining > 0) {
+            hexValue = hexValue * 16 + Character.digit(c, 16);
+            if (--hexRemaining == 0) {
+                append((char) hexValue);
+            }
+            return;
+        }
+
+        if (escape) {
+            escape = false;
+            switch (c) {
+                case 'n': append('\n'); break;
+                case 't': append('\t'); break;
+                case 'r': append('\r'); break;
+                case 'b': append('\b'); break;
+                case 'f': append('\f'); break;
+                case 'u':
+                    hexRemaining = 4;
+                    hexValue = 0;
+                    break;
+                default: append(c);
+            }
+            return;
+        }
+
+        if (c == '\\') {
+            escape = true;
+        } else if (c == '"') {
+            endString();
+        } else {
+            append(c);
+        }
+    }
+
+    private void append(char c) {
+        string.append(c);
+        if (!stringIsKey && depth == 1 && KEY_QUESTION.equals(topKey)) {
+            question.append(c);
+            questionChanged = true;
+        }
+    }
+
+    private void endString() {
+        inString = false;
+
+        if (stringIsKey) {
+            if (depth == 1) {
+                topKey = string.toString();
+            }
+        } else if (depth == 2 && stack[1] == '[' && KEY_CHOICES.equals(topKey)) {
+            listener.onChoice(choiceCount++, string.toString());
+        }
+    }
+
+    private char top() {
+        return depth > 0 ? stack[depth - 1] : 0;
+    }
+
+    private void push(char c) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = c;
+    }
+}
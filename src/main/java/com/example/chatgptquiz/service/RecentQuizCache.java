@@ -0,0 +1,101 @@
+package com.example.chatgptquiz.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.chatgptquiz.model.Quiz;
+
+/**
+ * 最近生成したクイズ（キーワード × 学年ごとに数パターン）
+ * ・OpenAIが失敗した・呼び出しを停止中のときに、代わりに出題する
+ * ・件数上限つきのLRU（メモリのみ、再起動で消える）
+ */
+@Service
+public class RecentQuizCache {
+
+    // アクセス順のLinkedHashMap（先頭が最も古い、thisで同期）
+    private final LinkedHashMap<String, List<Map<String, Object>>> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    @Value("${app.quiz-fallback.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.quiz-fallback.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${app.quiz-fallback.variants:3}")
+    private int variants;
+
+    /**
+     * 生成したクイズを記録（パターン数を超えたら古いものから入れ替える）
+     * ★ generateSingleQuizWithWikidataと同じ形（quiz / wikidataInfo）
+     * ★ 記録済みと同じ問題文なら追加しない（共有キャッシュから同じクイズが何度も返っても、パターンが埋まらないように）
+     */
+    public void put(String keyword, String grade, Map<String, Object> result) {
+        if (!enabled || result == null || result.get("quiz") == null) {
+            return;
+        }
+
+        synchronized (this) {
+            List<Map<String, Object>> quizzes = entries.computeIfAbsent(key(keyword, grade), k -> new ArrayList<>());
+            String question = ((Quiz) result.get("quiz")).getQuestion();
+            for (Map<String, Object> stored : quizzes) {
+                if (Objects.equals(((Quiz) stored.get("quiz")).getQuestion(), question)) {
+                    return;
+                }
+            }
+            quizzes.add(new HashMap<>(result));
+            if (quizzes.size() > variants) {
+                quizzes.remove(0);
+            }
+
+            while (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * 記録済みのクイズを1問ランダムに取り出す
+     * @return 該当がなければnull
+     */
+    public Map<String, Object> pick(String keyword, String grade) {
+        if (!enabled) {
+            return null;
+        }
+
+        synchronized (this) {
+            List<Map<String, Object>> quizzes = entries.get(key(keyword, grade));
+            if (quizzes == null || quizzes.isEmpty()) {
+                return null;
+            }
+            return new HashMap<>(quizzes.get(ThreadLocalRandom.current().nextInt(quizzes.size())));
+        }
+    }
+
+    /**
+     * 記録済みのうち最も古いクイズ（入れ替わるまでは毎回同じものを返す）
+     * @return 該当がなければnull
+     */
+    public Map<String, Object> first(String keyword, String grade) {
+        if (!enabled) {
+            return null;
+        }
+
+        synchronized (this) {
+            List<Map<String, Object>> quizzes = entries.get(key(keyword, grade));
+            return quizzes == null || quizzes.isEmpty() ? null : new HashMap<>(quizzes.get(0));
+        }
+    }
+
+    private String key(String keyword, String grade) {
+        return grade + "\t" + keyword;
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.chatgptquiz.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Redisプロトコル（RESP2）の保存先（app.shared-cache.backend=redis）
+ * ・使うコマンドは GET / SET PX / DEL / PUBLISH / SUBSCRIBE だけなので、クライアントライブラリは使わない
+ *   （Redis互換のサーバー: Valkey・KeyDB・ElastiCacheなどでも動く）
+ * ・接続は使い回し（最大max-connections本）、エラーになった接続は捨てる
+ * ・接続できなかったら、retry-after-msの間は接続を試さずにすぐ失敗する（停止中のRedisに毎回待たされないように）
+ * ・URL: redis://[:password@]host[:port][/db]
+ */
+public class RedisSharedStore implements SharedStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisSharedStore.class);
+
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int database;
+    private final int timeoutMs;
+    private final long retryAfterMs;
+
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private final List<Connection> subscriptions = new ArrayList<>();
+
+    private volatile boolean closed;
+
+    // この時刻（System.nanoTime）までは接続を試さない（0なら利用可能）
+    private volatile long unavailableUntil;
+
+    public RedisSharedStore(String url, int timeoutMs, int maxConnections, long retryAfterMs) {
+        URI uri = URI.create(url);
+        this.host = uri.getHost() != null ? uri.getHost() : "localhost";
+        this.port = uri.getPort() > 0 ? uri.getPort() : 6379;
+
+        String userInfo = uri.getRawUserInfo();
+        String secret = null;
+        if (userInfo != null && !userInfo.isEmpty()) {
+            // ★ ユーザー名なし（:password）の形だけ使う
+            secret = URLDecoder.decode(userInfo.substring(userInfo.indexOf(':') + 1), StandardCharsets.UTF_8);
+        }
+        this.password = secret;
+
+        String path = uri.getPath();
+        this.database = path != null && path.length() > 1 ? Integer.parseInt(path.substring(1)) : 0;
+        this.timeoutMs = timeoutMs;
+        this.retryAfterMs = retryAfterMs;
+        this.permits = new Semaphore(Math.max(1, maxConnections));
+    }
+
+    @Override
+    public String get(String key) throws IOException {
+        return (String) execute("GET", key);
+    }
+
+    @Override
+    public void set(String key, String value, Duration ttl) throws IOException {
+        execute("SET", key, value, "PX", String.valueOf(Math.max(1, ttl.toMillis())));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        execute("DEL", key);
+    }
+
+    @Override
+    public void publish(String channel, String message) throws IOException {
+        execute("PUBLISH", channel, message);
+    }
+
+    /**
+     * 専用の接続で購読する（切断されたら間隔をおいて再接続）
+     */
+    @Override
+    public void subscribe(String channel, Consumer<String> listener) {
+        Thread thread = new Thread(() -> {
+            // ★ 接続できない間は接続と同じ間隔（retryAfterMs）で試し、警告は切断されたときに1回だけ出す
+            long delayMs = retryAfterMs > 0 ? retryAfterMs : RECONNECT_DELAY_MS;
+            boolean disconnected = false;
+            while (!closed) {
+                Connection connection = null;
+                try {
+                    connection = connect();
+                    connection.socket.setSoTimeout(0);
+                    synchronized (subscriptions) {
+                        subscriptions.add(connection);
+                    }
+                    connection.write("SUBSCRIBE", channel);
+                    if (disconnected) {
+                        disconnected = false;
+                        log.info("✅ 共有キャッシュの通知を再購読しました channel={} host={}:{}", channel, host, port);
+                    } else {
+                        log.info("📡 共有キャッシュの通知を購読 channel={} host={}:{}", channel, host, port);
+                    }
+
+                    while (!closed) {
+                        Object reply = connection.read();
+                        if (reply instanceof List && ((List<?>) reply).size() == 3
+                                && "message".equals(((List<?>) reply).get(0))) {
+                            listener.accept((String) ((List<?>) reply).get(2));
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (!closed) {
+                        if (!disconnected) {
+                            disconnected = true;
+                            log.warn("⚠️ 共有キャッシュの通知の受信が切断されました（{}ミリ秒ごとに再接続を試します） host={}:{} error={}",
+                                    delayMs, host, port, e.toString());
+                        } else {
+                            log.debug("⚠️ 共有キャッシュの通知の再接続に失敗 error={}", e.toString());
+                        }
+                        sleep(delayMs);
+                    }
+                } finally {
+                    if (connection != null) {
+                        synchronized (subscriptions) {
+                            subscriptions.remove(connection);
+                        }
+                        connection.close();
+                    }
+                }
+            }
+        }, "shared-cache-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+        synchronized (subscriptions) {
+            subscriptions.forEach(Connection::close);
+            subscriptions.clear();
+        }
+    }
+
+    /**
+     * 1コマンドを送って応答を受け取る（通信エラーの接続は捨て、Redisのエラー応答は接続を戻してから例外にする）
+     */
+    private Object execute(String... args) throws IOException {
+        if (closed) {
+            throw new IOException("共有キャッシュは終了しています");
+        }
+        long until = unavailableUntil;
+        if (until != 0 && System.nanoTime() - until < 0) {
+            throw new IOException("共有キャッシュに接続できないため、再接続を待っています");
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("共有キャッシュの接続待ちがタイムアウトしました");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+
+        Connection connection = idle.poll();
+        try {
+            if (connection == null) {
+                connection = connectOrBackOff();
+            }
+            connection.write(args);
+            Object reply = connection.read();
+            idle.offer(connection);
+            connection = null;
+
+            if (reply instanceof RedisError) {
+                throw new IOException("Redis: " + ((RedisError) reply).message);
+            }
+            return reply;
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * 新しい接続を作る（失敗したらretry-after-msの間は利用不可にする）
+     */
+    private Connection connectOrBackOff() throws IOException {
+        try {
+            Connection connection = connect();
+            if (unavailableUntil != 0) {
+                unavailableUntil = 0;
+                log.info("✅ 共有キャッシュに再接続しました host={}:{}", host, port);
+            }
+            return connection;
+        } catch (IOException e) {
+            if (retryAfterMs > 0) {
+                boolean first = unavailableUntil == 0;
+                unavailableUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMs);
+                if (first) {
+                    log.warn("⚠️ 共有キャッシュに接続できません（{}ミリ秒ごとに再接続を試し、その間はキャッシュなしで続行） host={}:{} error={}",
+                            retryAfterMs, host, port, e.toString());
+                }
+            }
+            throw e;
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            socket.setTcpNoDelay(true);
+            Connection connection = new Connection(socket);
+
+            if (password != null) {
+                connection.write("AUTH", password);
+                expectOk(connection.read());
+            }
+            if (database > 0) {
+                connection.write("SELECT", String.valueOf(database));
+                expectOk(connection.read());
+            }
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static void expectOk(Object reply) throws IOException {
+        if (reply instanceof RedisError) {
+            throw new IOException("Redis: " + ((RedisError) reply).message);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // エラー応答（-ERR ...）
+    private static final class RedisError {
+        private final String message;
+
+        RedisError(String message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * 1本の接続（RESP2の書き込み・読み取り）
+     */
+    private static final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        // *<引数の数>\r\n $<バイト数>\r\n <値>\r\n ...
+        void write(String... args) throws IOException {
+            out.write(('*' + String.valueOf(args.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.write(('$' + String.valueOf(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(bytes);
+                out.write('\r');
+                out.write('\n');
+            }
+            out.flush();
+        }
+
+        Object read() throws IOException {
+            int type = in.read();
+            if (type < 0) {
+                throw new EOFException("Redisとの接続が閉じられました");
+            }
+            String line = readLine();
+            switch (type) {
+                case '+':
+                    return line;
+                case '-':
+                    return new RedisError(line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$': {
+                    int length = Integer.parseInt(line);
+                    if (length < 0) {
+                        return null;
+                    }
+                    byte[] bytes = in.readNBytes(length);
+                    if (bytes.length < length) {
+                        throw new EOFException("Redisの応答が途中で終わりました");
+                    }
+                    readLine();
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                case '*': {
+                    int count = Integer.parseInt(line);
+                    if (count < 0) {
+                        return null;
+                    }
+                    List<Object> items = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        items.add(read());
+                    }
+                    return items;
+                }
+                default:
+                    throw new IOException("Redisの応答を解析できません type=" + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(32);
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b < 0) {
+                    throw new EOFException("Redisとの接続が閉じられました");
+                }
+                line.write(b);
+            }
+            if (in.read() != '\n') {
+                throw new IOException("Redisの応答の改行が不正です");
+            }
+            return line.toString(StandardCharsets.UTF_8);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 閉じるだけなので無視
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.chatgptquiz.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * OpenAI呼び出しの再試行（予算つき）
+ * ・待ち時間は指数的に伸ばし、0〜上限の間でランダムにずらす（同時に失敗した呼び出しが一斉に再試行しないように）
+ * ・再試行は「呼び出し回数 × budget-ratio」回まで（障害時に再試行で負荷を何倍にもしない）
+ * ・最初の呼び出しから max-elapsed-ms を超える再試行はしない（利用者を待たせすぎない）
+ */
+@Component
+public class RetryBudget {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryBudget.class);
+
+    private final QuizMetrics metrics;
+
+    @Value("${app.openai-retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.openai-retry.base-delay-ms:200}")
+    private long baseDelayMs;
+
+    @Value("${app.openai-retry.max-delay-ms:2000}")
+    private long maxDelayMs;
+
+    @Value("${app.openai-retry.max-elapsed-ms:10000}")
+    private long maxElapsedMs;
+
+    @Value("${app.openai-retry.budget-ratio:0.1}")
+    private double budgetRatio;
+
+    @Value("${app.openai-retry.budget-max:10}")
+    private double budgetMax;
+
+    // ★ 再試行に使える残り回数（thisで同期して更新）
+    private double balance;
+
+    public RetryBudget(QuizMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        balance = budgetMax;
+    }
+
+    /**
+     * attemptを実行し、retryableに一致する失敗なら予算の範囲で再試行する
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt, Predicate<Throwable> retryable) {
+        deposit();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        run(attempt, retryable, 1, System.nanoTime(), MDC.getCopyOfContextMap(), result);
+        return result;
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> attempt, Predicate<Throwable> retryable, int number,
+                         long startNanos, Map<String, String> context, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((value, ex) -> {
+            if (ex == null) {
+                result.complete(value);
+                return;
+            }
+
+            Throwable e = OutboundHttpClient.unwrap(ex);
+            long delayMs = delay(number);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            // 呼び出し元がキャンセル済み・再試行できない失敗・時間切れなら、そのまま失敗にする
+            if (result.isDone() || number >= maxAttempts || !retryable.test(e) || elapsedMs + delayMs > maxElapsedMs) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            if (!withdraw()) {
+                metrics.count(QuizMetrics.OPENAI_RETRIES, "result", "budget_exhausted");
+                log.warn("⏭️ 再試行の予算を使い切ったため再試行しません error={}", e.getMessage());
+                result.completeExceptionally(e);
+                return;
+            }
+
+            metrics.count(QuizMetrics.OPENAI_RETRIES, "result", "retried");
+            log.info("🔁 OpenAI APIを再試行 attempt={} delayMs={} error={}", number + 1, delayMs, e.getMessage());
+
+            CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS).execute(() ->
+                OutboundHttpClient.withContext(context, () ->
+                    run(attempt, retryable, number + 1, startNanos, context, result)));
+        });
+    }
+
+    /**
+     * number回目の失敗のあとの待ち時間（0〜min(上限, 基本 × 2^(number-1)) のランダム）
+     */
+    private long delay(int number) {
+        long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(number - 1, 20));
+        return cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+    }
+
+    private synchronized void deposit() {
+        balance = Math.min(budgetMax, balance + budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (balance < 1) {
+            return false;
+        }
+        balance--;
+        return true;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.chatgptquiz.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * 複数レプリカで共有するキャッシュの保存先（TieredCacheの2段目）
+ * ・値は文字列（JSON）、キーごとに有効期間を指定する
+ * ・publish / subscribe で無効化の通知を全レプリカに配る
+ * ・失敗はIOExceptionで通知し、呼び出し側はキャッシュなしとして処理を続ける
+ */
+public interface SharedStore extends AutoCloseable {
+
+    /**
+     * @return なければnull
+     */
+    String get(String key) throws IOException;
+
+    void set(String key, String value, Duration ttl) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    void publish(String channel, String message) throws IOException;
+
+    /**
+     * 通知の受信を開始（受信は別スレッド、切断時は再接続する）
+     */
+    void subscribe(String channel, Consumer<String> listener);
+
+    @Override
+    void close();
+}
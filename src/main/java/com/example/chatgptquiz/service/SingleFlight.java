@@ -0,0 +1,107 @@
+package com.example.chatgptquiz.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 同じキーの非同期処理を1つにまとめる（single-flight）
+ * ・実行中の処理があれば、新しく始めずにその結果を待つ
+ * ・完了（成功・失敗とも）したらキーを外すので、結果は保持しない（キャッシュではない）
+ * ・呼び出し元ごとに別のCompletableFutureを返すため、1人がcancelしても他の呼び出し元には影響しない
+ * ・Cancellationを渡した呼び出し元がすべてキャンセルした場合だけ、処理に渡したCancellationをキャンセルする
+ *   （キャンセルしない呼び出し元が1人でもいれば止めない）
+ */
+final class SingleFlight<K, V> {
+
+    private final Map<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * keyの処理が実行中ならその結果を、なければloaderで開始した結果を返す
+     */
+    CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> loader) {
+        return execute(key, Cancellation.NONE, cancellation -> loader.get());
+    }
+
+    /**
+     * キャンセルできる版（loaderには、呼び出し元すべてがキャンセルしたらキャンセルされるCancellationを渡す）
+     */
+    CompletableFuture<V> execute(K key, Cancellation caller, Function<Cancellation, CompletableFuture<V>> loader) {
+        Flight<V> created = new Flight<>();
+
+        while (true) {
+            Flight<V> existing = inFlight.putIfAbsent(key, created);
+            if (existing == null) {
+                break;
+            }
+            if (existing.join(caller)) {
+                return existing.result.copy();
+            }
+            // ★ 全員がキャンセルして止めている処理には相乗りせず、新しく実行する
+            if (inFlight.replace(key, existing, created)) {
+                break;
+            }
+        }
+
+        created.join(caller);
+
+        CompletableFuture<V> running;
+        try {
+            running = loader.apply(created.cancellation);
+        } catch (RuntimeException e) {
+            running = CompletableFuture.failedFuture(e);
+        }
+
+        running.whenComplete((value, ex) -> {
+            // ★ 完了を通知する前に外す（後から来た呼び出しは新しく実行する）
+            inFlight.remove(key, created);
+            if (ex != null) {
+                created.result.completeExceptionally(OutboundHttpClient.unwrap(ex));
+            } else {
+                created.result.complete(value);
+            }
+        });
+
+        return created.result.copy();
+    }
+
+    /**
+     * 実行中の件数
+     */
+    int size() {
+        return inFlight.size();
+    }
+
+    // 実行中の処理1件と、その結果を待っている呼び出し元の数
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final Cancellation cancellation = new Cancellation();
+        // ★ 以下はthisで同期して更新する
+        private int waiting;
+        private boolean pinned;
+
+        /**
+         * 呼び出し元として加わる（キャンセル済みの処理ならfalse）
+         */
+        synchronized boolean join(Cancellation caller) {
+            if (cancellation.isCancelled()) {
+                return false;
+            }
+            if (caller == Cancellation.NONE) {
+                pinned = true;
+            } else {
+                waiting++;
+                caller.onCancel(this::leave);
+            }
+            return true;
+        }
+
+        private synchronized void leave() {
+            if (--waiting == 0 && !pinned) {
+                cancellation.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.chatgptquiz.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * レプリカ間で共有する2段のキャッシュ（app.shared-cache.enabled=true）
+ * ・1段目: JVM内のニアキャッシュ（件数上限つきLRU、短いTTL）
+ * ・2段目: 共有の保存先（SharedStore: Redisプロトコル、または同じJVM内のメモリ）
+ * ・キーは「接頭辞:種類:バージョン:キー」。モデルや指示文を変えたらバージョンを変え、古い値を使わないようにする
+ * ・保存・削除のたびに無効化の通知を送り、他のレプリカのニアキャッシュから古い値を消す
+ * ・共有の保存先の障害時はキャッシュなしとして動く（取得はmiss、保存は捨てる）
+ * ・共有の保存先との通信は専用スレッドで行い、結果はCompletableFutureで返す
+ *   （リクエスト処理・HTTPクライアントのコールバックのスレッドをブロックしない）
+ */
+@Service
+public class TieredCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TieredCache.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final QuizMetrics metrics;
+
+    // 通知の送信元（自分の通知は無視する）
+    private final String origin = UUID.randomUUID().toString();
+
+    // アクセス順のLinkedHashMap（先頭が最も古い、thisで同期）
+    private final LinkedHashMap<String, NearEntry> near = new LinkedHashMap<>(256, 0.75f, true);
+
+    @Value("${app.shared-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.shared-cache.backend:redis}")
+    private String backend;
+
+    @Value("${app.shared-cache.redis-url:redis://localhost:6379}")
+    private String redisUrl;
+
+    @Value("${app.shared-cache.timeout-ms:200}")
+    private int timeoutMs;
+
+    @Value("${app.shared-cache.max-connections:16}")
+    private int maxConnections;
+
+    // 接続できなかった後、再接続を試さずにキャッシュなしとして続行する時間
+    @Value("${app.shared-cache.retry-after-ms:5000}")
+    private long retryAfterMs;
+
+    // 通信待ちの上限（超えた分は取得miss・保存を捨てる）
+    @Value("${app.shared-cache.max-pending:1000}")
+    private int maxPending;
+
+    @Value("${app.shared-cache.key-prefix:chatgptquiz}")
+    private String keyPrefix;
+
+    @Value("${app.shared-cache.near-max-entries:2000}")
+    private int nearMaxEntries;
+
+    @Value("${app.shared-cache.near-ttl-seconds:60}")
+    private long nearTtlSeconds;
+
+    private SharedStore store;
+
+    // 共有の保存先との通信用（max-connections本のスレッド）
+    private ThreadPoolExecutor io;
+
+    public TieredCache(QuizMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            start("memory".equals(backend) ? new InMemorySharedStore()
+                                           : new RedisSharedStore(redisUrl, timeoutMs, maxConnections, retryAfterMs));
+        }
+    }
+
+    /**
+     * 保存先を指定して開始（同じInMemorySharedStoreを複数のTieredCacheで共有すると、レプリカ間の動作を再現できる）
+     */
+    public void start(SharedStore sharedStore) {
+        AtomicInteger threads = new AtomicInteger();
+        int size = Math.max(1, maxConnections);
+        this.io = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxPending)), r -> {
+                    Thread t = new Thread(r, "shared-cache-io-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        io.allowCoreThreadTimeOut(true);
+        this.store = sharedStore;
+        store.subscribe(channel(), this::onInvalidation);
+        log.info("✅ 共有キャッシュ開始 backend={} prefix={} nearMaxEntries={} nearTtlSeconds={}",
+                sharedStore.getClass().getSimpleName(), keyPrefix, nearMaxEntries, nearTtlSeconds);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (io != null) {
+            io.shutdownNow();
+        }
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * ニアキャッシュ → 共有の保存先の順に探す（共有の保存先で見つかればニアキャッシュにも入れる）
+     * ★ ニアキャッシュにあればすぐに完了、共有の保存先は専用スレッドで読む
+     * @return なければ・期限切れ・読み取れなければnullで完了（例外では失敗しない）
+     */
+    public <T> CompletableFuture<T> getAsync(String namespace, String version, String key, Class<T> type) {
+        if (store == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String fullKey = fullKey(namespace, version, key);
+        Object local = nearGet(fullKey);
+        metrics.cache(namespace + "_near", local != null);
+        if (type.isInstance(local)) {
+            return CompletableFuture.completedFuture(type.cast(local));
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                T value = null;
+                try {
+                    String json = store.get(fullKey);
+                    if (json != null) {
+                        value = objectMapper.readValue(json, type);
+                        nearPut(fullKey, value, Duration.ofSeconds(nearTtlSeconds));
+                    }
+                } catch (Exception e) {
+                    metrics.error("shared_cache");
+                    log.debug("⚠️ 共有キャッシュの取得に失敗（なしとして続行） key={} error={}", fullKey, e.toString());
+                }
+                metrics.cache(namespace + "_shared", value != null);
+                return value;
+            }, io);
+        } catch (RejectedExecutionException e) {
+            metrics.error("shared_cache");
+            log.debug("⚠️ 共有キャッシュの通信待ちが上限に達しました（なしとして続行） key={}", fullKey);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * 両方の段に保存し、他のレプリカのニアキャッシュに無効化を通知する
+     * ★ ニアキャッシュにはすぐに入れ、共有の保存先への書き込みは専用スレッドで行う（完了を待たない）
+     */
+    public void put(String namespace, String version, String key, Object value, Duration ttl) {
+        if (store == null || value == null) {
+            return;
+        }
+
+        String fullKey = fullKey(namespace, version, key);
+        nearPut(fullKey, value, ttl);
+        try {
+            io.execute(() -> {
+                try {
+                    store.set(fullKey, objectMapper.writeValueAsString(value), ttl);
+                    store.publish(channel(), origin + "|" + fullKey);
+                } catch (Exception e) {
+                    metrics.error("shared_cache");
+                    log.debug("⚠️ 共有キャッシュへの保存に失敗（捨てる） key={} error={}", fullKey, e.toString());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.error("shared_cache");
+            log.debug("⚠️ 共有キャッシュの通信待ちが上限に達しました（保存を捨てる） key={}", fullKey);
+        }
+    }
+
+    /**
+     * 全レプリカから削除
+     * ★ ニアキャッシュからはすぐに消し、共有の保存先からの削除と通知は専用スレッドで行う（完了を待たない）
+     */
+    public void invalidate(String namespace, String version, String key) {
+        if (store == null) {
+            return;
+        }
+
+        String fullKey = fullKey(namespace, version, key);
+        synchronized (this) {
+            near.remove(fullKey);
+        }
+        try {
+            io.execute(() -> {
+                try {
+                    store.delete(fullKey);
+                    store.publish(channel(), origin + "|" + fullKey);
+                } catch (Exception e) {
+                    metrics.error("shared_cache");
+                    log.warn("⚠️ 共有キャッシュの削除に失敗しました key={} error={}", fullKey, e.toString());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.error("shared_cache");
+            log.warn("⚠️ 共有キャッシュの通信待ちが上限に達しました（削除できません） key={}", fullKey);
+        }
+    }
+
+    /**
+     * 他のレプリカからの通知（保存・削除されたキーをニアキャッシュから消す）
+     */
+    private void onInvalidation(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || message.substring(0, separator).equals(origin)) {
+            return;
+        }
+        synchronized (this) {
+            near.remove(message.substring(separator + 1));
+        }
+    }
+
+    private synchronized Object nearGet(String fullKey) {
+        NearEntry entry = near.get(fullKey);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            near.remove(fullKey);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private synchronized void nearPut(String fullKey, Object value, Duration ttl) {
+        if (nearMaxEntries <= 0) {
+            return;
+        }
+        long ttlMs = Math.min(ttl.toMillis(), nearTtlSeconds * 1000);
+        near.put(fullKey, new NearEntry(value, System.currentTimeMillis() + ttlMs));
+        while (near.size() > nearMaxEntries) {
+            near.remove(near.keySet().iterator().next());
+        }
+    }
+
+    private String fullKey(String namespace, String version, String key) {
+        return keyPrefix + ":" + namespace + ":" + version + ":" + key;
+    }
+
+    private String channel() {
+        return keyPrefix + ":invalidate";
+    }
+
+    private static final class NearEntry {
+        private final Object value;
+        private final long expiresAt;
+
+        NearEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
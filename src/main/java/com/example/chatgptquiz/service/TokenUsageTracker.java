@@ -0,0 +1,406 @@
+package com.example.chatgptquiz.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * OpenAI呼び出しごとのトークン使用量・料金の集計
+ * ・モデル × 学年 × Wikidata参考情報の有無 × 呼び出し方法ごとに合計する
+ * ・キーワード別の集計は件数上限つき（最も古く使われたものから削除）
+ * ・一定間隔でその間の集計をファイルに1行ずつ追記する（JSON Lines）
+ * ・料金は app.token-usage.price.<モデル名>.prompt / .completion（100万トークンあたりの米ドル）から計算する
+ */
+@Service
+public class TokenUsageTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenUsageTracker.class);
+
+    private final Environment environment;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.token-usage.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.token-usage.file:token-usage.jsonl}")
+    private String rollupFile;
+
+    @Value("${app.token-usage.rollup-minutes:10}")
+    private long rollupMinutes;
+
+    @Value("${app.token-usage.max-keywords:2000}")
+    private int maxKeywords;
+
+    @Value("${app.token-usage.recent-calls:100}")
+    private int maxRecentCalls;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    // ★ 以下はすべてthisで同期して更新する
+    private final Totals total = new Totals();
+    private final Map<String, Totals> groups = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Totals> keywords = new LinkedHashMap<>(256, 0.75f, true);
+    private final Deque<Call> recentCalls = new ArrayDeque<>();
+
+    // 前回ファイルに書き出してからの集計
+    private Map<String, Totals> intervalGroups = new LinkedHashMap<>();
+    private long intervalStartedAt = startedAt;
+
+    private ScheduledExecutorService roller;
+
+    public TokenUsageTracker(Environment environment) {
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || rollupFile == null || rollupFile.isBlank() || rollupMinutes <= 0) {
+            return;
+        }
+
+        roller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "token-usage-rollup");
+            t.setDaemon(true);
+            return t;
+        });
+        roller.scheduleWithFixedDelay(this::writeRollup, rollupMinutes, rollupMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 終了時に残りの集計を書き出す
+     */
+    @PreDestroy
+    public void stop() {
+        if (roller != null) {
+            roller.shutdownNow();
+            writeRollup();
+        }
+    }
+
+    /**
+     * OpenAI呼び出し1回分の使用量を記録する
+     */
+    public void record(Call call) {
+        if (!enabled) {
+            return;
+        }
+
+        call.setTimestamp(System.currentTimeMillis());
+        call.setCostUsd(cost(call.getModel(), call.getPromptTokens(), call.getCompletionTokens()));
+
+        String groupKey = call.getModel() + "\t" + call.getGrade() + "\t" + call.isWikidata() + "\t" + call.getKind();
+
+        synchronized (this) {
+            total.add(call);
+            groups.computeIfAbsent(groupKey, k -> Totals.group(call)).add(call);
+            intervalGroups.computeIfAbsent(groupKey, k -> Totals.group(call)).add(call);
+
+            keywords.computeIfAbsent(call.getKeyword() + "\t" + call.getGrade(), k -> Totals.keyword(call)).add(call);
+            while (keywords.size() > maxKeywords) {
+                keywords.remove(keywords.keySet().iterator().next());
+            }
+
+            recentCalls.addLast(call);
+            while (recentCalls.size() > maxRecentCalls) {
+                recentCalls.removeFirst();
+            }
+        }
+
+        log.info("🪙 トークン使用量 kind={} prompt={} completion={} latencyMs={} costUsd={}",
+                call.getKind(), call.getPromptTokens(), call.getCompletionTokens(), call.getLatencyMs(), call.getCostUsd());
+    }
+
+    /**
+     * 起動からの集計（/actuator/usage で返す内容）
+     * @param top キーワード別の集計を何件返すか（1回あたりの合計トークン数が多い順）
+     */
+    public synchronized Report report(int top) {
+        Report report = new Report();
+        report.setStartedAt(startedAt);
+        report.setTotal(total.copy());
+
+        List<Totals> groupList = new ArrayList<>(groups.size());
+        groups.values().forEach(t -> groupList.add(t.copy()));
+        report.setGroups(groupList);
+
+        List<Totals> keywordList = new ArrayList<>(keywords.size());
+        keywords.values().forEach(t -> keywordList.add(t.copy()));
+        keywordList.sort(Comparator.comparingDouble(Totals::getAverageTotalTokens).reversed());
+        report.setTopKeywords(new ArrayList<>(keywordList.subList(0, Math.min(Math.max(top, 0), keywordList.size()))));
+
+        report.setRecentCalls(new ArrayList<>(recentCalls));
+        return report;
+    }
+
+    /**
+     * 前回からの集計をファイルに1行追記する（呼び出しがなければ何もしない）
+     */
+    void writeRollup() {
+        Rollup rollup = new Rollup();
+        synchronized (this) {
+            if (intervalGroups.isEmpty()) {
+                return;
+            }
+            rollup.setFrom(intervalStartedAt);
+            rollup.setTo(System.currentTimeMillis());
+            rollup.setGroups(new ArrayList<>(intervalGroups.values()));
+
+            intervalGroups = new LinkedHashMap<>();
+            intervalStartedAt = rollup.getTo();
+        }
+
+        try {
+            Path target = Paths.get(rollupFile).toAbsolutePath();
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+
+            String line = objectMapper.writeValueAsString(rollup) + "\n";
+            Files.write(target, line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        } catch (IOException e) {
+            log.warn("⚠️ トークン使用量の書き出しに失敗しました file={} error={}", rollupFile, e.getMessage());
+        }
+    }
+
+    /**
+     * 料金（米ドル）を計算する（単価が設定されていないモデルはnull）
+     */
+    private Double cost(String model, long promptTokens, long completionTokens) {
+        Double promptPrice = environment.getProperty("app.token-usage.price." + model + ".prompt", Double.class);
+        Double completionPrice = environment.getProperty("app.token-usage.price." + model + ".completion", Double.class);
+
+        if (promptPrice == null || completionPrice == null) {
+            return null;
+        }
+        return (promptTokens * promptPrice + completionTokens * completionPrice) / 1_000_000;
+    }
+
+    /**
+     * OpenAI呼び出し1回分の記録
+     */
+    public static class Call {
+        private long timestamp;
+        private String model;
+        private String kind;        // single / stream / batch
+        private String keyword;     // まとめて生成ではキーワードを空白区切りで連結
+        private String grade;
+        private boolean wikidata;   // Wikidataの参考情報をプロンプトに含めたか
+        private int questions = 1;
+        private long promptTokens;
+        private long completionTokens;
+        private long cachedTokens;
+        private long latencyMs;
+        private String finishReason;
+        private Double costUsd;
+
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+        public String getModel() { return model; }
+        public void setModel(String model) { this.model = model; }
+
+        public String getKind() { return kind; }
+        public void setKind(String kind) { this.kind = kind; }
+
+        public String getKeyword() { return keyword; }
+        public void setKeyword(String keyword) { this.keyword = keyword; }
+
+        public String getGrade() { return grade; }
+        public void setGrade(String grade) { this.grade = grade; }
+
+        public boolean isWikidata() { return wikidata; }
+        public void setWikidata(boolean wikidata) { this.wikidata = wikidata; }
+
+        public int getQuestions() { return questions; }
+        public void setQuestions(int questions) { this.questions = questions; }
+
+        public long getPromptTokens() { return promptTokens; }
+        public void setPromptTokens(long promptTokens) { this.promptTokens = promptTokens; }
+
+        public long getCompletionTokens() { return completionTokens; }
+        public void setCompletionTokens(long completionTokens) { this.completionTokens = completionTokens; }
+
+        public long getCachedTokens() { return cachedTokens; }
+        public void setCachedTokens(long cachedTokens) { this.cachedTokens = cachedTokens; }
+
+        public long getLatencyMs() { return latencyMs; }
+        public void setLatencyMs(long latencyMs) { this.latencyMs = latencyMs; }
+
+        public String getFinishReason() { return finishReason; }
+        public void setFinishReason(String finishReason) { this.finishReason = finishReason; }
+
+        public Double getCostUsd() { return costUsd; }
+        public void setCostUsd(Double costUsd) { this.costUsd = costUsd; }
+    }
+
+    /**
+     * 集計値（グループ・キーワードごと）
+     * ★ 集計の軸にしていない項目はnull（JSONには出さない）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Totals {
+        private String model;
+        private String kind;
+        private String keyword;
+        private String grade;
+        private Boolean wikidata;
+        private long calls;
+        private long questions;
+        private long promptTokens;
+        private long completionTokens;
+        private long cachedTokens;
+        private long maxCompletionTokens;
+        private long truncated;     // max-tokensに達して途中で終わった回数（finish_reason=length）
+        private long latencyMs;
+        private double costUsd;
+
+        static Totals group(Call call) {
+            Totals totals = new Totals();
+            totals.model = call.getModel();
+            totals.kind = call.getKind();
+            totals.grade = call.getGrade();
+            totals.wikidata = call.isWikidata();
+            return totals;
+        }
+
+        static Totals keyword(Call call) {
+            Totals totals = new Totals();
+            totals.keyword = call.getKeyword();
+            totals.grade = call.getGrade();
+            return totals;
+        }
+
+        void add(Call call) {
+            calls++;
+            questions += call.getQuestions();
+            promptTokens += call.getPromptTokens();
+            completionTokens += call.getCompletionTokens();
+            cachedTokens += call.getCachedTokens();
+            maxCompletionTokens = Math.max(maxCompletionTokens, call.getCompletionTokens());
+            if ("length".equals(call.getFinishReason())) {
+                truncated++;
+            }
+            latencyMs += call.getLatencyMs();
+            if (call.getCostUsd() != null) {
+                costUsd += call.getCostUsd();
+            }
+        }
+
+        Totals copy() {
+            Totals copy = new Totals();
+            copy.model = model;
+            copy.kind = kind;
+            copy.keyword = keyword;
+            copy.grade = grade;
+            copy.wikidata = wikidata;
+            copy.calls = calls;
+            copy.questions = questions;
+            copy.promptTokens = promptTokens;
+            copy.completionTokens = completionTokens;
+            copy.cachedTokens = cachedTokens;
+            copy.maxCompletionTokens = maxCompletionTokens;
+            copy.truncated = truncated;
+            copy.latencyMs = latencyMs;
+            copy.costUsd = costUsd;
+            return copy;
+        }
+
+        public String getModel() { return model; }
+        public String getKind() { return kind; }
+        public String getKeyword() { return keyword; }
+        public String getGrade() { return grade; }
+        public Boolean getWikidata() { return wikidata; }
+        public long getCalls() { return calls; }
+        public long getQuestions() { return questions; }
+        public long getPromptTokens() { return promptTokens; }
+        public long getCompletionTokens() { return completionTokens; }
+        public long getCachedTokens() { return cachedTokens; }
+        public long getMaxCompletionTokens() { return maxCompletionTokens; }
+        public long getTruncated() { return truncated; }
+        public long getLatencyMs() { return latencyMs; }
+        public double getCostUsd() { return costUsd; }
+
+        public double getAverageTotalTokens() {
+            return calls > 0 ? (double) (promptTokens + completionTokens) / calls : 0;
+        }
+
+        public double getAverageLatencyMs() {
+            return calls > 0 ? (double) latencyMs / calls : 0;
+        }
+
+        public double getTokensPerQuestion() {
+            return questions > 0 ? (double) (promptTokens + completionTokens) / questions : 0;
+        }
+    }
+
+    /**
+     * 起動からの集計
+     */
+    public static class Report {
+        private long startedAt;
+        private Totals total;
+        private List<Totals> groups;
+        private List<Totals> topKeywords;
+        private List<Call> recentCalls;
+
+        public long getStartedAt() { return startedAt; }
+        public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+
+        public Totals getTotal() { return total; }
+        public void setTotal(Totals total) { this.total = total; }
+
+        public List<Totals> getGroups() { return groups; }
+        public void setGroups(List<Totals> groups) { this.groups = groups; }
+
+        public List<Totals> getTopKeywords() { return topKeywords; }
+        public void setTopKeywords(List<Totals> topKeywords) { this.topKeywords = topKeywords; }
+
+        public List<Call> getRecentCalls() { return recentCalls; }
+        public void setRecentCalls(List<Call> recentCalls) { this.recentCalls = recentCalls; }
+    }
+
+    /**
+     * ファイルに追記する1区間分の集計
+     */
+    public static class Rollup {
+        private long from;
+        private long to;
+        private List<Totals> groups;
+
+        public long getFrom() { return from; }
+        public void setFrom(long from) { this.from = from; }
+
+        public long getTo() { return to; }
+        public void setTo(long to) { this.to = to; }
+
+        public List<Totals> getGroups() { return groups; }
+        public void setGroups(List<Totals> groups) { this.groups = groups; }
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.chatgptquiz.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.chatgptquiz.model.KeywordWikidataLink;
+import com.example.chatgptquiz.model.Video;
+import com.example.chatgptquiz.service.VideoIndex.KeywordEntry;
+
+/**
+ * 動画カタログと索引のスナップショット（バイナリ）
+ * ・初回起動時にCSVを解析した結果を保存し、次回以降はCSVの解析と索引作成を省略する
+ * ・CSVのチェックサムが変わった・形式のバージョンが違う場合は使わずに作り直す
+ *
+ * ファイル形式（DataOutputStream、すべてビッグエンディアン）:
+ *   ヘッダー: MAGIC(int) / VERSION(int) / CSVのCRC32(long)
+ *   文字列:   件数(int) + [バイト数(int) + UTF-8]（以降の文字列はこの表の番号(int)、nullは-1）
+ *   動画:     件数(int) + [タイトル, URL, サムネイル, 学年, キーワード, リンク数(int) + [キーワード, URL]]
+ *   リンク:   件数(int) + [動画の位置(int), リンクの位置(int)]（索引からは位置で参照）
+ *   索引:     学年 / キーワード / 学年×キーワード / タイトルbi-gram の順に、キー数(int) + [キー, 件数(int) + 位置]
+ * ★ 同じ文字列（学年・キーワードなど）は1回だけ保存・デコードし、索引は位置の配列のまま使う（読み込みを速くする）
+ */
+@Component
+public class VideoCatalogSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoCatalogSnapshot.class);
+
+    static final int MAGIC = 0x56434154;  // "VCAT"
+    static final int VERSION = 2;
+
+    @Value("${app.catalog-snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.catalog-snapshot.file:video-catalog.bin}")
+    private String snapshotFile;
+
+    /**
+     * CSVのチェックサム（スナップショットがどのCSVから作られたかの確認用）
+     */
+    public static long checksum(byte[] csv) {
+        CRC32 crc = new CRC32();
+        crc.update(csv);
+        return crc.getValue();
+    }
+
+    /**
+     * スナップショットを読み込む
+     * @return 無効・ファイルがない・チェックサムが違う・壊れている場合はnull
+     */
+    public VideoIndex read(long checksum) {
+        if (!enabled) {
+            return null;
+        }
+
+        Path path = Paths.get(snapshotFile);
+        if (!Files.exists(path)) {
+            log.info("⏭️ カタログのスナップショットがありません file={}", snapshotFile);
+            return null;
+        }
+
+        try {
+            // ★ 小さなファイルなので一括で読んでから解析する
+            VideoIndex index = read(Files.readAllBytes(path), checksum);
+            if (index == null) {
+                log.info("🔄 CSVが変更されたため、カタログのスナップショットを作り直します file={}", snapshotFile);
+            }
+            return index;
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ カタログのスナップショットを読み込めません file={} error={}", snapshotFile, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * スナップショットを保存（一時ファイル経由で置き換え、失敗しても起動は続ける）
+     */
+    public void write(long checksum, VideoIndex index) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Path target = Paths.get(snapshotFile).toAbsolutePath();
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                write(out, checksum, index);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.info("💾 カタログのスナップショットを保存 videos={} bytes={} file={}",
+                    index.getAllVideos().size(), Files.size(target), snapshotFile);
+        } catch (IOException e) {
+            log.warn("⚠️ カタログのスナップショットを保存できません file={} error={}", snapshotFile, e.toString());
+        }
+    }
+
+    static void write(DataOutputStream out, long checksum, VideoIndex index) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(checksum);
+
+        List<Video> videos = index.getAllVideos();
+        Map<Video, Integer> videoPositions = new IdentityHashMap<>(videos.size() * 2);
+
+        // ★ 先に文字列の表を作る（同じ文字列は同じ番号）
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Video video : videos) {
+            for (String value : new String[] { video.getTitle(), video.getUrl(), video.getThumbnailUrl(),
+                                               video.getGrades(), video.getKeyword() }) {
+                intern(strings, value);
+            }
+            for (KeywordWikidataLink link : video.getKeywordWikidataLinks()) {
+                intern(strings, link.getKeyword());
+                intern(strings, link.getWikidataUrl());
+            }
+        }
+        for (Map<String, ? extends List<?>> postings : List.of(index.byGrade(), index.byKeyword(),
+                                                               index.byGradeAndKeyword(), index.byTitleGram())) {
+            postings.keySet().forEach(key -> intern(strings, key));
+        }
+
+        out.writeInt(strings.size());
+        for (String value : strings.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(videos.size());
+        for (int i = 0; i < videos.size(); i++) {
+            Video video = videos.get(i);
+            videoPositions.put(video, i);
+
+            writeString(out, strings, video.getTitle());
+            writeString(out, strings, video.getUrl());
+            writeString(out, strings, video.getThumbnailUrl());
+            writeString(out, strings, video.getGrades());
+            writeString(out, strings, video.getKeyword());
+
+            List<KeywordWikidataLink> links = video.getKeywordWikidataLinks();
+            out.writeInt(links.size());
+            for (KeywordWikidataLink link : links) {
+                writeString(out, strings, link.getKeyword());
+                writeString(out, strings, link.getWikidataUrl());
+            }
+        }
+
+        // ★ リンクはキーワード索引に1回ずつ現れるので、そこで通し番号を振る
+        Map<KeywordEntry, Integer> entryPositions = new IdentityHashMap<>();
+        List<KeywordEntry> entries = new ArrayList<>();
+        for (List<KeywordEntry> list : index.byKeyword().values()) {
+            for (KeywordEntry entry : list) {
+                entryPositions.put(entry, entries.size());
+                entries.add(entry);
+            }
+        }
+
+        out.writeInt(entries.size());
+        for (KeywordEntry entry : entries) {
+            out.writeInt(videoPositions.get(entry.getVideo()));
+            out.writeInt(linkPosition(entry));
+        }
+
+        writePostings(out, strings, index.byGrade(), videoPositions);
+        writePostings(out, strings, index.byKeyword(), entryPositions);
+        writePostings(out, strings, index.byGradeAndKeyword(), entryPositions);
+        writePostings(out, strings, index.byTitleGram(), videoPositions);
+    }
+
+    /**
+     * ★ 範囲外の位置・途中で終わるファイルはRuntimeException（IndexOutOfBounds・BufferUnderflow）で失敗する
+     */
+    static VideoIndex read(byte[] data, long checksum) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+
+        if (in.getInt() != MAGIC) {
+            throw new IOException("カタログのスナップショットではありません");
+        }
+        if (in.getInt() != VERSION || in.getLong() != checksum) {
+            return null;
+        }
+
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            int length = in.getInt();
+            strings[i] = new String(data, in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+
+        int videoCount = in.getInt();
+        List<Video> videos = new ArrayList<>(videoCount);
+        for (int i = 0; i < videoCount; i++) {
+            String title = readString(in, strings);
+            String url = readString(in, strings);
+            String thumbnailUrl = readString(in, strings);
+            String grades = readString(in, strings);
+            String keyword = readString(in, strings);
+
+            int linkCount = in.getInt();
+            List<KeywordWikidataLink> links = new ArrayList<>(linkCount);
+            for (int j = 0; j < linkCount; j++) {
+                links.add(new KeywordWikidataLink(readString(in, strings), readString(in, strings)));
+            }
+
+            videos.add(new Video(title, url, thumbnailUrl, grades, keyword, links));
+        }
+
+        int entryCount = in.getInt();
+        List<KeywordEntry> entries = new ArrayList<>(entryCount);
+        Map<String, String> entityIds = new HashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            Video video = videos.get(in.getInt());
+            KeywordWikidataLink link = video.getKeywordWikidataLinks().get(in.getInt());
+            String url = link.getWikidataUrl();
+            String entityId = url != null ? entityIds.computeIfAbsent(url, WikidataService::parseEntityId) : null;
+            entries.add(new KeywordEntry(video, link, entityId));
+        }
+
+        Map<String, List<Video>> byGrade = readPostings(in, strings, videos);
+        Map<String, List<KeywordEntry>> byKeyword = readPostings(in, strings, entries);
+        Map<String, List<KeywordEntry>> byGradeAndKeyword = readPostings(in, strings, entries);
+        Map<String, List<Video>> byTitleGram = readPostings(in, strings, videos);
+
+        return new VideoIndex(videos, byGrade, byKeyword, byGradeAndKeyword, byTitleGram);
+    }
+
+    private static int linkPosition(KeywordEntry entry) {
+        List<KeywordWikidataLink> links = entry.getVideo().getKeywordWikidataLinks();
+        for (int i = 0; i < links.size(); i++) {
+            KeywordWikidataLink link = links.get(i);
+            if (link.getKeyword().equals(entry.getKeyword()) && link.getWikidataUrl().equals(entry.getWikidataUrl())) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("索引のリンクが動画にありません keyword=" + entry.getKeyword());
+    }
+
+    private static <T> void writePostings(DataOutputStream out, Map<String, Integer> strings,
+                                          Map<String, List<T>> map, Map<T, Integer> positions) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, List<T>> e : map.entrySet()) {
+            writeString(out, strings, e.getKey());
+            out.writeInt(e.getValue().size());
+            for (T item : e.getValue()) {
+                out.writeInt(positions.get(item));
+            }
+        }
+    }
+
+    private static <T> Map<String, List<T>> readPostings(ByteBuffer in, String[] strings, List<T> items) {
+        int keyCount = in.getInt();
+        Map<String, List<T>> map = new HashMap<>(keyCount * 2);
+        for (int i = 0; i < keyCount; i++) {
+            String key = readString(in, strings);
+            int[] positions = new int[in.getInt()];
+            in.asIntBuffer().get(positions);
+            in.position(in.position() + positions.length * Integer.BYTES);
+            for (int position : positions) {
+                if (position < 0 || position >= items.size()) {
+                    throw new IndexOutOfBoundsException("索引の位置が範囲外です position=" + position);
+                }
+            }
+            map.put(key, new Postings<>(items, positions));
+        }
+        return map;
+    }
+
+    private static void intern(Map<String, Integer> strings, String value) {
+        if (value != null) {
+            strings.putIfAbsent(value, strings.size());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String value) throws IOException {
+        out.writeInt(value != null ? strings.get(value) : -1);
+    }
+
+    private static String readString(ByteBuffer in, String[] strings) {
+        int id = in.getInt();
+        return id >= 0 ? strings[id] : null;
+    }
+
+    // 索引の1キー分（位置の配列のまま持ち、要素は取り出すときに引く: 読み込み時にListを作らない）
+    private static final class Postings<T> extends AbstractList<T> implements RandomAccess {
+        private final List<T> items;
+        private final int[] positions;
+
+        Postings(List<T> items, int[] positions) {
+            this.items = items;
+            this.positions = positions;
+        }
+
+        @Override
+        public T get(int index) {
+            return items.get(positions[index]);
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.example.chatgptquiz.service;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
@@ -14,105 +20,154 @@ import com.example.chatgptquiz.model.Video;
 @Service
 public class VideoCsvLoader {
 
+    private static final Logger log = LoggerFactory.getLogger(VideoCsvLoader.class);
+
+    private static final String CSV_FILE = "nhkforschool_history_banngumi.tsv.csv";
+
+    // ★ 列は位置ではなくヘッダー名で参照する
+    private static final String COLUMN_TITLE = "name";
+    private static final String COLUMN_URL = "url";
+    private static final String COLUMN_THUMBNAIL_URL = "thumbnailUrl";
+    private static final String COLUMN_GRADES = "grades";
+    private static final String COLUMN_KEYWORDS = "keywords";
+
+    // キーワード1〜5に対応するWikidataリンクの列
+    private static final String[] COLUMN_WIKIDATA_LINKS = {
+        "Column2", "Column4", "Column6", "Column8", "Column10"
+    };
+
+    // ★ 一度読み込んだ結果を保持（検索のたびにファイルを読み直さない）
+    private volatile List<Video> cache;
+
     public List<Video> load() {
+        List<Video> videos = cache;
+        if (videos != null) {
+            return videos;
+        }
+
+        try {
+            videos = load(readSource());
+
+            log.info("✅ 動画データ読み込み完了 videos={}", videos.size());
+
+        } catch (Exception e) {
+            log.error("❌ CSVファイルの読み込みに失敗しました file={}", CSV_FILE, e);
+            throw new RuntimeException("CSVファイルの読み込みに失敗しました", e);
+        }
+
+        cache = videos;
+        return videos;
+    }
+
+    /**
+     * 番組CSVのバイト列（スナップショットのチェックサム計算にも使う）
+     */
+    public byte[] readSource() throws IOException {
+        try (InputStream in = new ClassPathResource(CSV_FILE).getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * readSourceで読んだバイト列を解析して動画リストを作成
+     */
+    public List<Video> load(byte[] source) throws IOException {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * CSVを1行ずつ解析して動画リストを作成
+     */
+    public List<Video> load(Reader source) throws IOException {
 
         List<Video> list = new ArrayList<>();
 
-        try {
-            ClassPathResource resource =
-                    new ClassPathResource("nhkforschool_history_banngumi.tsv.csv");
+        CsvReader csv = new CsvReader(source);
+        if (!csv.readHeader()) {
+            return list;
+        }
 
-            BufferedReader br = new BufferedReader(
-                    new InputStreamReader(resource.getInputStream(), "UTF-8")
-            );
+        int titleColumn = csv.columnIndex(COLUMN_TITLE);
+        int urlColumn = csv.columnIndex(COLUMN_URL);
+        int thumbnailColumn = csv.columnIndex(COLUMN_THUMBNAIL_URL);
+        int gradesColumn = csv.columnIndex(COLUMN_GRADES);
+        int keywordColumn = csv.columnIndex(COLUMN_KEYWORDS);
 
-            String line;
-            boolean first = true;
+        int[] linkColumns = new int[COLUMN_WIKIDATA_LINKS.length];
+        for (int i = 0; i < linkColumns.length; i++) {
+            linkColumns[i] = csv.columnIndex(COLUMN_WIKIDATA_LINKS[i]);
+        }
 
-            while ((line = br.readLine()) != null) {
+        if (titleColumn < 0 || urlColumn < 0 || gradesColumn < 0) {
+            throw new IOException("CSVのヘッダーに必要な列がありません（name, url, grades）");
+        }
 
-                if (first) {
-                    first = false;
-                    continue;
-                }
+        while (csv.next()) {
 
-                String[] cols = line.split(",", -1);
+            String title = csv.get(titleColumn);
+            String url = csv.get(urlColumn);
+            String grades = csv.get(gradesColumn);
 
-                // デバッグ出力：カラム数を確認
-                if (list.size() < 3) {
-                    System.out.println("📋 カラム数: " + cols.length);
-                    System.out.println("📋 11番目の値: [" + (cols.length > 11 ? cols[11] : "存在しない") + "]");
-                }
+            if (title.isEmpty() || url.isEmpty() || grades.isEmpty()) {
+                continue;
+            }
 
-                String title = cols[2];
-                String url = cols[5];
-                String thumbnailUrl = cols[6];
-                String grades = cols[7];
-                String keyword = cols.length > 11 ? cols[11] : "";
-                
-                // Wikidataリンクを安全に取得（空欄チェック付き）
-                String link1 = (cols.length > 16 && !cols[16].isEmpty()) ? cols[16] : null;
-                String link2 = (cols.length > 17 && !cols[17].isEmpty()) ? cols[17] : null;
-                String link3 = (cols.length > 18 && !cols[18].isEmpty()) ? cols[18] : null;
-                String link4 = (cols.length > 19 && !cols[19].isEmpty()) ? cols[19] : null;
-                String link5 = (cols.length > 20 && !cols[20].isEmpty()) ? cols[20] : null;
-
-                if (title.isEmpty() || url.isEmpty() || grades.isEmpty()) {
-                    continue;
-                }
+            String thumbnailUrl = csv.get(thumbnailColumn);
+            String keyword = csv.get(keywordColumn);
 
-                // キーワードが空の場合もデバッグ出力
-                if (keyword.isEmpty()) {
-                    System.out.println("⚠️ キーワードが空: " + title);
+            // キーワードが空の場合は警告
+            if (keyword.isEmpty()) {
+                log.debug("⚠️ キーワードが空 title={}", title);
+            }
+
+            // ★ キーワード（スペース区切り）とWikidataリンクのペアリストを作成（情報は取得しない）
+            List<KeywordWikidataLink> keywordWikidataLinkList = new ArrayList<>(linkColumns.length);
+
+            int start = 0;
+            int linkIndex = 0;
+            int length = keyword.length();
+
+            while (linkIndex < linkColumns.length) {
+                while (start < length && Character.isWhitespace(keyword.charAt(start))) {
+                    start++;
+                }
+                if (start >= length) {
+                    break;
+                }
+                int end = start;
+                while (end < length && !Character.isWhitespace(keyword.charAt(end))) {
+                    end++;
                 }
 
-                // ★ キーワードを分割（スペース区切り）
-                String[] keywords = keyword.split("\\s+");
-                
-                // ★ Wikidataリンクの配列
-                String[] wikidataLinks = {link1, link2, link3, link4, link5};
-                
-                // ★ キーワードとWikidataリンクのペアリストを作成（情報は取得しない）
-                List<KeywordWikidataLink> keywordWikidataLinkList = new ArrayList<>();
-                
-                for (int i = 0; i < Math.min(keywords.length, wikidataLinks.length); i++) {
-                    String kw = keywords[i];
-                    String link = wikidataLinks[i];
-                    
-                    if (kw != null && !kw.isEmpty() && link != null && !link.isEmpty()) {
-                        // ★ リンク情報だけ保存（Wikidata APIは呼ばない）
-                        keywordWikidataLinkList.add(new KeywordWikidataLink(kw, link));
-                        System.out.println("🔗 キーワード「" + kw + "」のリンクを保存: " + link);
-                    }
+                String link = csv.get(linkColumns[linkIndex]);
+                if (!link.isEmpty()) {
+                    // ★ リンク情報だけ保存（Wikidata APIは呼ばない）
+                    keywordWikidataLinkList.add(new KeywordWikidataLink(keyword.substring(start, end), link));
                 }
 
-                list.add(new Video(
-                        title,
-                        url,
-                        thumbnailUrl,
-                        grades,
-                        keyword,
-                        keywordWikidataLinkList
-                ));
+                start = end;
+                linkIndex++;
             }
 
-            br.close();
-
-            System.out.println("✅ 動画データ読み込み完了: " + list.size() + "件");
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("CSVファイルの読み込みに失敗しました", e);
+            list.add(new Video(
+                    title,
+                    url,
+                    thumbnailUrl,
+                    grades,
+                    keyword,
+                    keywordWikidataLinkList
+            ));
         }
 
         return list;
     }
 
     public List<Video> searchByTitle(String searchTitle) {
-        List<Video> allVideos = load();
         List<Video> result = new ArrayList<>();
 
-        for (Video video : allVideos) {
+        for (Video video : load()) {
             if (video.getTitle().contains(searchTitle)) {
                 result.add(video);
             }
@@ -122,10 +177,9 @@ public class VideoCsvLoader {
     }
 
     public List<Video> filterByGrade(String grade) {
-        List<Video> allVideos = load();
         List<Video> result = new ArrayList<>();
 
-        for (Video video : allVideos) {
+        for (Video video : load()) {
             if (video.getGrades().equals(grade)) {
                 result.add(video);
             }
@@ -133,4 +187,4 @@ public class VideoCsvLoader {
 
         return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,230 @@
+package com.example.chatgptquiz.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.chatgptquiz.model.KeywordWikidataLink;
+import com.example.chatgptquiz.model.Video;
+
+/**
+ * 動画カタログの索引（読み込み時に一度だけ作成し、以後は変更しない）
+ * ・学年 → 動画
+ * ・学年 × キーワード → (動画, WikidataエンティティID)
+ * ・タイトルの文字bi-gram → 動画
+ * 検索のたびに全件を走査しないようにする
+ */
+public final class VideoIndex {
+
+    private final List<Video> videos;
+    private final Map<String, List<Video>> byGrade;
+    private final Map<String, List<KeywordEntry>> byKeyword;
+    private final Map<String, List<KeywordEntry>> byGradeAndKeyword;
+    private final Map<String, List<Video>> byTitleGram;
+
+    public VideoIndex(List<Video> source) {
+        this.videos = Collections.unmodifiableList(new ArrayList<>(source));
+
+        Map<String, List<Video>> grade = new HashMap<>();
+        Map<String, List<KeywordEntry>> keyword = new HashMap<>();
+        Map<String, List<KeywordEntry>> gradeKeyword = new HashMap<>();
+        Map<String, List<Video>> titleGram = new HashMap<>();
+
+        for (Video video : videos) {
+            Set<String> gradeKeys = gradeKeys(video.getGrades());
+            for (String g : gradeKeys) {
+                grade.computeIfAbsent(g, k -> new ArrayList<>()).add(video);
+            }
+
+            if (video.getKeywordWikidataLinks() != null) {
+                for (KeywordWikidataLink link : video.getKeywordWikidataLinks()) {
+                    KeywordEntry entry = new KeywordEntry(video, link);
+                    keyword.computeIfAbsent(link.getKeyword(), k -> new ArrayList<>()).add(entry);
+                    for (String g : gradeKeys) {
+                        gradeKeyword.computeIfAbsent(g + "\t" + link.getKeyword(), k -> new ArrayList<>()).add(entry);
+                    }
+                }
+            }
+
+            for (String gram : titleGrams(video.getTitle())) {
+                titleGram.computeIfAbsent(gram, k -> new ArrayList<>()).add(video);
+            }
+        }
+
+        this.byGrade = freeze(grade);
+        this.byKeyword = freeze(keyword);
+        this.byGradeAndKeyword = freeze(gradeKeyword);
+        this.byTitleGram = freeze(titleGram);
+    }
+
+    /**
+     * 作成済みの索引から組み立てる（VideoCatalogSnapshotから読み込んだ場合）
+     * ★ 読み込んだ索引（変更できないList）は他から参照されないため、コピーせずに読み取り専用にするだけ
+     */
+    VideoIndex(List<Video> videos,
+               Map<String, List<Video>> byGrade,
+               Map<String, List<KeywordEntry>> byKeyword,
+               Map<String, List<KeywordEntry>> byGradeAndKeyword,
+               Map<String, List<Video>> byTitleGram) {
+        this.videos = Collections.unmodifiableList(videos);
+        this.byGrade = Collections.unmodifiableMap(byGrade);
+        this.byKeyword = Collections.unmodifiableMap(byKeyword);
+        this.byGradeAndKeyword = Collections.unmodifiableMap(byGradeAndKeyword);
+        this.byTitleGram = Collections.unmodifiableMap(byTitleGram);
+    }
+
+    // ★ スナップショット書き出し用（読み取り専用のまま渡す）
+    Map<String, List<Video>> byGrade() { return byGrade; }
+    Map<String, List<KeywordEntry>> byKeyword() { return byKeyword; }
+    Map<String, List<KeywordEntry>> byGradeAndKeyword() { return byGradeAndKeyword; }
+    Map<String, List<Video>> byTitleGram() { return byTitleGram; }
+
+    public List<Video> getAllVideos() {
+        return videos;
+    }
+
+    /**
+     * 学年で絞り込み（例: "中1" は "中1 中2 中3" の動画にも一致）
+     */
+    public List<Video> getByGrade(String grade) {
+        if (grade == null) {
+            return Collections.emptyList();
+        }
+        return byGrade.getOrDefault(grade.trim(), Collections.emptyList());
+    }
+
+    /**
+     * キーワード（完全一致）に紐づくWikidataリンク
+     */
+    public List<KeywordEntry> getKeywordLinks(String keyword) {
+        return byKeyword.getOrDefault(keyword, Collections.emptyList());
+    }
+
+    /**
+     * 学年 × キーワード（完全一致）に紐づくWikidataリンク
+     */
+    public List<KeywordEntry> getKeywordLinks(String keyword, String grade) {
+        if (grade == null) {
+            return Collections.emptyList();
+        }
+        return byGradeAndKeyword.getOrDefault(grade.trim() + "\t" + keyword, Collections.emptyList());
+    }
+
+    /**
+     * タイトルの部分一致検索
+     * ★ 候補が最も少ないbi-gramで絞り込んでから確認する
+     */
+    public List<Video> searchByTitle(String title) {
+        if (title == null || title.isEmpty()) {
+            return videos;
+        }
+
+        List<Video> candidates = null;
+        if (title.length() == 1) {
+            candidates = byTitleGram.get(title);
+        } else {
+            for (int i = 0; i + 2 <= title.length(); i++) {
+                List<Video> posting = byTitleGram.get(title.substring(i, i + 2));
+                if (posting == null) {
+                    return Collections.emptyList();
+                }
+                if (candidates == null || posting.size() < candidates.size()) {
+                    candidates = posting;
+                }
+            }
+        }
+
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+        if (title.length() <= 2) {
+            return candidates;
+        }
+
+        List<Video> result = new ArrayList<>();
+        for (Video video : candidates) {
+            if (video.getTitle().contains(title)) {
+                result.add(video);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 学年の索引キー（"中1 中2 中3" → "中1", "中2", "中3", "中1 中2", "中2 中3", "中1 中2 中3"）
+     * ★ 連続する学年の組み合わせも登録し、従来の contains と同じ結果にする
+     */
+    private static Set<String> gradeKeys(String grades) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (grades == null || grades.isBlank()) {
+            return keys;
+        }
+
+        String[] tokens = grades.trim().split("\\s+");
+        for (int from = 0; from < tokens.length; from++) {
+            StringBuilder sb = new StringBuilder();
+            for (int to = from; to < tokens.length; to++) {
+                if (to > from) {
+                    sb.append(' ');
+                }
+                sb.append(tokens[to]);
+                keys.add(sb.toString());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * タイトルの1文字・2文字の断片（重複なし）
+     */
+    private static Set<String> titleGrams(String title) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (title == null) {
+            return grams;
+        }
+        for (int i = 0; i < title.length(); i++) {
+            grams.add(title.substring(i, i + 1));
+            if (i + 2 <= title.length()) {
+                grams.add(title.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    private static <T> Map<String, List<T>> freeze(Map<String, List<T>> map) {
+        Map<String, List<T>> frozen = new HashMap<>(map.size() * 2);
+        for (Map.Entry<String, List<T>> e : map.entrySet()) {
+            frozen.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+        }
+        return Collections.unmodifiableMap(frozen);
+    }
+
+    // キーワードのWikidataリンク（動画とエンティティIDの組）
+    public static final class KeywordEntry {
+        private final Video video;
+        private final String keyword;
+        private final String wikidataUrl;
+        private final String entityId;
+
+        public KeywordEntry(Video video, KeywordWikidataLink link) {
+            this(video, link, WikidataService.parseEntityId(link.getWikidataUrl()));
+        }
+
+        // ★ エンティティIDを解析済みの場合（スナップショットでは同じURLを1回だけ解析する）
+        KeywordEntry(Video video, KeywordWikidataLink link, String entityId) {
+            this.video = video;
+            this.keyword = link.getKeyword();
+            this.wikidataUrl = link.getWikidataUrl();
+            this.entityId = entityId;
+        }
+
+        public Video getVideo() { return video; }
+        public String getKeyword() { return keyword; }
+        public String getWikidataUrl() { return wikidataUrl; }
+        public String getEntityId() { return entityId; }
+    }
+}
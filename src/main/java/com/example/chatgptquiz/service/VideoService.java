@@ -1,43 +1,110 @@
 package com.example.chatgptquiz.service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import com.example.chatgptquiz.model.Video;
+import com.example.chatgptquiz.service.VideoIndex.KeywordEntry;
+
+import io.micrometer.core.instrument.Timer;
 
 @Service
 public class VideoService {
 
-    private final List<Video> videos;
+    private static final Logger log = LoggerFactory.getLogger(VideoService.class);
+
+    // ★ 読み込み時に一度だけ作る索引（以後は変更しない）
+    private final VideoIndex index;
+
+    private final QuizMetrics metrics;
+
+    // ★ 読み込んだCSVのチェックサム（カタログの版、描画済みページの作り直しの判定に使う）
+    private long catalogVersion;
 
     // コンストラクタで VideoCsvLoader を注入
-    public VideoService(VideoCsvLoader videoCsvLoader) {
-        this.videos = videoCsvLoader.load();
+    public VideoService(VideoCsvLoader videoCsvLoader, VideoCatalogSnapshot catalogSnapshot, QuizMetrics metrics) {
+        this.metrics = metrics;
+
+        // ★ CSV読み込み + 索引作成（またはスナップショット読み込み）の時間を計測
+        Timer.Sample sample = metrics.start();
+        this.index = loadIndex(videoCsvLoader, catalogSnapshot);
+        metrics.stop(sample, QuizMetrics.CATALOG_LOAD);
+    }
+
+    /**
+     * CSVと同じチェックサムのスナップショットがあれば使い、なければCSVから作って保存
+     */
+    private VideoIndex loadIndex(VideoCsvLoader videoCsvLoader, VideoCatalogSnapshot catalogSnapshot) {
+        byte[] csv;
+        try {
+            csv = videoCsvLoader.readSource();
+        } catch (IOException e) {
+            log.error("❌ CSVファイルの読み込みに失敗しました", e);
+            throw new UncheckedIOException(e);
+        }
+
+        long checksum = VideoCatalogSnapshot.checksum(csv);
+        catalogVersion = checksum;
+        VideoIndex snapshot = catalogSnapshot.read(checksum);
+        if (snapshot != null) {
+            log.info("⚡ カタログをスナップショットから読み込み videos={}", snapshot.getAllVideos().size());
+            return snapshot;
+        }
+
+        List<Video> videos;
+        try {
+            videos = videoCsvLoader.load(csv);
+        } catch (IOException e) {
+            log.error("❌ CSVファイルの解析に失敗しました", e);
+            throw new UncheckedIOException(e);
+        }
+        log.info("✅ 動画データ読み込み完了 videos={}", videos.size());
+
+        VideoIndex built = new VideoIndex(videos);
+        catalogSnapshot.write(checksum, built);
+        return built;
     }
 
     public List<Video> getVideosByGrade(String grade) {
 
-        List<Video> result = videos.stream()
-            .filter(v -> v.getGrades().contains(grade)) // ★学年フィルタ
-            .collect(Collectors.toList());
+        List<Video> result = index.getByGrade(grade); // ★学年フィルタ（索引から取得）
 
-        System.out.println("🎯 選択学年: " + grade);
-        System.out.println("📺 ヒット動画数: " + result.size());
+        log.debug("🎯 学年で絞り込み grade={} videos={}", grade, result.size());
 
         return result;
     }
 
     // 全動画を取得
     public List<Video> getAllVideos() {
-        return videos;
+        return index.getAllVideos();
+    }
+
+    // 動画のある学年（小3、中1など）
+    public Set<String> getGrades() {
+        return index.byGrade().keySet();
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
     }
 
     // タイトルで検索
     public List<Video> searchByTitle(String title) {
-        return videos.stream()
-            .filter(v -> v.getTitle().contains(title))
-            .collect(Collectors.toList());
+        return index.searchByTitle(title);
+    }
+
+    // ★ キーワード（完全一致）と学年からWikidataリンクを取得
+    public List<KeywordEntry> findKeywordLinks(String keyword, String grade) {
+        Timer.Sample sample = metrics.start();
+        List<KeywordEntry> links = index.getKeywordLinks(keyword, grade);
+        metrics.stop(sample, QuizMetrics.KEYWORD_LOOKUP,
+            "grade", QuizMetrics.grade(grade), "outcome", links.isEmpty() ? "empty" : "found");
+        return links;
     }
-}
\ No newline at end of file
+}
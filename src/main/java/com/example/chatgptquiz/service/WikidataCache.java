@@ -0,0 +1,367 @@
+package com.example.chatgptquiz.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * WikidataInfoのキャッシュ（エンティティIDがキー）
+ * ・件数上限つきのLRU + TTLでメモリ使用量を制限
+ * ・ローカルファイルにスナップショットを保存し、再起動後も再利用する
+ *   （保存は変更があったときだけ、専用スレッドで一定間隔ごと・終了時に行う。リクエストの処理中には書かない）
+ * ・プロパティ値として参照されるエンティティの日本語ラベルも別枠で保持する
+ */
+@Service
+public class WikidataCache {
+
+    private static final Logger log = LoggerFactory.getLogger(WikidataCache.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // アクセス順のLinkedHashMap（先頭が最も古い）
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    // エンティティID → 日本語ラベル（日本語ラベルがない場合は空文字）
+    private final LinkedHashMap<String, LabelEntry> labels = new LinkedHashMap<>(256, 0.75f, true);
+
+    @Value("${app.wikidata-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.wikidata-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${app.wikidata-cache.max-labels:5000}")
+    private int maxLabels;
+
+    @Value("${app.wikidata-cache.ttl-hours:168}")
+    private long ttlHours;
+
+    @Value("${app.wikidata-cache.file:wikidata-cache.json}")
+    private String snapshotFile;
+
+    @Value("${app.wikidata-cache.save-interval-seconds:30}")
+    private long saveIntervalSeconds;
+
+    // 最後の保存以降に変更があったか
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    // ★ スナップショットの書き出しは1つずつ（定期保存と終了時の保存が重ならないように）
+    private final Object snapshotLock = new Object();
+
+    private ScheduledExecutorService writer;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * 起動時にスナップショットを読み込み、定期保存を開始
+     */
+    @PostConstruct
+    public void start() {
+        loadSnapshot();
+        startWriter();
+    }
+
+    /**
+     * スナップショットを読み込む
+     */
+    public void loadSnapshot() {
+        if (!enabled || snapshotFile == null || snapshotFile.isBlank()) {
+            return;
+        }
+
+        File file = new File(snapshotFile);
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            Snapshot loaded = objectMapper.readValue(file, Snapshot.class);
+
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                for (Map.Entry<String, CacheEntry> e : loaded.getEntities().entrySet()) {
+                    if (e.getValue() != null && e.getValue().getInfo() != null && !isExpired(e.getValue().getStoredAt(), now)) {
+                        entries.put(e.getKey(), e.getValue());
+                    }
+                }
+                for (Map.Entry<String, LabelEntry> e : loaded.getLabels().entrySet()) {
+                    if (e.getValue() != null && e.getValue().getLabel() != null && !isExpired(e.getValue().getStoredAt(), now)) {
+                        labels.put(e.getKey(), e.getValue());
+                    }
+                }
+                evictOverflow();
+            }
+
+            log.info("✅ Wikidataキャッシュ読み込み完了 entities={} labels={} file={}", entries.size(), labels.size(), snapshotFile);
+
+        } catch (Exception e) {
+            log.warn("⚠️ Wikidataキャッシュの読み込みに失敗しました（空で開始） file={} error={}", snapshotFile, e.getMessage());
+        }
+    }
+
+    /**
+     * 変更があればsave-interval-secondsごとにスナップショットを書き出す
+     */
+    private void startWriter() {
+        if (!enabled || snapshotFile == null || snapshotFile.isBlank() || saveIntervalSeconds <= 0) {
+            return;
+        }
+
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wikidata-cache-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(this::saveIfDirty, saveIntervalSeconds, saveIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 終了時に未保存の変更を書き出す
+     */
+    @PreDestroy
+    public void stop() {
+        if (writer != null) {
+            writer.shutdownNow();
+        }
+        saveIfDirty();
+    }
+
+    private void saveIfDirty() {
+        if (dirty.getAndSet(false)) {
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * スナップショットを書き出す
+     */
+    public void saveSnapshot() {
+        if (!enabled || snapshotFile == null || snapshotFile.isBlank()) {
+            return;
+        }
+
+        synchronized (snapshotLock) {
+            Snapshot copy = new Snapshot();
+            synchronized (this) {
+                copy.setEntities(new LinkedHashMap<>(entries));
+                copy.setLabels(new LinkedHashMap<>(labels));
+            }
+
+            Path tmp = null;
+            try {
+                Path target = Paths.get(snapshotFile).toAbsolutePath();
+                if (target.getParent() != null) {
+                    Files.createDirectories(target.getParent());
+                }
+
+                // 同じディレクトリの一時ファイルに書いてから置き換える（書き込み途中で壊れないように）
+                tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                objectMapper.writeValue(tmp.toFile(), copy);
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                tmp = null;
+
+            } catch (IOException e) {
+                // 次の定期保存でやり直す
+                dirty.set(true);
+                log.warn("⚠️ Wikidataキャッシュの保存に失敗しました file={} error={}", snapshotFile, e.getMessage());
+            } finally {
+                if (tmp != null) {
+                    try {
+                        Files.deleteIfExists(tmp);
+                    } catch (IOException e) {
+                        // 消せなくても次回の保存には影響しない
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * キャッシュから取得（なければ・期限切れならnull）
+     */
+    public WikidataInfo get(String entityId) {
+        if (!enabled || entityId == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            CacheEntry entry = entries.get(entityId);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            if (isExpired(entry.getStoredAt(), System.currentTimeMillis())) {
+                entries.remove(entityId);
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.getInfo();
+        }
+    }
+
+    /**
+     * キャッシュに保存（スナップショットは次の定期保存で書き出す）
+     */
+    public void put(String entityId, WikidataInfo info) {
+        if (!enabled || entityId == null || info == null) {
+            return;
+        }
+
+        synchronized (this) {
+            entries.put(entityId, new CacheEntry(info, System.currentTimeMillis()));
+            evictOverflow();
+        }
+        dirty.set(true);
+    }
+
+    /**
+     * エンティティの日本語ラベルを取得
+     * @return キャッシュになければnull、日本語ラベルがないと分かっている場合は空文字
+     */
+    public String getLabel(String entityId) {
+        if (!enabled || entityId == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            LabelEntry entry = labels.get(entityId);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry.getStoredAt(), System.currentTimeMillis())) {
+                labels.remove(entityId);
+                return null;
+            }
+            return entry.getLabel();
+        }
+    }
+
+    /**
+     * エンティティの日本語ラベルをまとめて保存（日本語ラベルがないものは空文字）
+     */
+    public void putLabels(Map<String, String> entityLabels) {
+        if (!enabled || entityLabels.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Map.Entry<String, String> e : entityLabels.entrySet()) {
+                labels.put(e.getKey(), new LabelEntry(e.getValue() != null ? e.getValue() : "", now));
+            }
+            evictOverflow();
+        }
+        dirty.set(true);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private boolean isExpired(long storedAt, long now) {
+        return ttlHours > 0 && now - storedAt > ttlHours * 3600_000L;
+    }
+
+    private void evictOverflow() {
+        while (entries.size() > maxEntries) {
+            String eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+        }
+        while (labels.size() > maxLabels) {
+            String eldest = labels.keySet().iterator().next();
+            labels.remove(eldest);
+        }
+    }
+
+    // スナップショット用のエントリ
+    public static class CacheEntry {
+        private WikidataInfo info;
+        private long storedAt;
+
+        public CacheEntry() {
+        }
+
+        public CacheEntry(WikidataInfo info, long storedAt) {
+            this.info = info;
+            this.storedAt = storedAt;
+        }
+
+        public WikidataInfo getInfo() { return info; }
+        public void setInfo(WikidataInfo info) { this.info = info; }
+
+        public long getStoredAt() { return storedAt; }
+        public void setStoredAt(long storedAt) { this.storedAt = storedAt; }
+    }
+
+    // スナップショット用のラベルエントリ
+    public static class LabelEntry {
+        private String label;
+        private long storedAt;
+
+        public LabelEntry() {
+        }
+
+        public LabelEntry(String label, long storedAt) {
+            this.label = label;
+            this.storedAt = storedAt;
+        }
+
+        public String getLabel() { return label; }
+        public void setLabel(String label) { this.label = label; }
+
+        public long getStoredAt() { return storedAt; }
+        public void setStoredAt(long storedAt) { this.storedAt = storedAt; }
+    }
+
+    // スナップショットファイルの内容
+    public static class Snapshot {
+        private Map<String, CacheEntry> entities = new LinkedHashMap<>();
+        private Map<String, LabelEntry> labels = new LinkedHashMap<>();
+
+        public Map<String, CacheEntry> getEntities() { return entities; }
+        public void setEntities(Map<String, CacheEntry> entities) {
+            this.entities = entities != null ? entities : new LinkedHashMap<>();
+        }
+
+        public Map<String, LabelEntry> getLabels() { return labels; }
+        public void setLabels(Map<String, LabelEntry> labels) {
+            this.labels = labels != null ? labels : new LinkedHashMap<>();
+        }
+    }
+}
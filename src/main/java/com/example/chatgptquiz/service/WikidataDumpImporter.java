@@ -0,0 +1,253 @@
+package com.example.chatgptquiz.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+
+import com.example.chatgptquiz.model.KeywordWikidataLink;
+import com.example.chatgptquiz.model.Video;
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Wikidataのダンプ（JSON、1行1エンティティ）からオフライン用ファイルを作成（バッチ）
+ * ・番組CSVのWikidata列で参照されているエンティティだけを残す
+ * ・それらのP31 / P279 / P361 / P17 / P276が参照するエンティティは、日本語ラベルだけを使う
+ * ・ダンプは2回読む（1回目で対象エンティティと参照先を集め、2回目で参照先のラベルを集める）
+ * ・全体のダンプ（latest-all.json.gz）でも、あらかじめ絞り込んだ一部でもよい（.gzはそのまま読める）
+ *
+ * 実行例:
+ *   mvn spring-boot:run -Dspring-boot.run.arguments="--app.wikidata-offline.import-dump=latest-all.json.gz --spring.main.web-application-type=none"
+ */
+@Service
+public class WikidataDumpImporter implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WikidataDumpImporter.class);
+
+    // 参照先のラベルが必要なプロパティ（WikidataService.IMPORTANT_PROPERTIESのうちエンティティを値にとるもの）
+    private static final String[] LINKED_PROPERTIES = {"P31", "P279", "P361", "P17", "P276"};
+
+    // ★ 行の先頭付近のIDだけを見て、対象外の行はJSONとして解析しない
+    private static final Pattern LEADING_ID = Pattern.compile("\"id\"\\s*:\\s*\"(Q\\d+)\"");
+    private static final int ID_SCAN_CHARS = 200;
+
+    private static final long PROGRESS_LINES = 1_000_000;
+
+    private final VideoService videoService;
+    private final WikidataService wikidataService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.wikidata-offline.import-dump:}")
+    private String importDump;
+
+    @Value("${app.wikidata-offline.file:}")
+    private String offlineFile;
+
+    public WikidataDumpImporter(VideoService videoService, WikidataService wikidataService) {
+        this.videoService = videoService;
+        this.wikidataService = wikidataService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (importDump == null || importDump.isBlank()) {
+            return;
+        }
+        if (offlineFile == null || offlineFile.isBlank()) {
+            log.warn("⚠️ 保存先（app.wikidata-offline.file）が設定されていないため、取り込みをスキップします");
+            return;
+        }
+
+        importDump(Paths.get(importDump), Paths.get(offlineFile));
+    }
+
+    /**
+     * ダンプを読み、カタログで参照されているエンティティのオフライン用ファイルを作成
+     * @return 保存した件数
+     */
+    public int importDump(Path dump, Path output) throws IOException {
+        Set<String> catalogIds = collectCatalogIds();
+        log.info("📥 Wikidataダンプ取り込み開始 dump={} catalogEntities={}", dump, catalogIds.size());
+
+        long start = System.currentTimeMillis();
+
+        // 1回目: カタログのエンティティを集める（参照先がカタログ内にあればそのラベルも）
+        Map<String, JsonNode> entities = new LinkedHashMap<>();
+        Map<String, String> labels = new HashMap<>();
+
+        scan(dump, catalogIds, (id, entity) -> {
+            entities.put(id, entity);
+            JsonNode ja = entity.path("labels").path("ja");
+            labels.put(id, ja.isMissingNode() ? "" : ja.path("value").asText());
+        });
+
+        // 2回目: カタログ外の参照先のラベルを集める
+        Set<String> targets = new HashSet<>();
+        for (JsonNode entity : entities.values()) {
+            for (String propertyId : LINKED_PROPERTIES) {
+                String targetId = entity.path("claims").path(propertyId).path(0)
+                    .path("mainsnak").path("datavalue").path("value").path("id").asText("");
+                if (!targetId.isEmpty() && !labels.containsKey(targetId)) {
+                    targets.add(targetId);
+                }
+            }
+        }
+
+        if (!targets.isEmpty()) {
+            log.info("📥 参照先のラベルを取得 targets={}", targets.size());
+            scan(dump, targets, (id, entity) -> {
+                JsonNode ja = entity.path("labels").path("ja");
+                labels.put(id, ja.isMissingNode() ? "" : ja.path("value").asText());
+            });
+        }
+
+        // ★ プロパティ値はオンライン取得と同じ処理で組み立てる（日本語ラベルのない参照先は含めない）
+        Map<String, String> jaLabels = new HashMap<>();
+        labels.forEach((id, label) -> {
+            if (!label.isEmpty()) {
+                jaLabels.put(id, label);
+            }
+        });
+
+        JsonNode emptyRoot = objectMapper.createObjectNode();
+        List<WikidataInfo> infos = new ArrayList<>();
+
+        for (Map.Entry<String, JsonNode> e : entities.entrySet()) {
+            WikidataInfo info = toInfo(e.getKey(), e.getValue(), emptyRoot, jaLabels);
+            if (info != null) {
+                infos.add(info);
+            }
+        }
+
+        WikidataOfflineStore.write(output, infos);
+
+        log.info("📥 Wikidataダンプ取り込み完了 elapsedMs={} saved={} found={} missing={} file={}",
+                System.currentTimeMillis() - start, infos.size(), entities.size(),
+                catalogIds.size() - entities.size(), output);
+
+        return infos.size();
+    }
+
+    /**
+     * ダンプのエンティティのうち、idsに含まれるものだけを解析してconsumerに渡す
+     */
+    private void scan(Path dump, Set<String> ids, BiConsumer<String, JsonNode> consumer) throws IOException {
+        Set<String> remaining = new HashSet<>(ids);
+        long lines = 0;
+
+        try (BufferedReader reader = open(dump)) {
+            String line;
+            while ((line = reader.readLine()) != null && !remaining.isEmpty()) {
+                if (++lines % PROGRESS_LINES == 0) {
+                    log.info("📥 読み込み中 lines={} remaining={}", lines, remaining.size());
+                }
+
+                String id = leadingId(line);
+                if (id == null || !remaining.contains(id)) {
+                    continue;
+                }
+
+                // 配列の要素の区切り（行末のカンマ）を除く
+                String json = line.endsWith(",") ? line.substring(0, line.length() - 1) : line;
+                JsonNode entity;
+                try {
+                    entity = objectMapper.readTree(json);
+                } catch (IOException e) {
+                    log.warn("⚠️ ダンプの行を解析できません line={} error={}", lines, e.getMessage());
+                    continue;
+                }
+
+                // ★ 先頭付近のidがエンティティ自身のものか確認する
+                if (id.equals(entity.path("id").asText())) {
+                    consumer.accept(id, entity);
+                    remaining.remove(id);
+                }
+            }
+        }
+    }
+
+    private String leadingId(String line) {
+        Matcher matcher = LEADING_ID.matcher(line);
+        matcher.region(0, Math.min(line.length(), ID_SCAN_CHARS));
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private BufferedReader open(Path dump) throws IOException {
+        InputStream in = Files.newInputStream(dump);
+        if (dump.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * ダンプのエンティティをWikidataInfoにする（日本語ラベルがなければnull、WikidataServiceと同じ）
+     */
+    private WikidataInfo toInfo(String entityId, JsonNode entity, JsonNode root, Map<String, String> labels) {
+        JsonNode label = entity.path("labels").path("ja");
+        if (label.isMissingNode()) {
+            return null;
+        }
+
+        WikidataInfo info = new WikidataInfo();
+        info.setEntityId(entityId);
+        info.setLabel(label.path("value").asText());
+
+        JsonNode description = entity.path("descriptions").path("ja");
+        if (!description.isMissingNode()) {
+            info.setDescription(description.path("value").asText());
+        }
+
+        JsonNode aliases = entity.path("aliases").path("ja");
+        if (aliases.isArray()) {
+            List<String> aliasList = new ArrayList<>();
+            for (JsonNode alias : aliases) {
+                aliasList.add(alias.path("value").asText());
+            }
+            info.setAliases(aliasList);
+        }
+
+        info.setProperties(wikidataService.extractProperties(entity.path("claims"), root, labels));
+        return info;
+    }
+
+    /**
+     * 番組CSVのWikidata列で参照されているエンティティID
+     */
+    private Set<String> collectCatalogIds() {
+        Set<String> ids = new HashSet<>();
+        for (Video video : videoService.getAllVideos()) {
+            for (KeywordWikidataLink link : video.getKeywordWikidataLinks()) {
+                String id = WikidataService.parseEntityId(link.getWikidataUrl());
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.chatgptquiz.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.chatgptquiz.service.WikidataService.WikidataInfo;
+import com.example.chatgptquiz.service.WikidataService.WikidataProperty;
+
+/**
+ * オフライン用のWikidata情報（WikidataDumpImporterがダンプから作成したファイル）
+ * ・ファイルをメモリマップして読むため、ヒープをほとんど使わず、ネットワークも使わない
+ * ・エンティティIDの昇順の索引を二分探索し、該当するレコードだけを読む
+ *
+ * ファイル形式（ビッグエンディアン）:
+ *   ヘッダー: MAGIC(int) / VERSION(int) / 件数(int)
+ *   索引:     件数 × [Q番号(int), レコード位置(int)]（Q番号の昇順）
+ *   レコード: ラベル / 説明 / 別名の数(short) + 別名 / プロパティの数(short) + [名称, 値]
+ *   文字列:   バイト数(unsigned short、0xFFFFはnull) + UTF-8
+ */
+@Service
+public class WikidataOfflineStore {
+
+    private static final Logger log = LoggerFactory.getLogger(WikidataOfflineStore.class);
+
+    static final int MAGIC = 0x57444F31;  // "WDO1"
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 12;
+    private static final int INDEX_ENTRY_BYTES = 8;
+    private static final int NULL_STRING = 0xFFFF;
+
+    @Value("${app.wikidata-offline.file:}")
+    private String offlineFile;
+
+    // ★ 読み取り専用（位置を使わない絶対指定の読み取り、またはduplicate()して読む）
+    private volatile MappedByteBuffer buffer;
+    private volatile int count;
+
+    @PostConstruct
+    public void load() {
+        if (offlineFile == null || offlineFile.isBlank()) {
+            return;
+        }
+
+        Path path = Paths.get(offlineFile);
+        if (!Files.exists(path)) {
+            log.info("⏭️ オフライン用Wikidataファイルがありません file={}", offlineFile);
+            return;
+        }
+
+        try {
+            open(path);
+            log.info("✅ オフライン用Wikidata読み込み完了 entities={} bytes={} file={}", count, buffer.capacity(), offlineFile);
+        } catch (IOException | IllegalStateException e) {
+            log.warn("⚠️ オフライン用Wikidataファイルを読み込めません file={} error={}", offlineFile, e.getMessage());
+        }
+    }
+
+    /**
+     * ファイルをメモリマップして使えるようにする
+     */
+    void open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("ファイルが大きすぎます（2GBまで）");
+            }
+
+            // ★ マップした領域はチャネルを閉じても使える
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+                throw new IllegalStateException("オフライン用Wikidataファイルではありません");
+            }
+            if (mapped.getInt(4) != VERSION) {
+                throw new IllegalStateException("ファイルのバージョンが違います: " + mapped.getInt(4));
+            }
+
+            int entries = mapped.getInt(8);
+            if ((long) HEADER_BYTES + (long) entries * INDEX_ENTRY_BYTES > mapped.capacity()) {
+                throw new IllegalStateException("索引が壊れています");
+            }
+
+            buffer = mapped;
+            count = entries;
+        }
+    }
+
+    public boolean isAvailable() {
+        return buffer != null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * エンティティIDの情報を取得
+     * @return ファイルにない（日本語ラベルがない・カタログで参照されていない）場合はnull
+     */
+    public WikidataInfo get(String entityId) {
+        MappedByteBuffer data = buffer;
+        int qid = parseQid(entityId);
+        if (data == null || qid < 0) {
+            return null;
+        }
+
+        // ★ 索引の二分探索
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midQid = data.getInt(HEADER_BYTES + mid * INDEX_ENTRY_BYTES);
+            if (midQid < qid) {
+                low = mid + 1;
+            } else if (midQid > qid) {
+                high = mid - 1;
+            } else {
+                return readRecord(data, data.getInt(HEADER_BYTES + mid * INDEX_ENTRY_BYTES + 4), entityId);
+            }
+        }
+        return null;
+    }
+
+    private WikidataInfo readRecord(ByteBuffer data, int offset, String entityId) {
+        ByteBuffer in = data.duplicate();
+        in.position(offset);
+
+        WikidataInfo info = new WikidataInfo();
+        info.setEntityId(entityId);
+        info.setLabel(readString(in));
+        info.setDescription(readString(in));
+
+        int aliasCount = in.getShort() & 0xFFFF;
+        if (aliasCount > 0) {
+            List<String> aliases = new ArrayList<>(aliasCount);
+            for (int i = 0; i < aliasCount; i++) {
+                aliases.add(readString(in));
+            }
+            info.setAliases(aliases);
+        }
+
+        int propertyCount = in.getShort() & 0xFFFF;
+        List<WikidataProperty> properties = new ArrayList<>(propertyCount);
+        for (int i = 0; i < propertyCount; i++) {
+            properties.add(new WikidataProperty(readString(in), readString(in)));
+        }
+        info.setProperties(properties);
+
+        return info;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * "Q123" → 123（Q-ID以外は-1）
+     */
+    static int parseQid(String entityId) {
+        if (entityId == null || entityId.length() < 2 || entityId.charAt(0) != 'Q') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(entityId, 1, entityId.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * WikidataInfoの一覧をファイルに書き出す（一時ファイル経由で置き換え）
+     * ★ Wikipedia抜粋はダンプに含まれないため保存しない
+     */
+    static void write(Path target, List<WikidataInfo> infos) throws IOException {
+        List<WikidataInfo> sorted = new ArrayList<>();
+        for (WikidataInfo info : infos) {
+            if (parseQid(info.getEntityId()) >= 0) {
+                sorted.add(info);
+            }
+        }
+        sorted.sort(Comparator.comparingInt(info -> parseQid(info.getEntityId())));
+
+        // レコード部分を先に組み立て、位置を索引に書く
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(records);
+        int[] offsets = new int[sorted.size()];
+        int recordsStart = HEADER_BYTES + sorted.size() * INDEX_ENTRY_BYTES;
+
+        for (int i = 0; i < sorted.size(); i++) {
+            WikidataInfo info = sorted.get(i);
+            offsets[i] = recordsStart + recordOut.size();
+
+            writeString(recordOut, info.getLabel());
+            writeString(recordOut, info.getDescription());
+
+            List<String> aliases = info.getAliases() != null ? info.getAliases() : List.of();
+            recordOut.writeShort(Math.min(aliases.size(), 0xFFFF));
+            for (String alias : aliases.subList(0, Math.min(aliases.size(), 0xFFFF))) {
+                writeString(recordOut, alias);
+            }
+
+            List<WikidataProperty> properties = info.getProperties() != null ? info.getProperties() : List.of();
+            recordOut.writeShort(properties.size());
+            for (WikidataProperty property : properties) {
+                writeString(recordOut, property.getName());
+                writeString(recordOut, property.getValue());
+            }
+        }
+        recordOut.flush();
+
+        Path absolute = target.toAbsolutePath();
+        if (absolute.getParent() != null) {
+            Files.createDirectories(absolute.getParent());
+        }
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (int i = 0; i < sorted.size(); i++) {
+                out.writeInt(parseQid(sorted.get(i).getEntityId()));
+                out.writeInt(offsets[i]);
+            }
+            records.writeTo(out);
+        }
+
+        Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_STRING);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, NULL_STRING - 1);
+        // 長すぎる場合は切り詰める（UTF-8の途中で切れないように文字の先頭まで戻す）
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        out.writeShort(length);
+        out.write(bytes, 0, length);
+    }
+}
@@ -1,41 +1,113 @@
 package com.example.chatgptquiz.service;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
 public class WikidataService {
     
-    private final RestTemplate restTemplate;
+    private static final Logger log = LoggerFactory.getLogger(WikidataService.class);
+    
+    // ★ 取得した情報の詳細（DEBUGのときだけ出す）
+    private static final Logger payloadLog = LoggerFactory.getLogger("com.example.chatgptquiz.payload");
+    
+    // ★ User-Agentヘッダー（Wikimedia APIの利用規約で必須）
+    private static final Map<String, String> HEADERS = Map.of(
+        "User-Agent", "ChatGptQuizApp/1.0 (Educational Quiz Generator; contact@example.com)"
+    );
+    
+    // 読み取りタイムアウト15秒（接続タイムアウトはOutboundHttpClientで設定）
+    private static final Duration TIMEOUT = Duration.ofSeconds(15);
+    
+    // wbgetentitiesで一度に指定できるIDの上限
+    private static final int MAX_IDS_PER_REQUEST = 50;
+    
+    // よく使われる重要なプロパティのみを取得
+    private static final String[] IMPORTANT_PROPERTIES = {
+        "P31",   // 分類（instance of）
+        "P279",  // 上位クラス（subclass of）
+        "P361",  // 一部（part of）
+        "P17",   // 国（country）
+        "P276",  // 場所（location）
+        "P580",  // 開始時点（start time）
+        "P582",  // 終了時点（end time）
+        "P585",  // 時点（point in time）
+        "P571",  // 設立（inception）
+        "P569",  // 生年月日（date of birth）
+        "P570"   // 没年月日（date of death）
+    };
+    
+    private final OutboundHttpClient httpClient;
     private final ObjectMapper objectMapper;
     
     // ★ 設定値を追加
     @Value("${app.enable-wikidata:false}")
     private boolean enableWikidata;
     
-    public WikidataService() {
-        // ★ タイムアウト設定を追加
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(10000);  // 接続タイムアウト10秒
-        factory.setReadTimeout(15000);     // 読み取りタイムアウト15秒
-        
-        this.restTemplate = new RestTemplate(factory);
+    // ★ 接続先（負荷試験ではスタブに向ける）
+    @Value("${app.wikidata.base-url:https://www.wikidata.org}")
+    private String wikidataBaseUrl;
+    
+    @Value("${app.wikipedia.base-url:https://ja.wikipedia.org}")
+    private String wikipediaBaseUrl;
+    
+    // ★ 取得済みWikidataInfoのキャッシュ
+    @Autowired
+    private WikidataCache wikidataCache;
+    
+    @Autowired
+    private QuizMetrics metrics;
+    
+    // ★ レプリカ間で共有するキャッシュ（他のレプリカが取得済みならAPIを呼ばない）
+    @Autowired(required = false)
+    private TieredCache sharedCache;
+    
+    @Value("${app.shared-cache.wikidata-version:1}")
+    private String sharedWikidataVersion;
+    
+    @Value("${app.shared-cache.wikidata-ttl-hours:168}")
+    private long sharedWikidataTtlHours;
+    
+    // ★ ダンプから作成したオフライン用ファイル（ある場合はAPIより先に参照）
+    @Autowired(required = false)
+    private WikidataOfflineStore offlineStore;
+    
+    // ★ 実行中の取得（エンティティIDごと）
+    private final SingleFlight<String, WikidataInfo> inFlight = new SingleFlight<>();
+    
+    // ★ 共通HTTPクライアント（接続の使い回し・同時実行数制限）
+    public WikidataService(OutboundHttpClient httpClient) {
+        this.httpClient = httpClient;
         this.objectMapper = new ObjectMapper();
         
-        System.out.println("✅ WikidataService初期化完了");
+        log.info("✅ WikidataService初期化完了");
+    }
+    
+    /**
+     * Wikidata情報を使うかどうか（API取得が有効、またはオフライン用ファイルがある）
+     */
+    public boolean isEnabled() {
+        return enableWikidata || (offlineStore != null && offlineStore.isAvailable());
     }
     
     /**
@@ -44,187 +116,364 @@ public class WikidataService {
      * @return Wikidataの情報（ラベル、説明、主要プロパティ、Wikipedia抜粋）
      */
     public WikidataInfo fetchWikidataInfo(String entityId) {
+        return OutboundHttpClient.await(fetchWikidataInfoAsync(entityId));
+    }
+    
+    /**
+     * fetchWikidataInfoの非同期版（取得できない場合はnullで完了し、例外では失敗しない）
+     */
+    public CompletableFuture<WikidataInfo> fetchWikidataInfoAsync(String entityId) {
         if (entityId == null || entityId.isEmpty()) {
-            return null;
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        // ★ オフライン用ファイルにあればネットワークを使わずに返す
+        if (offlineStore != null && offlineStore.isAvailable()) {
+            WikidataInfo offline = offlineStore.get(entityId);
+            metrics.cache("wikidata_offline", offline != null);
+            if (offline != null || !enableWikidata) {
+                return CompletableFuture.completedFuture(offline);
+            }
         }
         
         // ★ 機能が無効な場合は即座にnullを返す
         if (!enableWikidata) {
-            System.out.println("⏭️ Wikidata取得はスキップされました（設定で無効）");
-            return null;
+            log.debug("⏭️ Wikidata取得はスキップされました（設定で無効）");
+            return CompletableFuture.completedFuture(null);
         }
         
-        try {
-            // Wikidata APIのURL
-            String apiUrl = String.format(
-                "https://www.wikidata.org/wiki/Special:EntityData/%s.json",
-                entityId
-            );
-            
-            // User-Agentヘッダーを追加
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("User-Agent", "ChatGptQuizApp/1.0 (Educational Quiz Generator; contact@example.com)");
-            
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            
-            System.out.println("🌐 Wikidata APIリクエスト: " + apiUrl);
-            
-            // RestTemplateでGETリクエスト（ヘッダー付き）
-            ResponseEntity<String> responseEntity = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.GET,
-                entity,
-                String.class
-            );
-            
-            String response = responseEntity.getBody();
-            JsonNode root = objectMapper.readTree(response);
-            JsonNode entityNode = root.path("entities").path(entityId);
-            
-            WikidataInfo info = new WikidataInfo();
-            info.setEntityId(entityId);
-            
-            // ★ 日本語ラベルを取得（日本語必須）
-            JsonNode labels = entityNode.path("labels");
-            if (labels.has("ja")) {
-                info.setLabel(labels.path("ja").path("value").asText());
-            } else {
-                // ★ 日本語ラベルがなければnullを返す
-                System.out.println("⚠️ 日本語ラベルなし: " + entityId + " (スキップ)");
-                return null;
-            }
-            
-            // ★ 日本語説明を取得（例：「1582年に日本の京都で発生した謀反・襲撃事件」）
-            JsonNode descriptions = entityNode.path("descriptions");
-            if (descriptions.has("ja")) {
-                String description = descriptions.path("ja").path("value").asText();
-                info.setDescription(description);
-                System.out.println("📝 Description取得: " + description);
-            } else {
-                info.setDescription(null);
-                System.out.println("⚠️ 日本語Descriptionなし");
-            }
-            
-            // ★ 日本語の別名（エイリアス）を取得
-            JsonNode aliases = entityNode.path("aliases");
-            if (aliases.has("ja")) {
-                List<String> aliasesList = new ArrayList<>();
-                JsonNode jaAliases = aliases.path("ja");
-                if (jaAliases.isArray()) {
-                    for (JsonNode alias : jaAliases) {
-                        aliasesList.add(alias.path("value").asText());
+        // ★ キャッシュにあればHTTPリクエストなしで返す
+        WikidataInfo cached = wikidataCache.get(entityId);
+        if (wikidataCache.isEnabled()) {
+            metrics.cache("wikidata", cached != null);
+        }
+        if (cached != null) {
+            log.debug("⚡ Wikidataキャッシュヒット entityId={}", entityId);
+            return CompletableFuture.completedFuture(cached);
+        }
+        
+        // ★ 他のレプリカが取得済みなら、このレプリカのキャッシュにも入れて返す
+        // ★ 共有の保存先との通信は専用スレッドで行い、その結果を待ってからAPI取得につなげる
+        if (sharedCache != null && sharedCache.isEnabled()) {
+            return sharedCache.getAsync("wikidata", sharedWikidataVersion, entityId, WikidataInfo.class)
+                .thenCompose(shared -> {
+                    if (shared != null) {
+                        wikidataCache.put(entityId, shared);
+                        return CompletableFuture.completedFuture(shared);
                     }
+                    return loadAndCache(entityId);
+                });
+        }
+        
+        return loadAndCache(entityId);
+    }
+    
+    /**
+     * APIから取得してキャッシュに入れる
+     * ★ 同じエンティティの取得が実行中なら、その結果を待つ
+     */
+    private CompletableFuture<WikidataInfo> loadAndCache(String entityId) {
+        return inFlight.execute(entityId, () -> loadWikidataInfo(entityId).thenApply(info -> {
+            // ★ 取得できた場合のみキャッシュ（一時的なエラーは保存しない）
+            if (info != null) {
+                wikidataCache.put(entityId, info);
+                if (sharedCache != null && sharedCache.isEnabled()) {
+                    sharedCache.put("wikidata", sharedWikidataVersion, entityId, info,
+                        Duration.ofHours(sharedWikidataTtlHours));
                 }
-                info.setAliases(aliasesList);
             }
-            
-            // ★ 日本語Wikipediaから抜粋を取得
-            String wikipediaExtract = fetchWikipediaExtract(entityNode);
-            if (wikipediaExtract != null && !wikipediaExtract.isEmpty()) {
-                info.setWikipediaExtract(wikipediaExtract);
-            }
-            
-            // 主要なプロパティを取得
-            JsonNode claims = entityNode.path("claims");
-            info.setProperties(extractProperties(claims, root));
-            
-            // デバッグ出力：取得したプロパティを表示
-            System.out.println("=".repeat(60));
-            System.out.println("🔍 Wikidata情報取得: " + entityId);
-            System.out.println("名称: " + info.getLabel());
-            System.out.println("説明: " + (info.getDescription() != null ? info.getDescription() : "(なし)"));
-            
-            if (info.getAliases() != null && !info.getAliases().isEmpty()) {
-                System.out.println("別名: " + String.join(", ", info.getAliases()));
+            return info;
+        }));
+    }
+    
+    /**
+     * Wikidata/Wikipedia APIから情報を取得（キャッシュなし）
+     * ★ EntityData取得後、Wikipedia抜粋と関連エンティティのラベルを並行して取得
+     */
+    private CompletableFuture<WikidataInfo> loadWikidataInfo(String entityId) {
+        // Wikidata APIのURL
+        String apiUrl = String.format(
+            "%s/wiki/Special:EntityData/%s.json",
+            wikidataBaseUrl, entityId
+        );
+        
+        log.debug("🌐 Wikidata APIリクエスト url={}", apiUrl);
+        
+        return metrics.time(httpClient.getAsync(apiUrl, HEADERS, TIMEOUT), QuizMetrics.WIKIDATA_REQUEST, "stage", "entity")
+            .thenCompose(response -> {
+                JsonNode root = readTree(response);
+                JsonNode entityNode = root.path("entities").path(entityId);
+                
+                WikidataInfo info = new WikidataInfo();
+                info.setEntityId(entityId);
+                
+                // ★ 日本語ラベルを取得（日本語必須）
+                JsonNode labels = entityNode.path("labels");
+                if (labels.has("ja")) {
+                    info.setLabel(labels.path("ja").path("value").asText());
+                } else {
+                    // ★ 日本語ラベルがなければnullを返す
+                    log.info("⚠️ 日本語ラベルなし（スキップ） entityId={}", entityId);
+                    return CompletableFuture.completedFuture(null);
+                }
+                
+                // ★ 日本語説明を取得（例：「1582年に日本の京都で発生した謀反・襲撃事件」）
+                JsonNode descriptions = entityNode.path("descriptions");
+                if (descriptions.has("ja")) {
+                    String description = descriptions.path("ja").path("value").asText();
+                    info.setDescription(description);
+                    log.debug("📝 Description取得 entityId={} description={}", entityId, description);
+                } else {
+                    info.setDescription(null);
+                    log.debug("⚠️ 日本語Descriptionなし entityId={}", entityId);
+                }
+                
+                // ★ 日本語の別名（エイリアス）を取得
+                JsonNode aliases = entityNode.path("aliases");
+                if (aliases.has("ja")) {
+                    List<String> aliasesList = new ArrayList<>();
+                    JsonNode jaAliases = aliases.path("ja");
+                    if (jaAliases.isArray()) {
+                        for (JsonNode alias : jaAliases) {
+                            aliasesList.add(alias.path("value").asText());
+                        }
+                    }
+                    info.setAliases(aliasesList);
+                }
+                
+                // 主要なプロパティが参照するエンティティのうち、レスポンスに含まれないもの
+                JsonNode claims = entityNode.path("claims");
+                Set<String> missingIds = collectMissingEntityIds(claims, root);
+                
+                // ★ 日本語Wikipediaの抜粋と、関連エンティティのラベル（一括）を並行して取得
+                CompletableFuture<String> extractFuture = fetchWikipediaExtract(entityNode);
+                CompletableFuture<Map<String, String>> labelsFuture = fetchEntityLabels(missingIds);
+                
+                return extractFuture.thenCombine(labelsFuture, (wikipediaExtract, entityLabels) -> {
+                    if (wikipediaExtract != null && !wikipediaExtract.isEmpty()) {
+                        info.setWikipediaExtract(wikipediaExtract);
+                    }
+                    
+                    // 主要なプロパティを取得
+                    info.setProperties(extractProperties(claims, root, entityLabels));
+                    
+                    printInfo(info);
+                    return info;
+                });
+            })
+            .exceptionally(ex -> {
+                Throwable e = OutboundHttpClient.unwrap(ex);
+                metrics.error("wikidata");
+                if (e instanceof RestClientException) {
+                    // ★ ネットワークエラーの詳細を出力
+                    log.warn("⚠️ Wikidata取得エラー（接続できない環境の可能性があります。スキップして続行） entityId={} cause={} error={}",
+                            entityId, e.getClass().getSimpleName(), e.getMessage());
+                } else {
+                    log.warn("⚠️ Wikidata取得エラー entityId={} error={}", entityId, e.getMessage());
+                }
+                return null;
+            });
+    }
+    
+    /**
+     * デバッグ出力：取得したプロパティを表示
+     * ★ 組み立てるだけでもコストがかかるので、DEBUGが無効なら何もしない
+     */
+    private void printInfo(WikidataInfo info) {
+        log.info("🔍 Wikidata情報取得 entityId={} label={} properties={}",
+                info.getEntityId(), info.getLabel(), info.getProperties().size());
+        
+        if (!payloadLog.isDebugEnabled()) {
+            return;
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append("名称: ").append(info.getLabel()).append('\n');
+        sb.append("説明: ").append(info.getDescription() != null ? info.getDescription() : "(なし)").append('\n');
+        
+        if (info.getAliases() != null && !info.getAliases().isEmpty()) {
+            sb.append("別名: ").append(String.join(", ", info.getAliases())).append('\n');
+        }
+        
+        if (info.getWikipediaExtract() != null) {
+            String extract = info.getWikipediaExtract();
+            String preview = extract.length() > 100 ? extract.substring(0, 100) + "..." : extract;
+            sb.append("Wikipedia抜粋: ").append(preview).append('\n');
+        }
+        
+        if (!info.getProperties().isEmpty()) {
+            sb.append("取得したプロパティ (").append(info.getProperties().size()).append("件):\n");
+            for (WikidataProperty prop : info.getProperties()) {
+                sb.append("  ✓ ").append(prop.getName()).append(": ").append(prop.getValue()).append('\n');
             }
-            
-            if (info.getWikipediaExtract() != null) {
-                String extract = info.getWikipediaExtract();
-                String preview = extract.length() > 100 ? extract.substring(0, 100) + "..." : extract;
-                System.out.println("Wikipedia抜粋: " + preview);
+        } else {
+            sb.append("  (プロパティなし)\n");
+        }
+        
+        payloadLog.debug("🔍 Wikidata情報の内容 entityId={}\n{}", info.getEntityId(), sb);
+    }
+    
+    /**
+     * 日本語Wikipediaから記事の抜粋を取得（取得できなければnullで完了）
+     */
+    private CompletableFuture<String> fetchWikipediaExtract(JsonNode entityNode) {
+        // 日本語Wikipediaのリンクを取得
+        JsonNode sitelinks = entityNode.path("sitelinks");
+        if (!sitelinks.has("jawiki")) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        String jaTitle = sitelinks.path("jawiki").path("title").asText();
+        
+        // Wikipedia APIで抜粋を取得
+        String apiUrl = String.format(
+            "%s/w/api.php?action=query&prop=extracts&exintro=true&explaintext=true&titles=%s&format=json",
+            wikipediaBaseUrl,
+            URLEncoder.encode(jaTitle.replace(" ", "_"), StandardCharsets.UTF_8)
+        );
+        
+        return metrics.time(httpClient.getAsync(apiUrl, HEADERS, TIMEOUT), QuizMetrics.WIKIDATA_REQUEST, "stage", "extract")
+            .thenApply(response -> {
+                JsonNode root = readTree(response);
+                JsonNode pages = root.path("query").path("pages");
+                
+                // 最初のページの抜粋を取得
+                if (pages.isObject() && pages.size() > 0) {
+                    JsonNode firstPage = pages.elements().next();
+                    String extract = firstPage.path("extract").asText();
+                    
+                    // 最初の段落のみを取得（改行で分割して最初の部分）
+                    if (extract != null && !extract.isEmpty()) {
+                        String[] paragraphs = extract.split("\n");
+                        if (paragraphs.length > 0) {
+                            return paragraphs[0].trim();
+                        }
+                    }
+                }
+                return (String) null;
+            })
+            .exceptionally(ex -> {
+                Throwable e = OutboundHttpClient.unwrap(ex);
+                metrics.error("wikipedia");
+                if (e instanceof RestClientException) {
+                    log.warn("⚠️ Wikipedia抜粋取得エラー（ネットワーク） title={} error={}", jaTitle, e.getMessage());
+                } else {
+                    log.warn("⚠️ Wikipedia抜粋取得エラー title={} error={}", jaTitle, e.getMessage());
+                }
+                return null;
+            });
+    }
+    
+    /**
+     * 主要なプロパティが参照するエンティティIDのうち、レスポンス内にないものを集める
+     */
+    private Set<String> collectMissingEntityIds(JsonNode claims, JsonNode root) {
+        Set<String> ids = new LinkedHashSet<>();
+        
+        for (String propertyId : IMPORTANT_PROPERTIES) {
+            JsonNode propertyClaims = claims.path(propertyId);
+            if (!propertyClaims.isArray() || propertyClaims.size() == 0) {
+                continue;
             }
             
-            if (!info.getProperties().isEmpty()) {
-                System.out.println("取得したプロパティ (" + info.getProperties().size() + "件):");
-                for (WikidataProperty prop : info.getProperties()) {
-                    System.out.println("  ✓ " + prop.getName() + ": " + prop.getValue());
+            JsonNode datavalue = propertyClaims.get(0).path("mainsnak").path("datavalue");
+            if (isEntityValue(datavalue)) {
+                String id = datavalue.path("value").path("id").asText();
+                if (!id.isEmpty() && root.path("entities").path(id).isMissingNode()) {
+                    ids.add(id);
                 }
-            } else {
-                System.out.println("  (プロパティなし)");
             }
-            System.out.println("=".repeat(60));
-            
-            return info;
-            
-        } catch (RestClientException e) {
-            // ★ ネットワークエラーの詳細を出力
-            System.err.println("⚠️ Wikidata取得エラー (ID: " + entityId + ")");
-            System.err.println("   原因: " + e.getClass().getSimpleName());
-            System.err.println("   メッセージ: " + e.getMessage());
-            System.err.println("   → 接続できない環境の可能性があります（スキップして続行）");
-            return null;
-            
-        } catch (Exception e) {
-            System.err.println("⚠️ Wikidata取得エラー (ID: " + entityId + "): " + e.getMessage());
-            return null;
         }
+        
+        return ids;
     }
     
     /**
-     * 日本語Wikipediaから記事の抜粋を取得
+     * 値がエンティティ（Q-ID）かどうか
+     * ★ APIの値の型は"wikibase-entityid"（"wikibase-item"はプロパティ側のデータ型）
      */
-    private String fetchWikipediaExtract(JsonNode entityNode) {
-        try {
-            // 日本語Wikipediaのリンクを取得
-            JsonNode sitelinks = entityNode.path("sitelinks");
-            if (!sitelinks.has("jawiki")) {
-                return null;
+    private boolean isEntityValue(JsonNode datavalue) {
+        String type = datavalue.path("type").asText();
+        return "wikibase-entityid".equals(type) || "wikibase-item".equals(type);
+    }
+    
+    /**
+     * エンティティIDごとの日本語ラベルを取得（日本語がなければ含めない）
+     * ★ キャッシュにないものだけを、wbgetentitiesで最大50件ずつまとめて取得
+     */
+    private CompletableFuture<Map<String, String>> fetchEntityLabels(Set<String> entityIds) {
+        Map<String, String> labels = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        
+        for (String entityId : entityIds) {
+            String cached = wikidataCache.getLabel(entityId);
+            if (wikidataCache.isEnabled()) {
+                metrics.cache("wikidata_label", cached != null);
             }
+            if (cached == null) {
+                missing.add(entityId);
+            } else if (!cached.isEmpty()) {
+                labels.put(entityId, cached);
+            }
+        }
+        
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(labels);
+        }
+        
+        // 取得結果（日本語ラベルがないものは空文字でキャッシュし、再取得しない）
+        Map<String, String> fetched = new HashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        
+        for (int from = 0; from < missing.size(); from += MAX_IDS_PER_REQUEST) {
+            List<String> batch = missing.subList(from, Math.min(missing.size(), from + MAX_IDS_PER_REQUEST));
             
-            String jaTitle = sitelinks.path("jawiki").path("title").asText();
-            
-            // Wikipedia APIで抜粋を取得
             String apiUrl = String.format(
-                "https://ja.wikipedia.org/w/api.php?action=query&prop=extracts&exintro=true&explaintext=true&titles=%s&format=json",
-                jaTitle.replace(" ", "_")
-            );
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("User-Agent", "ChatGptQuizApp/1.0 (Educational Quiz Generator; contact@example.com)");
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            
-            ResponseEntity<String> responseEntity = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.GET,
-                entity,
-                String.class
+                "%s/w/api.php?action=wbgetentities&ids=%s&props=labels&languages=ja&format=json",
+                wikidataBaseUrl,
+                URLEncoder.encode(String.join("|", batch), StandardCharsets.UTF_8)
             );
             
-            String response = responseEntity.getBody();
-            JsonNode root = objectMapper.readTree(response);
-            JsonNode pages = root.path("query").path("pages");
-            
-            // 最初のページの抜粋を取得
-            if (pages.isObject() && pages.size() > 0) {
-                JsonNode firstPage = pages.elements().next();
-                String extract = firstPage.path("extract").asText();
-                
-                // 最初の段落のみを取得（改行で分割して最初の部分）
-                if (extract != null && !extract.isEmpty()) {
-                    String[] paragraphs = extract.split("\n");
-                    if (paragraphs.length > 0) {
-                        return paragraphs[0].trim();
+            futures.add(metrics.time(httpClient.getAsync(apiUrl, HEADERS, TIMEOUT), QuizMetrics.WIKIDATA_REQUEST, "stage", "labels")
+                .thenAccept(response -> {
+                    JsonNode entities = readTree(response).path("entities");
+                    synchronized (fetched) {
+                        for (String entityId : batch) {
+                            // ★ 日本語のみ取得
+                            JsonNode ja = entities.path(entityId).path("labels").path("ja");
+                            fetched.put(entityId, ja.isMissingNode() ? "" : ja.path("value").asText());
+                        }
                     }
+                })
+                .exceptionally(ex -> {
+                    Throwable e = OutboundHttpClient.unwrap(ex);
+                    metrics.error("wikidata_labels");
+                    if (e instanceof RestClientException) {
+                        log.warn("⚠️ エンティティラベル取得エラー（ネットワーク） ids={} error={}", batch, e.getMessage());
+                    } else {
+                        log.warn("⚠️ エンティティラベル取得エラー ids={} error={}", batch, e.getMessage());
+                    }
+                    return null;
+                }));
+        }
+        
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            wikidataCache.putLabels(fetched);
+            fetched.forEach((entityId, label) -> {
+                if (!label.isEmpty()) {
+                    labels.put(entityId, label);
                 }
-            }
-            
-        } catch (RestClientException e) {
-            System.err.println("⚠️ Wikipedia抜粋取得エラー（ネットワーク）: " + e.getMessage());
+            });
+            return labels;
+        });
+    }
+    
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
         } catch (Exception e) {
-            System.err.println("⚠️ Wikipedia抜粋取得エラー: " + e.getMessage());
+            throw new IllegalStateException("JSONの解析に失敗しました: " + e.getMessage(), e);
         }
-        
-        return null;
     }
     
     /**
@@ -233,6 +482,13 @@ public class WikidataService {
      * @return エンティティID 例: "Q23718"
      */
     public String extractEntityId(String url) {
+        return parseEntityId(url);
+    }
+    
+    /**
+     * ★ extractEntityIdの静的版（索引作成時など、サービス外から利用）
+     */
+    public static String parseEntityId(String url) {
         if (url == null || url.isEmpty()) {
             return null;
         }
@@ -251,26 +507,13 @@ public class WikidataService {
     
     /**
      * 主要なプロパティを抽出（日本語のみ）
+     * @param entityLabels レスポンス外のエンティティの日本語ラベル
+     * ★ ベンチマーク（src/jmh）から呼ぶためパッケージプライベート
      */
-    private List<WikidataProperty> extractProperties(JsonNode claims, JsonNode root) {
+    List<WikidataProperty> extractProperties(JsonNode claims, JsonNode root, Map<String, String> entityLabels) {
         List<WikidataProperty> properties = new ArrayList<>();
         
-        // よく使われる重要なプロパティのみを取得
-        String[] importantProperties = {
-            "P31",   // 分類（instance of）
-            "P279",  // 上位クラス（subclass of）
-            "P361",  // 一部（part of）
-            "P17",   // 国（country）
-            "P276",  // 場所（location）
-            "P580",  // 開始時点（start time）
-            "P582",  // 終了時点（end time）
-            "P585",  // 時点（point in time）
-            "P571",  // 設立（inception）
-            "P569",  // 生年月日（date of birth）
-            "P570"   // 没年月日（date of death）
-        };
-        
-        for (String propertyId : importantProperties) {
+        for (String propertyId : IMPORTANT_PROPERTIES) {
             if (claims.has(propertyId)) {
                 JsonNode propertyClaims = claims.get(propertyId);
                 
@@ -279,7 +522,7 @@ public class WikidataService {
                     JsonNode firstClaim = propertyClaims.get(0);
                     
                     String propertyName = getPropertyLabel(propertyId);
-                    String value = extractValue(firstClaim.path("mainsnak"), root);
+                    String value = extractValue(firstClaim.path("mainsnak"), root, entityLabels);
                     
                     // ★ 日本語の値のみ追加
                     if (propertyName != null && value != null) {
@@ -316,7 +559,7 @@ public class WikidataService {
     /**
      * クレームから値を抽出
      */
-    private String extractValue(JsonNode mainsnak, JsonNode root) {
+    private String extractValue(JsonNode mainsnak, JsonNode root, Map<String, String> entityLabels) {
         JsonNode datavalue = mainsnak.path("datavalue");
         
         if (datavalue.isMissingNode()) {
@@ -331,10 +574,11 @@ public class WikidataService {
             case "external-id":
                 return datavalue.path("value").asText();
                 
+            case "wikibase-entityid":  // ★ 実際のAPIレスポンスの値の型
             case "wikibase-item":
                 // エンティティIDからラベル（名称）を取得
                 String entityId = datavalue.path("value").path("id").asText();
-                return getEntityLabel(entityId, root);
+                return getEntityLabel(entityId, root, entityLabels);
                 
             case "time":
                 String time = datavalue.path("value").path("time").asText();
@@ -367,7 +611,7 @@ public class WikidataService {
      * ★ 日付を読みやすい形式にフォーマット
      * 例：+1582-06-21T00:00:00Z → 1582年6月21日
      */
-    private String formatDate(String time) {
+    String formatDate(String time) {
         try {
             // +1582-06-21T00:00:00Z のような形式から日付部分を抽出
             String dateOnly = time.replace("+", "").substring(0, 10);
@@ -400,61 +644,21 @@ public class WikidataService {
      * エンティティIDからラベル（名称）を取得
      * ★ 日本語がない場合はnullを返す
      */
-    private String getEntityLabel(String entityId, JsonNode root) {
-        try {
-            // 同じレスポンス内にある場合は取得
-            JsonNode entity = root.path("entities").path(entityId);
-            if (!entity.isMissingNode()) {
-                JsonNode labels = entity.path("labels");
-                // ★ 日本語のみ取得、なければnull
-                if (labels.has("ja")) {
-                    return labels.path("ja").path("value").asText();
-                } else {
-                    return null;  // ★ 日本語がなければnull
-                }
-            }
-            
-            // ★ ネットワークエラーが起きやすい環境では追加リクエストをスキップ
-            if (!enableWikidata) {
-                return null;
-            }
-            
-            // なければ追加でAPIリクエスト
-            String apiUrl = String.format(
-                "https://www.wikidata.org/wiki/Special:EntityData/%s.json",
-                entityId
-            );
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("User-Agent", "ChatGptQuizApp/1.0 (Educational Quiz Generator; contact@example.com)");
-            HttpEntity<String> entity2 = new HttpEntity<>(headers);
-            
-            ResponseEntity<String> responseEntity = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.GET,
-                entity2,
-                String.class
-            );
-            
-            String response = responseEntity.getBody();
-            JsonNode newRoot = objectMapper.readTree(response);
-            JsonNode newEntity = newRoot.path("entities").path(entityId);
-            JsonNode labels = newEntity.path("labels");
-            
+    private String getEntityLabel(String entityId, JsonNode root, Map<String, String> entityLabels) {
+        // 同じレスポンス内にある場合は取得
+        JsonNode entity = root.path("entities").path(entityId);
+        if (!entity.isMissingNode()) {
+            JsonNode labels = entity.path("labels");
             // ★ 日本語のみ取得、なければnull
             if (labels.has("ja")) {
                 return labels.path("ja").path("value").asText();
             } else {
                 return null;  // ★ 日本語がなければnull
             }
-            
-        } catch (RestClientException e) {
-            System.err.println("⚠️ エンティティラベル取得エラー（ネットワーク） (" + entityId + "): " + e.getMessage());
-            return null;
-        } catch (Exception e) {
-            System.err.println("⚠️ エンティティラベル取得エラー (" + entityId + "): " + e.getMessage());
-            return null;
         }
+        
+        // なければ追加リクエストで取得済みのラベル（日本語がなければnull）
+        return entityLabels.get(entityId);
     }
     
     /**
@@ -532,7 +736,8 @@ public class WikidataService {
         private String name;
         private String value;
         
-        public WikidataProperty(String name, String value) {
+        @JsonCreator
+        public WikidataProperty(@JsonProperty("name") String name, @JsonProperty("value") String value) {
             this.name = name;
             this.value = value;
         }